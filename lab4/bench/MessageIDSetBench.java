@@ -0,0 +1,102 @@
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Measures memory and false positives of <code>MessageIDSet</code> and of <code>LimitedMap</code>,
+ * that Node used for received message IDs before.
+ * <p>
+ * One million random IDs are added, then heap usage is measured after garbage collection.
+ * Then another million never added IDs are looked up: every hit is false positive.
+ * Every structure is measured in its own JVM for clean heap:
+ * <code>java MessageIDSetBench set</code> and <code>java MessageIDSetBench map</code>.
+ * </p>
+ */
+public class MessageIDSetBench
+{
+	private static final int ID_COUNT = 1000000;
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		if(args.length != 1 || !(args[0].equals("set") || args[0].equals("map")))
+		{
+			System.out.println("Usage: <set or map>");
+			return;
+		}
+		boolean useSet = args[0].equals("set");
+		// The same IDs for both structures.
+		long[] bits = new long[4 * ID_COUNT];
+		Random random = new Random(1);
+		for(int i = 0; i < bits.length; ++i)
+		{
+			bits[i] = random.nextLong();
+		}
+
+		long usedBefore = getUsedMemory();
+		long startTime = System.nanoTime();
+		MessageIDSet set = null;
+		LimitedMap<UUID, UUID> map = null;
+		if(useSet)
+		{
+			set = new MessageIDSet(ID_COUNT, Long.MAX_VALUE / 4, 0);
+			for(int i = 0; i < ID_COUNT; ++i)
+			{
+				set.add(bits[2 * i], bits[2 * i + 1], 0);
+			}
+		}
+		else
+		{
+			// Node put the same UUID as key and value.
+			map = new LimitedMap<>(new LimitedMap.LimitController(ID_COUNT));
+			for(int i = 0; i < ID_COUNT; ++i)
+			{
+				UUID id = new UUID(bits[2 * i], bits[2 * i + 1]);
+				map.put(id, id);
+			}
+		}
+		long fillTime = System.nanoTime() - startTime;
+		long usedAfter = getUsedMemory();
+
+		int falsePositives = 0;
+		int remembered = 0;
+		startTime = System.nanoTime();
+		for(int i = 0; i < 2 * ID_COUNT; ++i)
+		{
+			boolean contained = (useSet ? set.contains(bits[2 * i], bits[2 * i + 1])
+			                            : map.contains(new UUID(bits[2 * i], bits[2 * i + 1])));
+			if(contained)
+			{
+				if(i < ID_COUNT)
+				{
+					++remembered;
+				}
+				else
+				{
+					++falsePositives;
+				}
+			}
+		}
+		long lookupTime = System.nanoTime() - startTime;
+
+		// Bytes per ID are megabytes per million IDs.
+		System.out.println(String.format("%s: %.1f bytes per ID, fill %.0f ns per ID, lookup %.0f ns per ID",
+				(useSet ? "MessageIDSet" : "LimitedMap<UUID, UUID>"),
+				(usedAfter - usedBefore) / (double) ID_COUNT,
+				fillTime / (double) ID_COUNT,
+				lookupTime / (2.0 * ID_COUNT)));
+		System.out.println(String.format("  remembered %d of %d added IDs, false positives %d of %d never added IDs",
+				remembered, ID_COUNT, falsePositives, ID_COUNT));
+		// Structures must stay alive until measurement is done.
+		System.out.println("  size " + (useSet ? set.size() : map.size()));
+	}
+
+	private static long getUsedMemory() throws InterruptedException
+	{
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 5; ++i)
+		{
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,109 @@
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures, how many datagrams node sends to neighbour, with and without batching of packets.
+ * <p>
+ * Tree of three nodes is started on this host at 0% loss: root and its two children.
+ * The first child sends text messages at fixed rate, root relays them to the second child.
+ * For every flush delay the tree is started again, and printed are delivered messages per second,
+ * datagrams from root to the second child per second (its "datagrams" counter from command "n")
+ * and messages per datagram.
+ * </p>
+ * <p>
+ * Nodes run in separate JVMs with class path of benchmark, so it should contain node classes:
+ * <code>java -cp out:classes NodeBatchBench [messageCount] [messagesPerSecond] [flushDelay...]</code>,
+ * by default 4000 messages at 1000 per second with flush delays 0 and 5 ms.
+ * </p>
+ */
+public class NodeBatchBench
+{
+	private static final int DEFAULT_MESSAGE_COUNT = 4000;
+	private static final int DEFAULT_RATE = 1000;
+	private static final long[] DEFAULT_FLUSH_DELAYS = {0, 5};
+	private static final long CONNECT_TIME = 1500;
+	private static final long DELIVERY_TIMEOUT = 20000;
+	private static final long NEIGHBOURS_OUTPUT_TIME = 500;
+
+	public static void main(String[] args) throws Exception
+	{
+		int messageCount = (args.length >= 1 ? Integer.parseInt(args[0]) : DEFAULT_MESSAGE_COUNT);
+		int rate = (args.length >= 2 ? Integer.parseInt(args[1]) : DEFAULT_RATE);
+		long[] flushDelays = DEFAULT_FLUSH_DELAYS;
+		if(args.length >= 3)
+		{
+			flushDelays = new long[args.length - 2];
+			for(int i = 2; i < args.length; ++i)
+			{
+				flushDelays[i - 2] = Long.parseLong(args[i]);
+			}
+		}
+
+		System.out.println(messageCount + " messages at " + rate + " per second from child through root to child");
+		for(long flushDelay : flushDelays)
+		{
+			measure(messageCount, rate, flushDelay);
+		}
+	}
+
+	private static void measure(int messageCount, int rate, long flushDelay) throws Exception
+	{
+		String option = " flush=" + flushDelay;
+		int rootPort = NodeProcess.getFreePort();
+		int senderPort = NodeProcess.getFreePort();
+		int receiverPort = NodeProcess.getFreePort();
+		try(NodeProcess root = new NodeProcess("R " + rootPort + " 0" + option);
+		    NodeProcess sender = new NodeProcess("S " + senderPort + " 0 127.0.0.1 " + rootPort + option);
+		    NodeProcess receiver = new NodeProcess("T " + receiverPort + " 0 127.0.0.1 " + rootPort + option))
+		{
+			Thread.sleep(CONNECT_TIME);
+
+			long startTime = System.nanoTime();
+			long period = 1000000000L / rate;
+			for(int i = 0; i < messageCount; ++i)
+			{
+				long sendTime = startTime + i * period;
+				long delay = sendTime - System.nanoTime();
+				if(delay > 0)
+				{
+					Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+				}
+				sender.sendLine("m" + i);
+			}
+
+			int delivered = 0;
+			long lastDeliveryTime = startTime;
+			NodeProcess.TimedLine line;
+			while(delivered < messageCount && (line = receiver.waitForLine("S: m", DELIVERY_TIMEOUT)) != null)
+			{
+				++delivered;
+				lastDeliveryTime = line.time;
+			}
+			double elapsed = (lastDeliveryTime - startTime) / 1e9;
+
+			root.sendLine("n");
+			Thread.sleep(NEIGHBOURS_OUTPUT_TIME);
+			long datagrams = getDatagramCount(root.getLastErrorLine("Children"), receiverPort);
+			System.out.println(String.format(
+					"flush=%d: delivered %d of %d in %.2f s, %.0f messages/s, %d datagrams to receiver, " +
+					"%.0f datagrams/s, %.2f messages per datagram",
+					flushDelay, delivered, messageCount, elapsed, delivered / elapsed, datagrams,
+					datagrams / elapsed, (double) delivered / datagrams));
+		}
+	}
+
+	/**
+	 * @param neighbours - output of command "n"
+	 * @param port       - port of neighbour
+	 * @return count of datagrams, sent to neighbour, or -1 if it isn't found
+	 */
+	private static long getDatagramCount(String neighbours, int port)
+	{
+		if(neighbours == null)
+		{
+			return -1;
+		}
+		Matcher matcher = Pattern.compile(":" + port + " \\([^)]*datagrams (\\d+)\\)").matcher(neighbours);
+		return (matcher.find() ? Long.parseLong(matcher.group(1)) : -1);
+	}
+}
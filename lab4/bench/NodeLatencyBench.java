@@ -0,0 +1,103 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures latency of text message from console of one node to console of another node two hops away.
+ * <p>
+ * Chain A &lt;- B &lt;- C is started on this host at 0% loss. Messages are typed into console of A
+ * with random pauses from 50 to 100 ms, latency is time from writing of line into A
+ * till its arrival on output of C. The first <code>WARMUP_MESSAGES</code> are not counted.
+ * Percentiles of latency are printed.
+ * </p>
+ * <p>
+ * Nodes run in separate JVMs with class path of benchmark, so it should contain node classes:
+ * <code>java -cp out:classes NodeLatencyBench [messageCount] [node options]</code>,
+ * for example <code>NodeLatencyBench 200 legacy</code> or <code>NodeLatencyBench 200 flush=0</code>.
+ * </p>
+ */
+public class NodeLatencyBench
+{
+	private static final int DEFAULT_MESSAGE_COUNT = 200;
+	private static final int WARMUP_MESSAGES = 20;
+	private static final long MIN_PAUSE = 50;
+	private static final long MAX_PAUSE = 100;
+	private static final long CONNECT_TIME = 1500;
+	private static final long DELIVERY_TIMEOUT = 2000;
+
+	public static void main(String[] args) throws Exception
+	{
+		int messageCount = (args.length >= 1 ? Integer.parseInt(args[0]) : DEFAULT_MESSAGE_COUNT);
+		StringBuilder options = new StringBuilder();
+		for(int i = 1; i < args.length; ++i)
+		{
+			options.append(' ').append(args[i]);
+		}
+
+		int portA = NodeProcess.getFreePort();
+		int portB = NodeProcess.getFreePort();
+		int portC = NodeProcess.getFreePort();
+		try(NodeProcess nodeA = new NodeProcess("A " + portA + " 0" + options);
+		    NodeProcess nodeB = new NodeProcess("B " + portB + " 0 127.0.0.1 " + portA + options);
+		    NodeProcess nodeC = new NodeProcess("C " + portC + " 0 127.0.0.1 " + portB + options))
+		{
+			Thread.sleep(CONNECT_TIME);
+
+			Random random = new Random(1);
+			int totalCount = WARMUP_MESSAGES + messageCount;
+			long[] sendTimes = new long[totalCount];
+			Map<String, Long> arrivalTimes = new HashMap<>();
+			for(int i = 0; i < totalCount; ++i)
+			{
+				sendTimes[i] = System.nanoTime();
+				nodeA.sendLine("msg" + i);
+				long pauseEnd = System.nanoTime() + (MIN_PAUSE + random.nextInt((int) (MAX_PAUSE - MIN_PAUSE + 1))) * 1000000;
+				// Arrivals are taken from output while waiting, so that their time is exact.
+				NodeProcess.TimedLine line;
+				while((line = nodeC.waitForLine("A: msg", Math.max((pauseEnd - System.nanoTime()) / 1000000, 0))) != null)
+				{
+					arrivalTimes.put(line.line.substring(line.line.indexOf("msg")), line.time);
+				}
+			}
+			NodeProcess.TimedLine line;
+			while((line = nodeC.waitForLine("A: msg", DELIVERY_TIMEOUT)) != null)
+			{
+				arrivalTimes.put(line.line.substring(line.line.indexOf("msg")), line.time);
+			}
+
+			double[] latencies = new double[messageCount];
+			int received = 0;
+			for(int i = WARMUP_MESSAGES; i < totalCount; ++i)
+			{
+				Long arrivalTime = arrivalTimes.get("msg" + i);
+				if(arrivalTime != null)
+				{
+					latencies[received++] = (arrivalTime - sendTimes[i]) / 1e6;
+				}
+			}
+			if(received == 0)
+			{
+				System.out.println("No messages received");
+				return;
+			}
+			latencies = Arrays.copyOf(latencies, received);
+			Arrays.sort(latencies);
+			double sum = 0;
+			for(double latency : latencies)
+			{
+				sum += latency;
+			}
+			System.out.println(String.format(
+					"%s: %d of %d received, latency ms: p50 %.2f, p90 %.2f, p99 %.2f, max %.2f, mean %.2f",
+					(options.length() == 0 ? "default" : options.toString().trim()), received, messageCount,
+					getPercentile(latencies, 50), getPercentile(latencies, 90), getPercentile(latencies, 99),
+					latencies[received - 1], sum / received));
+		}
+	}
+
+	private static double getPercentile(double[] sorted, int percent)
+	{
+		return sorted[Math.min(sorted.length - 1, percent * sorted.length / 100)];
+	}
+}
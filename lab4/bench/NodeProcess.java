@@ -0,0 +1,142 @@
+import java.io.*;
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Node, started in separate JVM with the same class path, for benchmarks of whole tree.
+ * Console lines are written to node, its output lines are collected with time of arrival.
+ */
+public class NodeProcess implements Closeable
+{
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	private Process process;
+	private Writer console;
+	// Lines of standard output, each paired with System.nanoTime() of its arrival.
+	private BlockingQueue<TimedLine> outputLines = new LinkedBlockingQueue<>();
+	private List<String> errorLines = new ArrayList<>();
+
+	public static class TimedLine
+	{
+		public String line;
+		public long time;
+
+		TimedLine(String line, long time)
+		{
+			this.line = line;
+			this.time = time;
+		}
+	}
+
+	/**
+	 * @param arguments - node arguments, as typed into its console
+	 * @throws IOException
+	 */
+	public NodeProcess(String arguments) throws IOException
+	{
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "Node").start();
+		console = new OutputStreamWriter(process.getOutputStream(), CHARSET);
+		startReader(process.getInputStream(), line -> outputLines.add(new TimedLine(line, System.nanoTime())));
+		startReader(process.getErrorStream(), line ->
+		{
+			synchronized(errorLines)
+			{
+				errorLines.add(line);
+			}
+		});
+		// The first output line is usage.
+		sendLine(arguments);
+	}
+
+	/**
+	 * @return free UDP port of this host
+	 * @throws SocketException
+	 */
+	public static int getFreePort() throws SocketException
+	{
+		try(DatagramSocket socket = new DatagramSocket(0))
+		{
+			return socket.getLocalPort();
+		}
+	}
+
+	public void sendLine(String line) throws IOException
+	{
+		console.write(line + "\n");
+		console.flush();
+	}
+
+	/**
+	 * Waits for the next output line, that contains given text. Other lines are skipped.
+	 *
+	 * @param text    - text to find
+	 * @param timeout - timeout in milliseconds
+	 * @return line or null on timeout
+	 * @throws InterruptedException
+	 */
+	public TimedLine waitForLine(String text, long timeout) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		while(true)
+		{
+			TimedLine line = outputLines.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			if(line == null || line.line.contains(text))
+			{
+				return line;
+			}
+		}
+	}
+
+	/**
+	 * @return the last line of standard error, that contains given text, or null
+	 */
+	public String getLastErrorLine(String text)
+	{
+		synchronized(errorLines)
+		{
+			for(int i = errorLines.size() - 1; i >= 0; --i)
+			{
+				if(errorLines.get(i).contains(text))
+				{
+					return errorLines.get(i);
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void close()
+	{
+		process.destroy();
+	}
+
+	private static void startReader(InputStream stream, Consumer<String> consumer)
+	{
+		Thread reader = new Thread(() ->
+		{
+			try(BufferedReader in = new BufferedReader(new InputStreamReader(stream, CHARSET)))
+			{
+				String line;
+				while((line = in.readLine()) != null)
+				{
+					consumer.accept(line);
+				}
+			}
+			catch(IOException e)
+			{
+				// Process is gone.
+			}
+		});
+		reader.setDaemon(true);
+		reader.start();
+	}
+}
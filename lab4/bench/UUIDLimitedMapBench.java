@@ -0,0 +1,265 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Compares <code>UUIDLimitedMap</code> with generic <code>LimitedMap</code>:
+ * time of put, get, iteration and remove at given record count, time of pending-message pattern
+ * (put of new message, get and remove of confirmed one with 64 messages pending),
+ * heap per record and bytes allocated per put and remove.
+ * <p>
+ * Every map is measured in its own JVM: <code>java UUIDLimitedMapBench uuid 100000</code> and
+ * <code>java UUIDLimitedMapBench generic 100000</code>. Every operation is repeated many times,
+ * the first third of repetitions is warm-up, and median of the rest is printed.
+ * </p>
+ */
+public class UUIDLimitedMapBench
+{
+	private static final int PENDING_COUNT = 64;
+	private static final int PENDING_STREAM_LENGTH = 1000000;
+	private static final int PENDING_REPETITIONS = 12;
+	private static final long OPERATIONS_PER_MEASUREMENT = 20000000;
+	private static final int MEMORY_RECORD_COUNT = 1000000;
+
+	// Consumes results, so that operations aren't eliminated.
+	private static long sink = 0;
+
+	/**
+	 * Operations of both maps.
+	 */
+	private interface BenchMap
+	{
+		void put(UUID key, Object value);
+
+		Object get(UUID key);
+
+		void remove(UUID key);
+
+		long iterate();
+	}
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		if(args.length != 2 || !(args[0].equals("uuid") || args[0].equals("generic")))
+		{
+			System.out.println("Usage: <uuid or generic> <recordCount>");
+			return;
+		}
+		boolean useUUIDMap = args[0].equals("uuid");
+		int recordCount = Integer.parseInt(args[1]);
+		UUID[] keys = createKeys(recordCount);
+		UUID[] absentKeys = createKeys(recordCount);
+		UUID[] stream = createKeys(PENDING_STREAM_LENGTH);
+
+		int repetitions = (int) Math.max(PENDING_REPETITIONS, OPERATIONS_PER_MEASUREMENT / recordCount);
+		double[][] times = new double[4][repetitions];
+		for(int i = 0; i < repetitions; ++i)
+		{
+			measureOperations(useUUIDMap, keys, absentKeys, times, i);
+		}
+		double[] pendingTimes = new double[PENDING_REPETITIONS];
+		for(int i = 0; i < PENDING_REPETITIONS; ++i)
+		{
+			pendingTimes[i] = measurePending(useUUIDMap, stream);
+		}
+		System.out.println(String.format("%s, %d records: put %.1f, get %.1f, iterate %.1f, remove %.1f, " +
+		                                 "pending pattern %.1f ns per operation",
+				(useUUIDMap ? "UUIDLimitedMap" : "LimitedMap"),
+				recordCount,
+				getMedian(times[0]),
+				getMedian(times[1]),
+				getMedian(times[2]),
+				getMedian(times[3]),
+				getMedian(pendingTimes)));
+		measureMemory(useUUIDMap, stream);
+		System.out.println("  (" + sink + ")");
+	}
+
+	private static UUID[] createKeys(int count)
+	{
+		UUID[] keys = new UUID[count];
+		for(int i = 0; i < count; ++i)
+		{
+			keys[i] = UUID.randomUUID();
+		}
+		return keys;
+	}
+
+	private static BenchMap createMap(boolean useUUIDMap, long limit)
+	{
+		LimitedMap.LimitController limitController = new LimitedMap.LimitController(limit);
+		if(useUUIDMap)
+		{
+			UUIDLimitedMap<Object> map = new UUIDLimitedMap<>(limitController);
+			return new BenchMap()
+			{
+				public void put(UUID key, Object value)
+				{
+					map.put(key, value);
+				}
+
+				public Object get(UUID key)
+				{
+					return map.get(key);
+				}
+
+				public void remove(UUID key)
+				{
+					map.remove(key);
+				}
+
+				public long iterate()
+				{
+					long sum = 0;
+					for(Pair<UUID, Object> record : map)
+					{
+						sum += record.second.hashCode();
+					}
+					return sum;
+				}
+			};
+		}
+		LimitedMap<UUID, Object> map = new LimitedMap<>(limitController);
+		return new BenchMap()
+		{
+			public void put(UUID key, Object value)
+			{
+				map.put(key, value);
+			}
+
+			public Object get(UUID key)
+			{
+				return map.get(key);
+			}
+
+			public void remove(UUID key)
+			{
+				map.remove(key);
+			}
+
+			public long iterate()
+			{
+				long sum = 0;
+				for(Pair<UUID, Object> record : map)
+				{
+					sum += record.second.hashCode();
+				}
+				return sum;
+			}
+		};
+	}
+
+	/**
+	 * Fills map, looks up present and absent keys, iterates and removes all keys.
+	 */
+	private static void measureOperations(boolean useUUIDMap, UUID[] keys, UUID[] absentKeys, double[][] times, int i)
+	{
+		BenchMap map = createMap(useUUIDMap, keys.length);
+		Object value = new Object();
+
+		long startTime = System.nanoTime();
+		for(UUID key : keys)
+		{
+			map.put(key, value);
+		}
+		times[0][i] = (System.nanoTime() - startTime) / (double) keys.length;
+
+		startTime = System.nanoTime();
+		for(int k = 0; k < keys.length; ++k)
+		{
+			sink += map.get(keys[k]).hashCode();
+			sink += (map.get(absentKeys[k]) == null ? 0 : 1);
+		}
+		times[1][i] = (System.nanoTime() - startTime) / (2.0 * keys.length);
+
+		startTime = System.nanoTime();
+		for(int k = 0; k < 5; ++k)
+		{
+			sink += map.iterate();
+		}
+		times[2][i] = (System.nanoTime() - startTime) / (5.0 * keys.length);
+
+		startTime = System.nanoTime();
+		for(UUID key : keys)
+		{
+			map.remove(key);
+		}
+		times[3][i] = (System.nanoTime() - startTime) / (double) keys.length;
+	}
+
+	/**
+	 * Node puts every sent message and removes it, when it is confirmed.
+	 *
+	 * @return time per message
+	 */
+	private static double measurePending(boolean useUUIDMap, UUID[] stream)
+	{
+		BenchMap map = createMap(useUUIDMap, stream.length);
+		Object value = new Object();
+		long startTime = System.nanoTime();
+		for(int k = 0; k < stream.length; ++k)
+		{
+			map.put(stream[k], value);
+			if(k >= PENDING_COUNT && map.get(stream[k - PENDING_COUNT]) != null)
+			{
+				map.remove(stream[k - PENDING_COUNT]);
+			}
+		}
+		return (System.nanoTime() - startTime) / (double) stream.length;
+	}
+
+	private static void measureMemory(boolean useUUIDMap, UUID[] stream) throws InterruptedException
+	{
+		UUID[] keys = createKeys(MEMORY_RECORD_COUNT);
+		Object value = new Object();
+		long usedBefore = getUsedMemory();
+		BenchMap map = createMap(useUUIDMap, MEMORY_RECORD_COUNT);
+		for(UUID key : keys)
+		{
+			map.put(key, value);
+		}
+		long usedAfter = getUsedMemory();
+		sink += map.get(keys[0]).hashCode();
+
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long allocated = 0;
+		// The last of several rounds, so that allocations of warm-up aren't counted.
+		for(int round = 0; round < 3; ++round)
+		{
+			BenchMap pendingMap = createMap(useUUIDMap, stream.length);
+			long allocatedBefore = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			for(int k = 0; k < stream.length; ++k)
+			{
+				pendingMap.put(stream[k], value);
+				if(k >= PENDING_COUNT)
+				{
+					pendingMap.remove(stream[k - PENDING_COUNT]);
+				}
+			}
+			allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+		}
+		System.out.println(String.format("  %.1f bytes per record at %d records (keys are not counted), " +
+		                                 "%.1f bytes allocated per put and remove",
+				(usedAfter - usedBefore) / (double) MEMORY_RECORD_COUNT,
+				MEMORY_RECORD_COUNT,
+				allocated / (double) stream.length));
+	}
+
+	private static double getMedian(double[] times)
+	{
+		double[] measured = Arrays.copyOfRange(times, times.length / 3, times.length);
+		Arrays.sort(measured);
+		return measured[measured.length / 2];
+	}
+
+	private static long getUsedMemory() throws InterruptedException
+	{
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 5; ++i)
+		{
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
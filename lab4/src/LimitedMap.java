@@ -169,6 +169,14 @@ public class LimitedMap<Key, Value> implements Iterable<Pair<Key, Value>>
 			return false;
 		}
 
+		/**
+		 * Adds record even if limit is reached.
+		 */
+		public void addRecord()
+		{
+			++recordsUsed;
+		}
+
 		public void removeRecord()
 		{
 			--recordsUsed;
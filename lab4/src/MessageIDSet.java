@@ -0,0 +1,220 @@
+import java.util.UUID;
+
+/**
+ * Set of IDs of received messages, that remembers recent IDs:
+ * ID is kept, while less than <code>capacity</code> newer IDs were added
+ * and less than <code>(GENERATION_COUNT - 1) * generationPeriod</code> passed.
+ * <p>
+ * IDs are stored as pairs of longs in open addressing hash tables, one table per generation.
+ * New IDs go to the newest generation. When it is full or older than <code>generationPeriod</code>,
+ * the oldest generation is dropped as a whole and a new one is started, so nothing is evicted one by one.
+ * Age is checked by <code>add</code> and <code>expire</code>, so if <code>expire</code> is called regularly,
+ * ID is forgotten not later than <code>GENERATION_COUNT * generationPeriod</code> after it was added,
+ * even without new IDs. Set is exact: it never reports ID, that wasn't added.
+ * </p>
+ */
+public class MessageIDSet
+{
+	private final static int GENERATION_COUNT = 4;
+	private final static int MIN_TABLE_SIZE = 16;
+
+	private int generationCapacity;
+	private long generationPeriod;
+	// Ring of generations, newest is at newestIdx.
+	private Generation[] generations = new Generation[GENERATION_COUNT];
+	private int newestIdx = 0;
+
+	/**
+	 * @param capacity         - count of latest IDs, that are remembered
+	 * @param generationPeriod - time in milliseconds, after which new generation is started
+	 * @param currentTime      - current time
+	 */
+	public MessageIDSet(long capacity, long generationPeriod, long currentTime)
+	{
+		// The newest generation may be almost empty, the others together hold the whole capacity.
+		this.generationCapacity = (int) Math.max((capacity + GENERATION_COUNT - 2) / (GENERATION_COUNT - 1), 1);
+		this.generationPeriod = generationPeriod;
+		for(int i = 0; i < GENERATION_COUNT; ++i)
+		{
+			generations[i] = new Generation(currentTime);
+		}
+	}
+
+	public boolean contains(UUID id)
+	{
+		return contains(id.getMostSignificantBits(), id.getLeastSignificantBits());
+	}
+
+	public boolean contains(long most, long least)
+	{
+		// Duplicates usually come soon, so the newest generations are checked first.
+		for(int i = 0; i < GENERATION_COUNT; ++i)
+		{
+			if(generations[(newestIdx - i + GENERATION_COUNT) % GENERATION_COUNT].contains(most, least))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void add(UUID id, long currentTime)
+	{
+		add(id.getMostSignificantBits(), id.getLeastSignificantBits(), currentTime);
+	}
+
+	public void add(long most, long least, long currentTime)
+	{
+		expire(currentTime);
+		if(generations[newestIdx].count >= generationCapacity)
+		{
+			startGeneration(currentTime);
+		}
+		generations[newestIdx].add(most, least);
+	}
+
+	/**
+	 * Starts new generation, if the newest one is older than <code>generationPeriod</code>.
+	 * Empty generations are started too, so that old IDs are dropped without new ones.
+	 *
+	 * @param currentTime - current time
+	 */
+	public void expire(long currentTime)
+	{
+		// One generation for every missed period, as if they were started in time,
+		// after GENERATION_COUNT ones all generations are new anyway.
+		long startTime = generations[newestIdx].startTime;
+		long periods = (currentTime - startTime) / generationPeriod;
+		for(long i = periods - Math.min(periods, GENERATION_COUNT) + 1; i <= periods; ++i)
+		{
+			startGeneration(startTime + i * generationPeriod);
+		}
+	}
+
+	/**
+	 * @return count of remembered IDs; ID, added in several generations, is counted several times
+	 */
+	public long size()
+	{
+		long size = 0;
+		for(Generation generation : generations)
+		{
+			size += generation.count;
+		}
+		return size;
+	}
+
+	private void startGeneration(long currentTime)
+	{
+		newestIdx = (newestIdx + 1) % GENERATION_COUNT;
+		generations[newestIdx] = new Generation(currentTime);
+	}
+
+	static int hash(long most, long least)
+	{
+		long h = most * 0x9E3779B97F4A7C15L ^ least;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+
+	/**
+	 * Open addressing table with linear probing. Pair of zeros marks empty slot,
+	 * so zero ID is kept aside.
+	 */
+	private static class Generation
+	{
+		// Pairs of most and least significant bits.
+		private long[] slots = new long[2 * MIN_TABLE_SIZE];
+		private int mask = MIN_TABLE_SIZE - 1;
+		private boolean hasZero = false;
+		public int count = 0;
+		public long startTime;
+
+		public Generation(long startTime)
+		{
+			this.startTime = startTime;
+		}
+
+		public boolean contains(long most, long least)
+		{
+			if(most == 0 && least == 0)
+			{
+				return hasZero;
+			}
+			for(int i = hash(most, least) & mask; ; i = (i + 1) & mask)
+			{
+				long slotMost = slots[2 * i];
+				long slotLeast = slots[2 * i + 1];
+				if(slotMost == most && slotLeast == least)
+				{
+					return true;
+				}
+				if(slotMost == 0 && slotLeast == 0)
+				{
+					return false;
+				}
+			}
+		}
+
+		public void add(long most, long least)
+		{
+			if(most == 0 && least == 0)
+			{
+				if(!hasZero)
+				{
+					hasZero = true;
+					++count;
+				}
+				return;
+			}
+			if(insert(slots, mask, most, least))
+			{
+				++count;
+				// Load factor is kept under 3/4.
+				if(4 * count > 3 * (mask + 1))
+				{
+					grow();
+				}
+			}
+		}
+
+		private void grow()
+		{
+			int newMask = 2 * (mask + 1) - 1;
+			long[] newSlots = new long[2 * (newMask + 1)];
+			for(int i = 0; i <= mask; ++i)
+			{
+				if(slots[2 * i] != 0 || slots[2 * i + 1] != 0)
+				{
+					insert(newSlots, newMask, slots[2 * i], slots[2 * i + 1]);
+				}
+			}
+			slots = newSlots;
+			mask = newMask;
+		}
+
+		/**
+		 * @return false if ID is already in table
+		 */
+		private static boolean insert(long[] slots, int mask, long most, long least)
+		{
+			for(int i = hash(most, least) & mask; ; i = (i + 1) & mask)
+			{
+				long slotMost = slots[2 * i];
+				long slotLeast = slots[2 * i + 1];
+				if(slotMost == most && slotLeast == least)
+				{
+					return false;
+				}
+				if(slotMost == 0 && slotLeast == 0)
+				{
+					slots[2 * i] = most;
+					slots[2 * i + 1] = least;
+					return true;
+				}
+			}
+		}
+	}
+}
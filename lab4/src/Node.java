@@ -4,8 +4,12 @@ import org.apache.logging.log4j.Logger;
 import java.io.IOException;
 import java.net.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class Node implements NodeConstants
 {
@@ -14,11 +18,33 @@ public class Node implements NodeConstants
 	private final static byte CONNECT_FLAG_FirstConnect = 0x01;
 	private final static byte CONNECT_FLAG_Reconnect = 0x02;
 
+	// Resend timeout of link, until its round trip time is measured.
 	private final static long CONFIRM_TIMOUT = 500;
+	private final static long MIN_CONFIRM_TIMEOUT = 50;
+	private final static long MAX_CONFIRM_TIMEOUT = 4000;
+	// Resend scheduler: precision of resend time, and slots for one turn of 5 seconds.
+	private final static long RESEND_TICK = 10;
+	private final static int RESEND_SLOTS = 512;
+	// IDs of received messages are remembered for duplicate detection: this many latest ones,
+	// for not less than three periods. Old confirmation resends come much faster.
+	private final static long RECEIVED_IDS_LIMIT = 1000000L;
+	private final static long RECEIVED_IDS_PERIOD = 10 * 60 * 1000;
+	// Node loop wakes up at least this often, even if nothing happens.
 	private final static int RECV_TIMEOUT = 500;
+	// Packets, processed in one turn of node loop.
+	private final static int RECV_BATCH_LIMIT = 64;
+	// Sequence numbered links: messages in flight per link, and when to acknowledge received messages.
+	private final static int WINDOW_SIZE = 64;
+	private final static int ACK_EVERY = 8;
+	private final static long ACK_DELAY = 20;
 
 	private final static int RESEND_LIMIT = -1;
-	private final static int RECV_PACKET_MAX_SIZE = 512;
+	// Datagram, that fits into Ethernet MTU with IP and UDP headers.
+	private final static int RECV_PACKET_MAX_SIZE = 1472;
+	// Count of free packets, kept for messages to neighbours.
+	private final static int PACKET_POOL_SIZE = 4 * WINDOW_SIZE;
+	// Time, for which packet waits for other packets to the same node, to be sent in one datagram.
+	private final static long DEFAULT_FLUSH_DELAY = 5;
 	private final static byte[] NO_PARENT = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF};
 
 	private final static Charset charset = Charset.forName("UTF-8");
@@ -32,24 +58,55 @@ public class Node implements NodeConstants
 	private byte[] nodeName;
 	private int lossPercentage;
 	private int port;
+	// Confirmation for every message instead of sequence numbered links, for nodes of older version.
+	private boolean useConfirmations;
+	// Zero turns batching off.
+	private long flushDelay;
 
 	private int connectedChildrenCount = 0;
 	private int expectedChildrenCount = 0;
 
 	private NodeData parent;
 	private Map<InetSocketAddress, NodeData> connectedNodes = new HashMap<>();
-	private LimitedMap<UUID, UUID> receivedMessageIDs;
-	LimitedMap.LimitController receivedMsgController = new LimitedMap.LimitController(1000000L);
+	private MessageIDSet receivedMessageIDs =
+			new MessageIDSet(RECEIVED_IDS_LIMIT, RECEIVED_IDS_PERIOD, System.currentTimeMillis());
 	LimitedMap.LimitController nonConfirmedMsgController = new LimitedMap.LimitController(1000000L);
+	private Map<InetSocketAddress, ReceiveWindow> receiveWindows = new HashMap<>();
+	private ResendScheduler resendScheduler =
+			new ResendScheduler(RESEND_TICK, RESEND_SLOTS, System.currentTimeMillis());
+
+	// Received packets are read in place, so these objects are reused for every packet.
+	private ByteBuffer receiveBuffer;
+	private MessageID receivedMsgID = new MessageID();
+	private DatagramPacket relayPacket = new DatagramPacket(new byte[0], 0);
+	private DatagramPacket confirmationPacket = PacketFactory.createConfirmation(new UUID(0, 0));
+	private long[] ackBlocks = new long[2 * ReceiveWindow.MAX_SACK_BLOCKS];
+	private List<NotConfirmedMessage> confirmedMessages = new ArrayList<>();
+	private PacketPool packetPool = new PacketPool(RECV_PACKET_MAX_SIZE, PACKET_POOL_SIZE);
+	// Datagrams are copied here for sending, so channel doesn't allocate temporary direct buffer.
+	private ByteBuffer sendBuffer = ByteBuffer.allocateDirect(RECV_PACKET_MAX_SIZE);
+	// Lines, read from console by separate thread.
+	private Queue<String> consoleLines = new ConcurrentLinkedQueue<>();
 
 
 	public Node(String nodeName, int port, int lossPercentage, InetSocketAddress parentAddress)
 	{
-		receivedMessageIDs = new LimitedMap<>(receivedMsgController);
+		this(nodeName, port, lossPercentage, parentAddress, false, DEFAULT_FLUSH_DELAY);
+	}
+
+	public Node(String nodeName,
+	            int port,
+	            int lossPercentage,
+	            InetSocketAddress parentAddress,
+	            boolean useConfirmations,
+	            long flushDelay)
+	{
 		this.strNodeName = nodeName;
 		this.nodeName = nodeName.getBytes(charset);
 		this.port = port;
 		this.lossPercentage = lossPercentage;
+		this.useConfirmations = useConfirmations;
+		this.flushDelay = (useConfirmations ? 0 : flushDelay);
 		parent = new NodeData(parentAddress, nonConfirmedMsgController);
 		if(parentAddress != null)
 		{
@@ -59,48 +116,51 @@ public class Node implements NodeConstants
 
 	public void start()
 	{
-		try(DatagramSocket socket = new DatagramSocket(port);
-		    Scanner scanner = new Scanner(System.in))
+		try(DatagramChannel channel = DatagramChannel.open();
+		    Selector selector = Selector.open())
 		{
-			socket.setSoTimeout(RECV_TIMEOUT);
-			byte[] recvPacketData = new byte[RECV_PACKET_MAX_SIZE];
-			DatagramPacket recvPacket = new DatagramPacket(recvPacketData, RECV_PACKET_MAX_SIZE);
+			channel.bind(new InetSocketAddress(port));
+			channel.configureBlocking(false);
+			channel.register(selector, SelectionKey.OP_READ);
+			receiveBuffer = ByteBuffer.allocate(RECV_PACKET_MAX_SIZE);
+			startConsoleReader(selector);
 
-			connectToParent(socket, CONNECT_FLAG_FirstConnect);
+			connectToParent(channel, CONNECT_FLAG_FirstConnect);
 
 			while(!shouldStop)
 			{
-				if(!isDisconnecting && System.in.available() > 0)
+				// Wakes up on incoming packet, console line, or in time for the next acknowledgement or resend.
+				selector.select(getSelectTimeout(System.currentTimeMillis()));
+				selector.selectedKeys().clear();
+
+				String line;
+				while(!isDisconnecting && (line = consoleLines.poll()) != null)
 				{
-					String line = scanner.nextLine();
 					switch(line)
 					{
 						case "q":
-							disconnect(socket);
+							disconnect(channel);
 							break;
 						case "n":
 							printNeighbors();
 							break;
 						default:
-							sendTextMessage(socket, line);
+							sendTextMessage(channel, line);
 					}
 				}
 
-				try
-				{
-					socket.receive(recvPacket);
-					int randNum = random.nextInt(100);
-					if(randNum >= lossPercentage)
-					{
-						parsePacket(recvPacket, socket);
-					}
-				}
-				catch(SocketTimeoutException e)
+				receivePackets(channel);
+
+				long currentTime = System.currentTimeMillis();
+				resendAllMessages(channel, currentTime);
+				if(!useConfirmations)
 				{
-					// No incoming packet. It's ok.
+					sendDueAcks(channel, currentTime);
+					flushDueBatches(channel, currentTime);
+					removeIdleReceiveWindows(currentTime);
 				}
-
-				resendAllMessages(socket, System.currentTimeMillis());
+				// Old IDs are dropped even if nothing is received.
+				receivedMessageIDs.expire(currentTime);
 
 				analyseExistenceQuestions();
 			}
@@ -111,34 +171,96 @@ public class Node implements NodeConstants
 		}
 	}
 
+	/**
+	 * Starts thread, that reads lines from console into <code>consoleLines</code> and wakes up selector.
+	 *
+	 * @param selector - selector of node loop
+	 */
+	private void startConsoleReader(Selector selector)
+	{
+		Thread reader = new Thread(() ->
+		{
+			Scanner scanner = new Scanner(System.in);
+			while(scanner.hasNextLine())
+			{
+				consoleLines.add(scanner.nextLine());
+				selector.wakeup();
+			}
+		}, "console-reader");
+		// Node stops on disconnect without waiting for end of input.
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Reads and processes packets, that have already arrived, but not more than
+	 * <code>RECV_BATCH_LIMIT</code> at once, so that resends and acknowledgements aren't late under load.
+	 *
+	 * @param channel - channel, used for receive and sent operations
+	 * @throws IOException
+	 */
+	private void receivePackets(DatagramChannel channel) throws IOException
+	{
+		for(int i = 0; i < RECV_BATCH_LIMIT; ++i)
+		{
+			receiveBuffer.clear();
+			// Channel reuses address object, while sender is the same.
+			InetSocketAddress senderAddress = (InetSocketAddress) channel.receive(receiveBuffer);
+			if(senderAddress == null)
+			{
+				return;
+			}
+			int randNum = random.nextInt(100);
+			if(randNum >= lossPercentage)
+			{
+				receiveBuffer.flip();
+				parseMessage(receiveBuffer, senderAddress, channel);
+			}
+		}
+	}
+
 	public static void main(String[] arguments)
 	{
-		System.out.println("Usage: <NodeName> <port> <lossPercentage> <(optional)parentIP> <(optional)parentPort>");
+		System.out.println("Usage: <NodeName> <port> <lossPercentage> <(optional)parentIP> <(optional)parentPort>" +
+		                   " <(optional)legacy> <(optional)flush=millis>");
 		Scanner scanner = new Scanner(System.in);
 		String line = scanner.nextLine();
 		String[] args = line.split(" ");
-		Node node;
-		if(args.length == 5)
-		{
-			node = new Node(
-					args[0],
-					Integer.parseInt(args[1]),
-					Integer.parseInt(args[2]),
-					new InetSocketAddress(args[3], Integer.parseInt(args[4])));
-		}
-		else if(args.length == 3)
-		{
-			node = new Node(
-					args[0],
-					Integer.parseInt(args[1]),
-					Integer.parseInt(args[2]),
-					null);
-		}
-		else
+		int argCount = (args.length >= 5 && args[4].matches("\\d+") ? 5 : 3);
+		if(args.length < argCount)
 		{
 			System.out.println("Invalid arguments");
 			return;
 		}
+
+		// Options follow node arguments.
+		boolean useConfirmations = false;
+		long flushDelay = DEFAULT_FLUSH_DELAY;
+		for(int i = argCount; i < args.length; ++i)
+		{
+			if(args[i].equals("legacy"))
+			{
+				// Node confirms every message, like nodes of older version do.
+				useConfirmations = true;
+			}
+			else if(args[i].startsWith("flush="))
+			{
+				flushDelay = Long.parseLong(args[i].substring("flush=".length()));
+			}
+			else
+			{
+				System.out.println("Invalid arguments");
+				return;
+			}
+		}
+
+		Node node = new Node(
+				args[0],
+				Integer.parseInt(args[1]),
+				Integer.parseInt(args[2]),
+				(argCount == 5 ? new InetSocketAddress(args[3], Integer.parseInt(args[4])) : null),
+				useConfirmations,
+				flushDelay);
 		node.start();
 	}
 
@@ -150,18 +272,35 @@ public class Node implements NodeConstants
 		}
 		else
 		{
-			System.err.print(strNodeName + ": Parent: " + parent.address.toString() + "\n Children: ");
+			System.err.print(strNodeName + ": Parent: " + describeLink(parent) + "\n Children: ");
 		}
-		for(InetSocketAddress address : connectedNodes.keySet())
+		for(Map.Entry<InetSocketAddress, NodeData> entry : connectedNodes.entrySet())
 		{
-			if(!address.equals(parent.address))
+			if(!entry.getKey().equals(parent.address))
 			{
-				System.err.print(address.toString() + " ");
+				System.err.print(describeLink(entry.getValue()) + " ");
 			}
 		}
 		System.err.println();
 	}
 
+	/**
+	 * Returns address of connected node with round trip time and count of resends.
+	 *
+	 * @param node - node data object, describing connected node
+	 * @return description of link
+	 */
+	private String describeLink(NodeData node)
+	{
+		String rtt = (node.rtt.hasSamples() ?
+		              String.format("rtt %.1f+-%.1f ms", node.rtt.getSmoothedRtt(), node.rtt.getRttDeviation()) :
+		              "rtt unknown");
+		return node.address.toString() + " (" + rtt +
+		       ", timeout " + node.rtt.getTimeout() + " ms" +
+		       ", resent " + node.retransmitCount +
+		       ", datagrams " + node.datagramCount + ")";
+	}
+
 	private void analyseExistenceQuestions()
 	{
 		if(isDisconnecting &&
@@ -175,110 +314,381 @@ public class Node implements NodeConstants
 	/**
 	 * Prints text message with its author.
 	 *
-	 * @param senderBytes  - author name bytes, encoded using <code>charset</code>
-	 * @param messageBytes - text message bytes, encoded using <code>charset</code>
+	 * @param data          - array, containing author name and text message, encoded using <code>charset</code>
+	 * @param senderOffset  - offset of author name
+	 * @param senderLength  - length of author name
+	 * @param messageOffset - offset of text message
+	 * @param messageLength - length of text message
 	 */
-	private void printMessage(byte[] senderBytes, byte[] messageBytes)
+	private void printMessage(byte[] data, int senderOffset, int senderLength, int messageOffset, int messageLength)
 	{
-		String sender = new String(senderBytes, charset);
-		String message = new String(messageBytes, charset);
+		String sender = new String(data, senderOffset, senderLength, charset);
+		String message = new String(data, messageOffset, messageLength, charset);
 
 		System.out.println(sender + ": " + message);
 	}
 
 	/**
-	 * Sends again all not confirmed by <code>node</code> messages,
-	 * for which time since last send exceeded <code>CONFIRM_TIMEOUT</code>.
+	 * Forgets removed nodes, that have no messages to confirm,
+	 * and sends again all messages, for which time since last send exceeded resend timeout of link.
 	 *
-	 * @param socket      - socket, used for sent operations
-	 * @param node        - node data object, describing destination node
+	 * @param channel     - channel, used for sent operations
 	 * @param currentTime - current time
 	 * @throws IOException
 	 */
-	private void resendMessagesToNode(DatagramSocket socket,
-	                                  NodeData node,
-	                                  long currentTime) throws IOException
+	private void resendAllMessages(DatagramChannel channel,
+	                               long currentTime) throws IOException
 	{
-		InetSocketAddress address = node.address;
-		Iterator<Pair<UUID, NotConfirmedMessage>> it = node.notConfirmedByNodeMsgs.iterator();
+		Iterator<Map.Entry<InetSocketAddress, NodeData>> it = connectedNodes.entrySet().iterator();
 		while(it.hasNext())
 		{
-			Pair<UUID, NotConfirmedMessage> messagePair = it.next();
+			Map.Entry<InetSocketAddress, NodeData> nodeDataEntry = it.next();
+			NodeData node = nodeDataEntry.getValue();
+			if(node.shouldBeRemoved && node.getNotConfirmedCount() == 0)
+			{
+				it.remove();
+				if(node != parent)
+				{
+					--connectedChildrenCount;
+					--expectedChildrenCount;
+				}
+			}
+		}
+		resendDueMessages(channel, currentTime);
+	}
+
+	/**
+	 * Sends again messages, whose deadline has passed.
+	 * Messages are taken from resend scheduler, so only due messages are looked at.
+	 *
+	 * @param channel     - channel, used for sent operations
+	 * @param currentTime - current time
+	 * @throws IOException
+	 */
+	private void resendDueMessages(DatagramChannel channel,
+	                               long currentTime) throws IOException
+	{
+		for(NotConfirmedMessage message : resendScheduler.pollDue(currentTime))
+		{
+			NodeData node = connectedNodes.get(message.address);
+			if(!isWaitedFor(message, node))
+			{
+				releasePacket(message);
+				continue;
+			}
 
-			UUID msgID = messagePair.first;
-			NotConfirmedMessage message = messagePair.second;
-			if(currentTime >= message.lastSendTime + CONFIRM_TIMOUT)
+			if(message.window != null)
+			{
+				transmit(channel, message, node, currentTime);
+			}
+			else
 			{
 				DatagramPacket packet = message.packet;
-				PacketFactory.changePacketUUID(packet, msgID);
-				packet.setSocketAddress(address);
-				socket.send(packet);
+				PacketFactory.changePacketUUID(packet, message.msgID);
+				sendDatagram(channel, packet, node);
+				message.lastSendTime = currentTime;
+			}
+			++message.resendCount;
+			++node.retransmitCount;
 
-				message.lastSendTime = System.currentTimeMillis();
-				++message.resendCount;
+			logger.info(strNodeName + ": Resending packet " + msgTypeToString(message.msgType) +
+			            " to " + message.address.toString() +
+			            (message.window != null ? " with number " + message.seq : " with id " + message.msgID));
 
-				if(message.resendCount == RESEND_LIMIT)
+			if(message.resendCount == RESEND_LIMIT)
+			{
+				releasePacket(message);
+				if(message.window != null)
 				{
-					it.remove();
+					message.window.cancel(message);
+					sendWaiting(channel, node, currentTime);
 				}
+				else
+				{
+					node.notConfirmedByNodeMsgs.remove(message.msgID);
+				}
+			}
+			else
+			{
+				message.deadline = currentTime + node.rtt.getTimeout(message.resendCount);
+				resendScheduler.schedule(message);
+			}
+		}
+	}
+
+	/**
+	 * Returns packet of message, that is not going to be sent anymore, to pool.
+	 *
+	 * @param message - message, that was confirmed or dropped
+	 */
+	private void releasePacket(NotConfirmedMessage message)
+	{
+		if(message.packet != null)
+		{
+			packetPool.release(message.packet);
+			message.packet = null;
+		}
+	}
 
-				logger.info(strNodeName + ": Resending packet " + msgTypeToString(packet.getData()[0]) +
-				            " to " + address.toString() +
-				            " with id " + msgID.toString());
+	/**
+	 * Checks, if message, taken from resend scheduler, still should be resent.
+	 * Messages of removed or replaced nodes and messages, evicted by limit, are not cancelled one by one,
+	 * they are just dropped here.
+	 *
+	 * @param message - message
+	 * @param node    - node data object, that is connected now at address of message
+	 * @return true if message should be resent
+	 */
+	private boolean isWaitedFor(NotConfirmedMessage message, NodeData node)
+	{
+		if(message.window != null)
+		{
+			if(message.isConfirmed)
+			{
+				return false;
 			}
+			if(node == null || node.sendWindow != message.window)
+			{
+				// Node was replaced by new one with the same address, so nobody waits for this link.
+				message.window.clear();
+				return false;
+			}
+			return true;
 		}
+		return (node != null && node.notConfirmedByNodeMsgs.get(message.msgID) == message);
 	}
 
 	/**
-	 * For each connected node sends again all not confirmed messages,
-	 * for which time since last send exceeded <code>CONFIRM_TIMEOUT</code>.
+	 * Sends packets, waiting in queue of link, while window of link allows.
 	 *
-	 * @param socket      - socket, used for sent operations
+	 * @param channel     - channel, used for sent operations
+	 * @param node        - node data object, describing destination node
 	 * @param currentTime - current time
 	 * @throws IOException
 	 */
-	private void resendAllMessages(DatagramSocket socket,
-	                               long currentTime) throws IOException
+	private void sendWaiting(DatagramChannel channel,
+	                         NodeData node,
+	                         long currentTime) throws IOException
 	{
-		Iterator<Map.Entry<InetSocketAddress, NodeData>> it = connectedNodes.entrySet().iterator();
-		while(it.hasNext())
+		SendWindow window = node.sendWindow;
+		// Like in Nagle's algorithm, packets to idle link go out at once,
+		// and packets, sent while others wait for acknowledgement, wait in batch for flush delay.
+		boolean isIdle = (window.getInFlightCount() == 0);
+		NotConfirmedMessage message;
+		while((message = window.pollSendable(currentTime)) != null)
 		{
-			Map.Entry<InetSocketAddress, NodeData> nodeDataEntry = it.next();
-			NodeData node = nodeDataEntry.getValue();
-			if(node.shouldBeRemoved && node.notConfirmedByNodeMsgs.size() == 0)
+			transmit(channel, message, node, currentTime);
+			message.deadline = currentTime + node.rtt.getTimeout();
+			resendScheduler.schedule(message);
+
+			logger.info(strNodeName + ": Sending packet " + msgTypeToString(message.msgType) +
+			            " to " + window.address.toString() +
+			            " with number " + message.seq);
+		}
+		if(isIdle && flushDelay != 0)
+		{
+			flushBatch(channel, node);
+		}
+	}
+
+	private void transmit(DatagramChannel channel,
+	                      NotConfirmedMessage message,
+	                      NodeData node,
+	                      long currentTime) throws IOException
+	{
+		DatagramPacket packet = message.packet;
+		PacketFactory.changePacketLink(packet, message.seq, message.window.linkID);
+		if(flushDelay == 0 || !node.batch.canHold(packet))
+		{
+			sendDatagram(channel, packet, node);
+		}
+		else
+		{
+			if(!node.batch.fits(packet))
 			{
-				it.remove();
-				if(node != parent)
+				flushBatch(channel, node);
+			}
+			node.batch.add(packet, currentTime + flushDelay);
+		}
+		message.lastSendTime = currentTime;
+	}
+
+	/**
+	 * Sends acknowledgements, that are due, to all neighbours.
+	 * Acknowledgement to connected node goes together with packets, waiting in batch.
+	 *
+	 * @param channel     - channel, used for sent operations
+	 * @param currentTime - current time
+	 * @throws IOException
+	 */
+	private void sendDueAcks(DatagramChannel channel,
+	                         long currentTime) throws IOException
+	{
+		for(ReceiveWindow window : receiveWindows.values())
+		{
+			if(window.isAckDue(currentTime))
+			{
+				NodeData node = connectedNodes.get(window.address);
+				if(flushDelay != 0 && node != null)
 				{
-					--connectedChildrenCount;
-					--expectedChildrenCount;
+					flushBatch(channel, node);
+				}
+				else
+				{
+					DatagramPacket packet = window.createAck();
+					sendDatagram(channel, packet, node);
 				}
+
+				logger.info(strNodeName + ": Acknowledging packets from " + window.address.toString());
 			}
-			else
+		}
+	}
+
+	/**
+	 * Sends batches, whose flush delay has passed.
+	 *
+	 * @param channel     - channel, used for sent operations
+	 * @param currentTime - current time
+	 * @throws IOException
+	 */
+	private void flushDueBatches(DatagramChannel channel,
+	                             long currentTime) throws IOException
+	{
+		for(NodeData node : connectedNodes.values())
+		{
+			if(node.batch.getFlushDeadline() <= currentTime)
 			{
-				resendMessagesToNode(socket, node, currentTime);
+				flushBatch(channel, node);
 			}
 		}
 	}
 
+	/**
+	 * Sends batch of packets to node. Not yet acknowledged messages from this node
+	 * are acknowledged in the same datagram.
+	 *
+	 * @param channel - channel, used for sent operations
+	 * @param node    - node data object, describing destination node
+	 * @throws IOException
+	 */
+	private void flushBatch(DatagramChannel channel,
+	                        NodeData node) throws IOException
+	{
+		ReceiveWindow window = receiveWindows.get(node.address);
+		if(window != null && window.hasUnacked())
+		{
+			DatagramPacket ack = window.createAck();
+			if(!node.batch.fits(ack))
+			{
+				sendBatch(channel, node);
+			}
+			node.batch.add(ack, PacketBatch.NO_DEADLINE);
+		}
+		sendBatch(channel, node);
+	}
+
+	private void sendBatch(DatagramChannel channel,
+	                       NodeData node) throws IOException
+	{
+		if(node.batch.isEmpty())
+		{
+			return;
+		}
+		int packetCount = node.batch.size();
+		sendDatagram(channel, node.batch.takeDatagram(), node);
+
+		logger.info(strNodeName + ": Sending batch of " + packetCount + " packets to " + node.address.toString());
+	}
+
+	/**
+	 * Sends datagram to node and counts it.
+	 *
+	 * @param channel - channel, used for sent operations
+	 * @param packet  - datagram
+	 * @param node    - node data object, describing destination node, or null if node is not connected
+	 * @throws IOException
+	 */
+	private void sendDatagram(DatagramChannel channel,
+	                          DatagramPacket packet,
+	                          NodeData node) throws IOException
+	{
+		if(node != null)
+		{
+			packet.setSocketAddress(node.address);
+			++node.datagramCount;
+		}
+		ByteBuffer buffer;
+		if(packet.getLength() <= sendBuffer.capacity())
+		{
+			buffer = sendBuffer;
+			buffer.clear();
+			buffer.put(packet.getData(), packet.getOffset(), packet.getLength());
+			buffer.flip();
+		}
+		else
+		{
+			buffer = ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength());
+		}
+		// If send buffer of socket is full, datagram is dropped like lost one and is resent later.
+		channel.send(buffer, packet.getSocketAddress());
+	}
+
+	/**
+	 * @param currentTime - current time
+	 * @return time to wait for incoming packet or console line, so that the next resend or acknowledgement isn't late
+	 */
+	private int getSelectTimeout(long currentTime)
+	{
+		long deadline = resendScheduler.getNextDeadline();
+		for(ReceiveWindow window : receiveWindows.values())
+		{
+			deadline = Math.min(deadline, window.getAckDeadline());
+		}
+		for(NodeData node : connectedNodes.values())
+		{
+			deadline = Math.min(deadline, node.batch.getFlushDeadline());
+		}
+		// Zero timeout means infinite one.
+		return (int) Math.max(1, Math.min(deadline - currentTime, RECV_TIMEOUT));
+	}
+
 	/**
 	 * Sends packet to given node.
 	 *
-	 * @param socket - socket, used for sent operations
-	 * @param packet - packet to be sent
-	 * @param node   - node data object, describing destination node
+	 * @param channel - channel, used for sent operations
+	 * @param packet  - packet to be sent
+	 * @param node    - node data object, describing destination node
 	 * @throws IOException
 	 */
-	private void sendPacketTo(DatagramSocket socket,
+	private void sendPacketTo(DatagramChannel channel,
 	                          DatagramPacket packet,
 	                          NodeData node) throws IOException
 	{
 		long cur_time = System.currentTimeMillis();
+		// Every link rewrites header of its own copy.
+		packet = packetPool.copyOf(packet);
+		if(!useConfirmations)
+		{
+			DatagramPacket dropped = node.sendWindow.offer(packet);
+			if(dropped != null)
+			{
+				logger.info(strNodeName + ": Dropping the oldest waiting packet " + msgTypeToString(dropped.getData()[0]) +
+				            " to " + node.address.toString() + ", too many messages are not confirmed");
+				packetPool.release(dropped);
+			}
+			sendWaiting(channel, node, cur_time);
+			return;
+		}
+
 		UUID msgID = UUID.randomUUID();
 		PacketFactory.changePacketUUID(packet, msgID);
-		packet.setSocketAddress(node.address);
-		socket.send(packet);
-		node.notConfirmedByNodeMsgs.put(msgID, new NotConfirmedMessage(packet, cur_time));
+		sendDatagram(channel, packet, node);
+		NotConfirmedMessage message = new NotConfirmedMessage(packet, cur_time);
+		message.address = node.address;
+		message.msgID = msgID;
+		message.deadline = cur_time + node.rtt.getTimeout();
+		node.notConfirmedByNodeMsgs.put(msgID, message);
+		resendScheduler.schedule(message);
 
 		logger.info(strNodeName + ": Sending packet " + msgTypeToString(packet.getData()[0]) +
 		            " to " + node.address.toString() +
@@ -288,26 +698,26 @@ public class Node implements NodeConstants
 	/**
 	 * Broadcasts packet to all connected nodes.
 	 *
-	 * @param socket - socket, used for sent operations
-	 * @param packet - packet to be sent
+	 * @param channel - channel, used for sent operations
+	 * @param packet  - packet to be sent
 	 * @throws IOException
 	 */
-	private void broadcastPacket(DatagramSocket socket,
+	private void broadcastPacket(DatagramChannel channel,
 	                             DatagramPacket packet) throws IOException
 	{
-		broadcastPacket(socket, packet, null);
+		broadcastPacket(channel, packet, null);
 	}
 
 	/**
 	 * Broadcasts packet to all connected nodes, except one,
 	 * described by node data object <code>dontSendTo</code>.
 	 *
-	 * @param socket     - socket, used for sent operations
+	 * @param channel    - channel, used for sent operations
 	 * @param packet     - packet to be sent
 	 * @param dontSendTo - node data object, describing node, that shouldn't get this packet
 	 * @throws IOException
 	 */
-	private void broadcastPacket(DatagramSocket socket,
+	private void broadcastPacket(DatagramChannel channel,
 	                             DatagramPacket packet,
 	                             InetSocketAddress dontSendTo) throws IOException
 	{
@@ -316,7 +726,7 @@ public class Node implements NodeConstants
 			NodeData node = entry.getValue();
 			if(!node.address.equals(dontSendTo))
 			{
-				sendPacketTo(socket, packet, node);
+				sendPacketTo(channel, packet, node);
 			}
 		}
 	}
@@ -329,17 +739,17 @@ public class Node implements NodeConstants
 	 * or it was redirected to new parent by disconnecting parent (CONNECT_FLAG_Reconnect).
 	 * </p>
 	 *
-	 * @param socket - socket, used for sent operations
-	 * @param flag   - connection flag for message
+	 * @param channel - channel, used for sent operations
+	 * @param flag    - connection flag for message
 	 * @throws IOException
 	 */
-	private void connectToParent(DatagramSocket socket, byte flag) throws IOException
+	private void connectToParent(DatagramChannel channel, byte flag) throws IOException
 	{
 		if(parent.address != null)
 		{
 			DatagramPacket packet = PacketFactory.createChildConnect(flag);
 
-			sendPacketTo(socket, packet, parent);
+			sendPacketTo(channel, packet, parent);
 
 			logger.info(strNodeName + ": Connecting to parent " + parent.address.toString());
 		}
@@ -349,25 +759,25 @@ public class Node implements NodeConstants
 	 * Redirects given child to this node's parent by sending
 	 * <code>MSG_TYPE_ChangeParent</code> message.
 	 *
-	 * @param socket - socket, used for sent operations
-	 * @param node   - node data object, describing destination node
+	 * @param channel - channel, used for sent operations
+	 * @param node    - node data object, describing destination node
 	 * @throws IOException
 	 */
-	private void makeChildChangeParent(DatagramSocket socket,
+	private void makeChildChangeParent(DatagramChannel channel,
 	                                   NodeData node) throws IOException
 	{
 		byte[] parentAddress = parent.address.getAddress().getAddress();
 		int port = parent.address.getPort();
 		DatagramPacket packet = PacketFactory.createChangeParent(parentAddress, port);
 
-		sendPacketTo(socket, packet, node);
+		sendPacketTo(channel, packet, node);
 	}
 
-	private void makeRoot(DatagramSocket socket,
+	private void makeRoot(DatagramChannel channel,
 	                      NodeData node) throws IOException
 	{
 		DatagramPacket packet = PacketFactory.createChangeParent(NO_PARENT, 1);
-		sendPacketTo(socket, packet, node);
+		sendPacketTo(channel, packet, node);
 		parent = node;
 		isFormerRoot = true;
 		--expectedChildrenCount;
@@ -378,33 +788,33 @@ public class Node implements NodeConstants
 	 * Redirects all children to this node's parent by sending
 	 * <code>MSG_TYPE_ChangeParent</code> message.
 	 *
-	 * @param socket - socket, used for sent operations
+	 * @param channel - channel, used for sent operations
 	 * @throws IOException
 	 */
-	private void makeChildrenChangeParent(DatagramSocket socket) throws IOException
+	private void makeChildrenChangeParent(DatagramChannel channel) throws IOException
 	{
 		byte[] parentAddress = parent.address.getAddress().getAddress();
 		int port = parent.address.getPort();
 		DatagramPacket packet = PacketFactory.createChangeParent(parentAddress, port);
 
-		broadcastPacket(socket, packet, parent.address);
+		broadcastPacket(channel, packet, parent.address);
 	}
 
-	private void offerChildrenToNode(DatagramSocket socket,
+	private void offerChildrenToNode(DatagramChannel channel,
 	                                 NodeData node) throws IOException
 	{
 		DatagramPacket packet = PacketFactory.createGetChildren(expectedChildrenCount);
 
-		sendPacketTo(socket, packet, node);
+		sendPacketTo(channel, packet, node);
 	}
 
-	private void disconnect(DatagramSocket socket) throws IOException
+	private void disconnect(DatagramChannel channel) throws IOException
 	{
 		isDisconnecting = true;
 		if(parent.address != null)
 		{
 			// This node is not root.
-			offerChildrenToNode(socket, parent);
+			offerChildrenToNode(channel, parent);
 		}
 		else
 		{
@@ -419,7 +829,7 @@ public class Node implements NodeConstants
 			else
 			{
 				NodeData newRoot = connectedNodes.values().iterator().next();
-				makeRoot(socket, newRoot);
+				makeRoot(channel, newRoot);
 			}
 		}
 	}
@@ -427,33 +837,41 @@ public class Node implements NodeConstants
 	/**
 	 * Sends to all connected nodes text message, marked <code>nodeName</code> as author.
 	 *
-	 * @param socket  - socket, used for sent operations
+	 * @param channel - channel, used for sent operations
 	 * @param message - text to be sent
 	 * @throws IOException
 	 */
-	private void sendTextMessage(DatagramSocket socket, String message) throws IOException
+	private void sendTextMessage(DatagramChannel channel, String message) throws IOException
 	{
 		byte[] msgBytes = message.getBytes(charset);
 
 		DatagramPacket packet = PacketFactory.createTextMsg(nodeName, msgBytes);
-		broadcastPacket(socket, packet);
+		broadcastPacket(channel, packet);
 	}
 
 	/**
 	 * Sends message <code>MSG_TYPE_Confirmation</code>, confirming receive of message.
+	 * On sequence numbered link message is just marked as received: it is acknowledged later
+	 * together with other messages.
 	 *
-	 * @param socket        - socket, used for sent operations
-	 * @param msgID         - UUID of message, which receive is being confirmed
+	 * @param channel       - channel, used for sent operations
+	 * @param msgID         - ID of message, which receive is being confirmed
 	 * @param senderAddress - destination node address
 	 * @throws IOException
 	 */
-	private void confirmReceive(DatagramSocket socket,
-	                            UUID msgID,
+	private void confirmReceive(DatagramChannel channel,
+	                            MessageID msgID,
 	                            InetSocketAddress senderAddress) throws IOException
 	{
-		DatagramPacket packet = PacketFactory.createConfirmation(msgID);
+		if(msgID.window != null)
+		{
+			msgID.window.confirm(msgID.seq, System.currentTimeMillis());
+			return;
+		}
+
+		DatagramPacket packet = PacketFactory.changePacketUUID(confirmationPacket, msgID.uuidMost, msgID.uuidLeast);
 		packet.setSocketAddress(senderAddress);
-		socket.send(packet);
+		sendDatagram(channel, packet, connectedNodes.get(senderAddress));
 
 		logger.info(strNodeName + ": Confirming packet from " + senderAddress.toString() +
 		            " with id " + msgID.toString());
@@ -469,11 +887,13 @@ public class Node implements NodeConstants
 		++expectedChildrenCount;
 		++connectedChildrenCount;
 		formerRoot.notConfirmedByNodeMsgs.clear();
+		formerRoot.sendWindow.clear();
 	}
 
 	private void removeNode(NodeData node)
 	{
 		node.notConfirmedByNodeMsgs.clear();
+		node.sendWindow.clear();
 		node.shouldBeRemoved = true;
 		connectedNodes.remove(node.address);
 	}
@@ -494,42 +914,79 @@ public class Node implements NodeConstants
 	}
 
 	/**
-	 * Parses packet, determines its message type and provides proper processing.
+	 * Determines message type and provides proper processing.
 	 *
-	 * @param packet - packet to be parsed
-	 * @param socket - socket, used for sent operations, if it is necessary for processing
+	 * @param buffer        - buffer, containing message, from message type to the end of message
+	 * @param senderAddress - sender address
+	 * @param channel       - channel, used for sent operations, if it is necessary for processing
 	 * @throws IOException
 	 */
-	private void parsePacket(DatagramPacket packet, DatagramSocket socket) throws IOException
+	private void parseMessage(ByteBuffer buffer,
+	                          InetSocketAddress senderAddress,
+	                          DatagramChannel channel) throws IOException
 	{
-		ByteBuffer buffer = ByteBuffer.wrap(packet.getData());
-		InetSocketAddress senderAddress = new InetSocketAddress(packet.getAddress(), packet.getPort());
-
+		if(buffer.remaining() < HEADER_SIZE)
+		{
+			return;
+		}
+		int messageStart = buffer.position();
 		byte msgType = buffer.get();
-		long uuidLeastSignBits = buffer.getLong();
-		long uuidMostSignBits = buffer.getLong();
+		// UUID of message, or its sequence number and link ID.
+		long headerFirst = buffer.getLong();
+		long headerSecond = buffer.getLong();
 
-		UUID msgID = new UUID(uuidMostSignBits, uuidLeastSignBits);
+		MessageID msgID = receivedMsgID;
+		msgID.start = messageStart;
+		if(msgType == MSG_TYPE_Batch)
+		{
+			handleBatchMsg(buffer, senderAddress, channel);
+			return;
+		}
+		else if(useConfirmations)
+		{
+			msgID.setUUID(headerSecond, headerFirst, receivedMessageIDs.contains(headerSecond, headerFirst));
+		}
+		else if(msgType == MSG_TYPE_Ack)
+		{
+			handleAckMsg(headerSecond, headerFirst, buffer, senderAddress, channel);
+			return;
+		}
+		else
+		{
+			ReceiveWindow window = getReceiveWindow(senderAddress, headerSecond);
+			if(window == null)
+			{
+				logger.info(strNodeName + ": Ignoring packet of old link from " + senderAddress.toString());
+				return;
+			}
+			msgID.setSeq(window, headerFirst, window.contains(headerFirst));
+		}
 
+		if(buffer.remaining() < getMinBodySize(msgType))
+		{
+			logger.info(strNodeName + ": Ignoring truncated " + msgTypeToString(msgType) +
+			            " from " + senderAddress.toString());
+			return;
+		}
 		logger.info(strNodeName + ": Received " + msgTypeToString(msgType) +
 		            " from " + senderAddress.toString() +
 		            " with id " + msgID.toString());
 		switch(msgType)
 		{
 			case MSG_TYPE_ChildConnect:
-				handleChildConnectMsg(msgID, buffer, senderAddress, socket);
+				handleChildConnectMsg(msgID, buffer, senderAddress, channel);
 				break;
 			case MSG_TYPE_ChangeParent:
-				handleChangeParentMsg(msgID, buffer, senderAddress, socket);
+				handleChangeParentMsg(msgID, buffer, senderAddress, channel);
 				break;
 			case MSG_TYPE_GetChildren:
-				handleGetChildrenMsg(msgID, buffer, senderAddress, socket);
+				handleGetChildrenMsg(msgID, buffer, senderAddress, channel);
 				break;
 			case MSG_TYPE_TextMessage:
-				handleTextMessageMsg(msgID, buffer, senderAddress, socket);
+				handleTextMessageMsg(msgID, buffer, senderAddress, channel);
 				break;
 			case MSG_TYPE_Confirmation:
-				handleConfirmationMsg(msgID, senderAddress, socket);
+				handleConfirmationMsg(msgID, senderAddress, channel);
 				break;
 		}
 	}
@@ -537,21 +994,21 @@ public class Node implements NodeConstants
 	/**
 	 * Provides proper processing for <code>MSG_TYPE_ChangeParent</code> messages.
 	 *
-	 * @param msgID         - message UUID
+	 * @param msgID         - message ID
 	 * @param buffer        - buffer, containing message data
 	 * @param senderAddress - sender address
-	 * @param socket        - socket, used for sent operations
+	 * @param channel       - channel, used for sent operations
 	 * @throws IOException
 	 */
-	private void handleChangeParentMsg(UUID msgID,
+	private void handleChangeParentMsg(MessageID msgID,
 	                                   ByteBuffer buffer,
 	                                   InetSocketAddress senderAddress,
-	                                   DatagramSocket socket) throws IOException
+	                                   DatagramChannel channel) throws IOException
 	{
 		NodeData senderNode = connectedNodes.get(senderAddress);
-		confirmReceive(socket, msgID, senderAddress);
+		confirmReceive(channel, msgID, senderAddress);
 
-		if(!receivedMessageIDs.contains(msgID))
+		if(!msgID.isReceived)
 		{
 			byte[] address_bytes = new byte[4];
 			buffer.get(address_bytes);
@@ -569,26 +1026,26 @@ public class Node implements NodeConstants
 						InetAddress.getByAddress(address_bytes), port);
 				parent = new NodeData(newParent, nonConfirmedMsgController);
 				connectedNodes.put(parent.address, parent);
-				connectToParent(socket, CONNECT_FLAG_Reconnect);
+				connectToParent(channel, CONNECT_FLAG_Reconnect);
 			}
 
-			receivedMessageIDs.put(msgID, msgID);
+			rememberReceived(msgID);
 		}
 	}
 
 	/**
 	 * Provides proper processing for <code>MSG_TYPE_ChildConnect</code> messages.
 	 *
-	 * @param msgID         - message UUID
+	 * @param msgID         - message ID
 	 * @param buffer        - buffer, containing message data
 	 * @param senderAddress - sender address
-	 * @param socket        - socket, used for sent operations
+	 * @param channel       - channel, used for sent operations
 	 * @throws IOException
 	 */
-	private void handleChildConnectMsg(UUID msgID,
+	private void handleChildConnectMsg(MessageID msgID,
 	                                   ByteBuffer buffer,
 	                                   InetSocketAddress senderAddress,
-	                                   DatagramSocket socket) throws IOException
+	                                   DatagramChannel channel) throws IOException
 	{
 		byte flag = buffer.get();
 		if(isDisconnecting && flag == CONNECT_FLAG_FirstConnect)
@@ -601,10 +1058,10 @@ public class Node implements NodeConstants
 		}
 		else
 		{
-			confirmReceive(socket, msgID, senderAddress);
+			confirmReceive(channel, msgID, senderAddress);
 		}
 
-		if(!receivedMessageIDs.contains(msgID))
+		if(!msgID.isReceived)
 		{
 			if(flag == CONNECT_FLAG_FirstConnect)
 			{
@@ -619,142 +1076,329 @@ public class Node implements NodeConstants
 			{
 				if(parent.address == null)
 				{
-					makeRoot(socket, senderNode);
+					makeRoot(channel, senderNode);
 				}
 				else
 				{
-					makeChildChangeParent(socket, senderNode);
+					makeChildChangeParent(channel, senderNode);
 				}
 			}
 
-			receivedMessageIDs.put(msgID, msgID);
+			rememberReceived(msgID);
 		}
 	}
 
 	/**
 	 * Provides proper processing for <code>MSG_TYPE_TextMessage</code> messages.
 	 *
-	 * @param msgID         - message UUID
+	 * @param msgID         - message ID
 	 * @param buffer        - buffer, containing message data
 	 * @param senderAddress - sender address
-	 * @param socket        - socket, used for sent operations
+	 * @param channel       - channel, used for sent operations
 	 * @throws IOException
 	 */
-	private void handleTextMessageMsg(UUID msgID,
+	private void handleTextMessageMsg(MessageID msgID,
 	                                  ByteBuffer buffer,
 	                                  InetSocketAddress senderAddress,
-	                                  DatagramSocket socket) throws IOException
+	                                  DatagramChannel channel) throws IOException
 	{
-		confirmReceive(socket, msgID, senderAddress);
+		confirmReceive(channel, msgID, senderAddress);
 
-		if(!receivedMessageIDs.contains(msgID))
+		if(!msgID.isReceived)
 		{
 			if(!isDisconnecting)
 			{
+				// Author and text are read in place.
 				int senderNameLen = buffer.getInt();
-				byte[] senderName = new byte[senderNameLen];
-				buffer.get(senderName);
+				if(senderNameLen < 0 || senderNameLen > buffer.remaining() - SIZEOF_INT)
+				{
+					return;
+				}
+				int senderNameOffset = buffer.position();
+				buffer.position(senderNameOffset + senderNameLen);
 				int messageLength = buffer.getInt();
-				byte[] message = new byte[messageLength];
-				buffer.get(message);
-				printMessage(senderName, message);
+				if(messageLength < 0 || messageLength > buffer.remaining())
+				{
+					return;
+				}
+				int messageOffset = buffer.position();
+				buffer.position(messageOffset + messageLength);
 
-				DatagramPacket packet = PacketFactory.createTextMsg(senderName, message);
+				byte[] data = buffer.array();
+				int arrayOffset = buffer.arrayOffset();
+				printMessage(data, arrayOffset + senderNameOffset, senderNameLen,
+				             arrayOffset + messageOffset, messageLength);
 
-				broadcastPacket(socket, packet, senderAddress);
+				// Received bytes are relayed as they are, only header is rewritten for every link.
+				relayPacket.setData(data, arrayOffset + msgID.start, buffer.position() - msgID.start);
+				broadcastPacket(channel, relayPacket, senderAddress);
 			}
 
-			receivedMessageIDs.put(msgID, msgID);
+			rememberReceived(msgID);
 		}
 	}
 
 	/**
 	 * Provides proper processing for <code>MSG_TYPE_GetChildren</code> messages.
 	 *
-	 * @param msgID         - message UUID
+	 * @param msgID         - message ID
 	 * @param buffer        - buffer, containing message data
 	 * @param senderAddress - sender address
-	 * @param socket        - socket, used for sent operations
+	 * @param channel       - channel, used for sent operations
 	 * @throws IOException
 	 */
-	private void handleGetChildrenMsg(UUID msgID,
+	private void handleGetChildrenMsg(MessageID msgID,
 	                                  ByteBuffer buffer,
 	                                  InetSocketAddress senderAddress,
-	                                  DatagramSocket socket) throws IOException
+	                                  DatagramChannel channel) throws IOException
 	{
 		NodeData senderNode = connectedNodes.get(senderAddress);
 
-		if(!receivedMessageIDs.contains(msgID))
+		if(!msgID.isReceived)
 		{
 			if(!isDisconnecting)
 			{
 				// Accept child's children only if isn't disconnecting.
-				confirmReceive(socket, msgID, senderAddress);
+				confirmReceive(channel, msgID, senderAddress);
 
 				expectedChildrenCount += buffer.getInt();
 				removeChild(senderNode);
 
 				// Remember as received only if accepted child's children.
-				receivedMessageIDs.put(msgID, msgID);
+				rememberReceived(msgID);
 			}
 		}
 		else
 		{
 			// If receivedMessageIDS contains in message,
 			// then this node already decided to give positive answer to request.
-			confirmReceive(socket, msgID, senderAddress);
+			confirmReceive(channel, msgID, senderAddress);
 		}
 	}
 
 	/**
 	 * Provides proper processing for <code>MSG_TYPE_Confirmation</code> messages.
 	 *
-	 * @param msgID         - message UUID
+	 * @param msgID         - message ID
 	 * @param senderAddress - sender address
-	 * @param socket        - socket, used for sent operations
+	 * @param channel       - channel, used for sent operations
 	 * @throws IOException
 	 */
-	private void handleConfirmationMsg(UUID msgID,
+	private void handleConfirmationMsg(MessageID msgID,
 	                                   InetSocketAddress senderAddress,
-	                                   DatagramSocket socket) throws IOException
+	                                   DatagramChannel channel) throws IOException
 	{
-		if(!receivedMessageIDs.contains(msgID))
+		if(!msgID.isReceived)
 		{
 			NodeData senderNode = connectedNodes.get(senderAddress);
-			NotConfirmedMessage message = senderNode.notConfirmedByNodeMsgs.get(msgID);
+			NotConfirmedMessage message = senderNode.notConfirmedByNodeMsgs.get(msgID.uuidMost, msgID.uuidLeast);
 			if(message != null)
 			{
-				senderNode.notConfirmedByNodeMsgs.remove(msgID);
-				switch(message.msgType)
+				senderNode.notConfirmedByNodeMsgs.remove(msgID.uuidMost, msgID.uuidLeast);
+				resendScheduler.cancel(message);
+				releasePacket(message);
+				if(message.resendCount == 0)
+				{
+					senderNode.rtt.addSample(System.currentTimeMillis() - message.lastSendTime);
+				}
+				messageConfirmed(message.msgType, senderNode, senderAddress, channel);
+			}
+
+			rememberReceived(msgID);
+		}
+	}
+
+	/**
+	 * Provides proper processing for <code>MSG_TYPE_Batch</code> messages:
+	 * every packet of batch is processed like separate one.
+	 *
+	 * @param buffer        - buffer, containing count of packets and packets with their lengths
+	 * @param senderAddress - sender address
+	 * @param channel       - channel, used for sent operations
+	 * @throws IOException
+	 */
+	private void handleBatchMsg(ByteBuffer buffer,
+	                            InetSocketAddress senderAddress,
+	                            DatagramChannel channel) throws IOException
+	{
+		if(buffer.remaining() < SIZEOF_INT)
+		{
+			return;
+		}
+		int packetCount = buffer.getInt();
+		for(int i = 0; i < packetCount && buffer.remaining() >= SIZEOF_INT; ++i)
+		{
+			int length = buffer.getInt();
+			if(length <= 0 || length > buffer.remaining())
+			{
+				return;
+			}
+			// Packet is parsed in place, with limit at its end.
+			int batchLimit = buffer.limit();
+			int packetEnd = buffer.position() + length;
+			buffer.limit(packetEnd);
+			parseMessage(buffer, senderAddress, channel);
+			buffer.limit(batchLimit);
+			buffer.position(packetEnd);
+		}
+	}
+
+	/**
+	 * Provides proper processing for <code>MSG_TYPE_Ack</code> messages.
+	 *
+	 * @param linkID        - ID of acknowledged link
+	 * @param cumulative    - all messages up to this sequence number are received
+	 * @param buffer        - buffer, containing ranges of received messages above <code>cumulative</code>
+	 * @param senderAddress - sender address
+	 * @param channel       - channel, used for sent operations
+	 * @throws IOException
+	 */
+	private void handleAckMsg(long linkID,
+	                          long cumulative,
+	                          ByteBuffer buffer,
+	                          InetSocketAddress senderAddress,
+	                          DatagramChannel channel) throws IOException
+	{
+		NodeData senderNode = connectedNodes.get(senderAddress);
+		if(senderNode == null || senderNode.sendWindow.linkID != linkID)
+		{
+			// Acknowledgement of link, that doesn't exist anymore.
+			return;
+		}
+		// Truncated or malformed acknowledgement is dropped.
+		if(buffer.remaining() < SIZEOF_INT)
+		{
+			return;
+		}
+		int blockCount = buffer.getInt();
+		if(blockCount < 0 || blockCount > ReceiveWindow.MAX_SACK_BLOCKS ||
+		   buffer.remaining() < 2 * blockCount * SIZEOF_LONG)
+		{
+			return;
+		}
+		for(int i = 0; i < 2 * blockCount; ++i)
+		{
+			ackBlocks[i] = buffer.getLong();
+		}
+
+		logger.info(strNodeName + ": Received Ack from " + senderAddress.toString() +
+		            " up to number " + cumulative + " with " + blockCount + " ranges above");
+
+		long currentTime = System.currentTimeMillis();
+		List<NotConfirmedMessage> confirmed = confirmedMessages;
+		confirmed.clear();
+		senderNode.sendWindow.acknowledge(cumulative, ackBlocks, blockCount, confirmed);
+		for(NotConfirmedMessage message : confirmed)
+		{
+			resendScheduler.cancel(message);
+			releasePacket(message);
+			if(message.resendCount == 0)
+			{
+				senderNode.rtt.addSample(currentTime - message.lastSendTime);
+			}
+		}
+		sendWaiting(channel, senderNode, currentTime);
+		for(NotConfirmedMessage message : confirmed)
+		{
+			if(senderNode.shouldBeRemoved)
+			{
+				// Link was closed by previous message, other messages don't matter anymore.
+				break;
+			}
+			messageConfirmed(message.msgType, senderNode, senderAddress, channel);
+		}
+	}
+
+	/**
+	 * Reacts on confirmation of message, sent by this node.
+	 *
+	 * @param msgType       - type of confirmed message
+	 * @param senderNode    - node data object, describing node, that has confirmed message
+	 * @param senderAddress - address of node, that has confirmed message
+	 * @param channel       - channel, used for sent operations
+	 * @throws IOException
+	 */
+	private void messageConfirmed(byte msgType,
+	                              NodeData senderNode,
+	                              InetSocketAddress senderAddress,
+	                              DatagramChannel channel) throws IOException
+	{
+		switch(msgType)
+		{
+			case MSG_TYPE_GetChildren:
+				makeChildrenChangeParent(channel);
+				removeParent(parent);
+				break;
+			case MSG_TYPE_ChangeParent:
+				if(isFormerRoot && senderAddress.equals(parent.address))
+				{
+					isFormerRoot = false;
+					offerChildrenToNode(channel, parent);
+				}
+				else
 				{
-					case MSG_TYPE_GetChildren:
-						makeChildrenChangeParent(socket);
-						removeParent(parent);
-						break;
-					case MSG_TYPE_ChangeParent:
-						if(isFormerRoot && senderAddress.equals(parent.address))
-						{
-							isFormerRoot = false;
-							offerChildrenToNode(socket, parent);
-						}
-						else
-						{
-							removeChild(senderNode);
-						}
-						break;
-					case MSG_TYPE_ChildConnect:
-						if(isDisconnecting)
-						{
-							disconnect(socket);
-						}
-						break;
-					default:
-						// Do nothing.
+					removeChild(senderNode);
 				}
+				break;
+			case MSG_TYPE_ChildConnect:
+				if(isDisconnecting)
+				{
+					disconnect(channel);
+				}
+				break;
+			default:
+				// Do nothing.
+		}
+	}
+
+	/**
+	 * Returns receiving side of link from given node, creating it if necessary.
+	 *
+	 * @param senderAddress - sender address
+	 * @param linkID        - link ID from received packet
+	 * @return receiving side of link or null if packet belongs to older link
+	 */
+	private ReceiveWindow getReceiveWindow(InetSocketAddress senderAddress, long linkID)
+	{
+		ReceiveWindow window = receiveWindows.get(senderAddress);
+		if(window == null)
+		{
+			window = new ReceiveWindow(senderAddress, linkID, ACK_EVERY, ACK_DELAY, System.currentTimeMillis());
+			receiveWindows.put(senderAddress, window);
+		}
+		return (window.checkLinkID(linkID) ? window : null);
+	}
 
+	/**
+	 * Forgets receiving sides of links from nodes, that are not connected, when they are silent
+	 * for <code>RECEIVED_IDS_PERIOD</code>. Until then duplicates from removed node are still recognised,
+	 * like received message IDs are.
+	 *
+	 * @param currentTime - current time
+	 */
+	private void removeIdleReceiveWindows(long currentTime)
+	{
+		Iterator<ReceiveWindow> it = receiveWindows.values().iterator();
+		while(it.hasNext())
+		{
+			ReceiveWindow window = it.next();
+			if(!connectedNodes.containsKey(window.address) && window.isIdle(currentTime, RECEIVED_IDS_PERIOD))
+			{
+				it.remove();
 			}
+		}
+	}
 
-			receivedMessageIDs.put(msgID, msgID);
+	/**
+	 * Remembers message as received. Sequence numbers are remembered, when message is confirmed.
+	 *
+	 * @param msgID - message ID
+	 */
+	private void rememberReceived(MessageID msgID)
+	{
+		if(msgID.window == null)
+		{
+			receivedMessageIDs.add(msgID.uuidMost, msgID.uuidLeast, System.currentTimeMillis());
 		}
 	}
 
@@ -778,38 +1422,106 @@ public class Node implements NodeConstants
 				return "TextMessage";
 			case MSG_TYPE_Confirmation:
 				return "Confirmation";
+			case MSG_TYPE_Ack:
+				return "Ack";
+			case MSG_TYPE_Batch:
+				return "Batch";
 		}
 		return "Unknown type";
 	}
 
+	/**
+	 * Returns count of bytes after header, that message of given type has at least.
+	 * Shorter messages are dropped before they are confirmed.
+	 *
+	 * @param msgType - message type
+	 * @return minimal body size
+	 */
+	private static int getMinBodySize(byte msgType)
+	{
+		switch(msgType)
+		{
+			case MSG_TYPE_ChildConnect:
+				// Connect flag.
+				return 1;
+			case MSG_TYPE_ChangeParent:
+				// Address and port of new parent.
+				return NO_PARENT.length + SIZEOF_INT;
+			case MSG_TYPE_GetChildren:
+				// Count of children.
+				return SIZEOF_INT;
+			case MSG_TYPE_TextMessage:
+				// Lengths of author and text.
+				return 2 * SIZEOF_INT;
+		}
+		return 0;
+	}
+
 	/**
 	 * Describes connected node.
 	 */
 	private static class NodeData
 	{
 		public InetSocketAddress address;
-		public LimitedMap<UUID, NotConfirmedMessage> notConfirmedByNodeMsgs;
+		// Used with confirmations.
+		public UUIDLimitedMap<NotConfirmedMessage> notConfirmedByNodeMsgs;
+		// Used with sequence numbered links.
+		public SendWindow sendWindow;
+		public RttEstimator rtt = new RttEstimator(CONFIRM_TIMOUT, MIN_CONFIRM_TIMEOUT, MAX_CONFIRM_TIMEOUT);
+		public int retransmitCount = 0;
+		public int datagramCount = 0;
+		public PacketBatch batch = new PacketBatch(RECV_PACKET_MAX_SIZE);
 		public boolean shouldBeRemoved = false;
 
 		public NodeData(InetSocketAddress address, LimitedMap.LimitController limitController)
 		{
 			this.address = address;
-			this.notConfirmedByNodeMsgs = new LimitedMap<>(limitController);
+			this.notConfirmedByNodeMsgs = new UUIDLimitedMap<>(limitController);
+			this.sendWindow = new SendWindow(address, WINDOW_SIZE, limitController);
+		}
+
+		public int getNotConfirmedCount()
+		{
+			return notConfirmedByNodeMsgs.size() + sendWindow.size();
 		}
 	}
 
-	private static class NotConfirmedMessage
+	/**
+	 * Identifies received message: by UUID with confirmations,
+	 * by link and sequence number on link otherwise.
+	 */
+	private static class MessageID
 	{
-		public byte msgType;
-		public DatagramPacket packet;
-		public long lastSendTime;
-		public int resendCount = 0;
+		// Used with confirmations.
+		public long uuidMost;
+		public long uuidLeast;
+		// Used with sequence numbered links.
+		public ReceiveWindow window;
+		public long seq;
+		// Message was received and processed before.
+		public boolean isReceived;
+		// Position of message in receive buffer.
+		public int start;
+
+		public void setUUID(long uuidMost, long uuidLeast, boolean isReceived)
+		{
+			this.uuidMost = uuidMost;
+			this.uuidLeast = uuidLeast;
+			this.window = null;
+			this.isReceived = isReceived;
+		}
+
+		public void setSeq(ReceiveWindow window, long seq, boolean isReceived)
+		{
+			this.window = window;
+			this.seq = seq;
+			this.isReceived = isReceived;
+		}
 
-		public NotConfirmedMessage(DatagramPacket packet, long lastSendTime)
+		@Override
+		public String toString()
 		{
-			this.msgType = packet.getData()[0];
-			this.packet = packet;
-			this.lastSendTime = lastSendTime;
+			return (window == null ? new UUID(uuidMost, uuidLeast).toString() : "#" + seq);
 		}
 	}
 }
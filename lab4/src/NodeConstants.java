@@ -5,7 +5,11 @@ public interface NodeConstants
 	byte MSG_TYPE_GetChildren = 0x04;
 	byte MSG_TYPE_TextMessage = 0x08;
 	byte MSG_TYPE_Confirmation = 0x10;
+	byte MSG_TYPE_Ack = 0x20;
+	byte MSG_TYPE_Batch = 0x40;
 
 	int SIZEOF_INT = 4;
 	int SIZEOF_LONG = 8;
+	// Message type and two longs: UUID of message, or its sequence number and link ID.
+	int HEADER_SIZE = 1 + 2 * SIZEOF_LONG;
 }
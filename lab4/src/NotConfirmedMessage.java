@@ -0,0 +1,36 @@
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.util.UUID;
+
+/**
+ * Message, that was sent to neighbour, but wasn't confirmed yet.
+ */
+public class NotConfirmedMessage
+{
+	public byte msgType;
+	public DatagramPacket packet;
+	public long lastSendTime;
+	public int resendCount = 0;
+	public InetSocketAddress address;
+	public long deadline = 0;
+
+	// Used only with confirmations.
+	public UUID msgID = null;
+
+	// Used only by sequence numbered links.
+	public SendWindow window = null;
+	public long seq = -1;
+	public boolean isConfirmed = false;
+
+	// Links in slot of ResendScheduler, slot is -1 if message isn't scheduled.
+	public NotConfirmedMessage prevTimer = null;
+	public NotConfirmedMessage nextTimer = null;
+	public int slot = -1;
+
+	public NotConfirmedMessage(DatagramPacket packet, long lastSendTime)
+	{
+		this.msgType = packet.getData()[0];
+		this.packet = packet;
+		this.lastSendTime = lastSendTime;
+	}
+}
@@ -0,0 +1,103 @@
+import java.net.DatagramPacket;
+import java.nio.ByteBuffer;
+
+/**
+ * Packets for one neighbour, collected to be sent in one datagram of type <code>MSG_TYPE_Batch</code>.
+ * <p>
+ * Datagram has usual header (type and two unused longs), count of packets,
+ * and then every packet with its length before it. Packets are put as they are,
+ * so receiver processes every one of them like separate datagram.
+ * </p>
+ */
+public class PacketBatch implements NodeConstants
+{
+	public static final long NO_DEADLINE = Long.MAX_VALUE;
+	private static final int COUNT_OFFSET = HEADER_SIZE;
+	private static final int PACKETS_OFFSET = COUNT_OFFSET + SIZEOF_INT;
+
+	private ByteBuffer buffer;
+	private DatagramPacket datagram;
+	private int count = 0;
+	private long flushDeadline = NO_DEADLINE;
+
+	/**
+	 * @param maxSize - maximal size of datagram
+	 */
+	public PacketBatch(int maxSize)
+	{
+		buffer = ByteBuffer.allocate(maxSize);
+		buffer.put(MSG_TYPE_Batch);
+		buffer.position(PACKETS_OFFSET);
+		datagram = new DatagramPacket(buffer.array(), maxSize);
+	}
+
+	/**
+	 * @param packet - packet
+	 * @return true if packet fits into the rest of datagram
+	 */
+	public boolean fits(DatagramPacket packet)
+	{
+		return buffer.remaining() >= SIZEOF_INT + packet.getLength();
+	}
+
+	/**
+	 * @param packet - packet
+	 * @return true if packet fits into empty datagram
+	 */
+	public boolean canHold(DatagramPacket packet)
+	{
+		return buffer.capacity() - PACKETS_OFFSET >= SIZEOF_INT + packet.getLength();
+	}
+
+	/**
+	 * Copies packet into datagram. Packet must fit.
+	 *
+	 * @param packet   - packet
+	 * @param deadline - time, until which datagram may wait for other packets
+	 */
+	public void add(DatagramPacket packet, long deadline)
+	{
+		buffer.putInt(packet.getLength());
+		buffer.put(packet.getData(), packet.getOffset(), packet.getLength());
+		++count;
+		flushDeadline = Math.min(flushDeadline, deadline);
+	}
+
+	public boolean isEmpty()
+	{
+		return count == 0;
+	}
+
+	public int size()
+	{
+		return count;
+	}
+
+	public long getFlushDeadline()
+	{
+		return flushDeadline;
+	}
+
+	/**
+	 * Returns datagram with all added packets and starts new batch.
+	 * Single packet is returned without batch header. Datagram is valid until the next <code>add</code>.
+	 *
+	 * @return datagram
+	 */
+	public DatagramPacket takeDatagram()
+	{
+		if(count == 1)
+		{
+			datagram.setData(buffer.array(), PACKETS_OFFSET + SIZEOF_INT, buffer.position() - PACKETS_OFFSET - SIZEOF_INT);
+		}
+		else
+		{
+			buffer.putInt(COUNT_OFFSET, count);
+			datagram.setData(buffer.array(), 0, buffer.position());
+		}
+		buffer.position(PACKETS_OFFSET);
+		count = 0;
+		flushDeadline = NO_DEADLINE;
+		return datagram;
+	}
+}
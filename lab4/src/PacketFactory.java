@@ -70,21 +70,102 @@ public class PacketFactory implements NodeConstants
 
 	public static DatagramPacket createConfirmation(UUID msgID)
 	{
-		byte[] contents = new byte[1 +
-		                           2 * SIZEOF_LONG];
-		ByteBuffer buffer = ByteBuffer.wrap(contents);
-		buffer.put(MSG_TYPE_Confirmation);
-		buffer.putLong(msgID.getLeastSignificantBits());
-		buffer.putLong(msgID.getMostSignificantBits());
+		byte[] contents = new byte[HEADER_SIZE];
+		contents[0] = MSG_TYPE_Confirmation;
+
+		return changePacketUUID(new DatagramPacket(contents, contents.length), msgID);
+	}
+
+	/**
+	 * Creates packet for acknowledgements of sequence numbered link, that is filled by <code>writeAck</code>.
+	 *
+	 * @param maxBlockCount - maximal count of received ranges in acknowledgement
+	 * @return packet
+	 */
+	public static DatagramPacket createAck(int maxBlockCount)
+	{
+		byte[] contents = new byte[HEADER_SIZE +
+		                           SIZEOF_INT +
+		                           2 * maxBlockCount * SIZEOF_LONG];
+		contents[0] = MSG_TYPE_Ack;
 
 		return new DatagramPacket(contents, contents.length);
 	}
 
+	/**
+	 * Writes acknowledgement into packet, created by <code>createAck</code>.
+	 *
+	 * @param packet     - packet
+	 * @param linkID     - ID of acknowledged link
+	 * @param cumulative - all sequence numbers up to this one are received
+	 * @param blocks     - starts and ends of received ranges above <code>cumulative</code>, one after another
+	 * @param blockCount - count of ranges in <code>blocks</code>
+	 * @return the same packet
+	 */
+	public static DatagramPacket writeAck(DatagramPacket packet,
+	                                      long linkID,
+	                                      long cumulative,
+	                                      long[] blocks,
+	                                      int blockCount)
+	{
+		byte[] data = packet.getData();
+		putLong(data, 1, cumulative);
+		putLong(data, 1 + SIZEOF_LONG, linkID);
+		putInt(data, HEADER_SIZE, blockCount);
+		int offset = HEADER_SIZE + SIZEOF_INT;
+		for(int i = 0; i < 2 * blockCount; ++i)
+		{
+			putLong(data, offset, blocks[i]);
+			offset += SIZEOF_LONG;
+		}
+		packet.setLength(offset);
+		return packet;
+	}
+
+	/**
+	 * Writes sequence number and link ID into header instead of UUID.
+	 *
+	 * @param packet - packet
+	 * @param seq    - sequence number of message on link
+	 * @param linkID - link ID
+	 * @return the same packet
+	 */
+	public static DatagramPacket changePacketLink(DatagramPacket packet, long seq, long linkID)
+	{
+		putLong(packet.getData(), packet.getOffset() + 1, seq);
+		putLong(packet.getData(), packet.getOffset() + 1 + SIZEOF_LONG, linkID);
+		return packet;
+	}
+
 	public static DatagramPacket changePacketUUID(DatagramPacket packet, UUID msgID)
 	{
-		ByteBuffer buffer = ByteBuffer.wrap(packet.getData());
-		buffer.putLong(1, msgID.getLeastSignificantBits());
-		buffer.putLong(1 + SIZEOF_LONG, msgID.getMostSignificantBits());
+		return changePacketUUID(packet, msgID.getMostSignificantBits(), msgID.getLeastSignificantBits());
+	}
+
+	public static DatagramPacket changePacketUUID(DatagramPacket packet, long mostBits, long leastBits)
+	{
+		putLong(packet.getData(), packet.getOffset() + 1, leastBits);
+		putLong(packet.getData(), packet.getOffset() + 1 + SIZEOF_LONG, mostBits);
 		return packet;
 	}
+
+	// Big-endian, like ByteBuffer, but without wrapping array.
+
+	private static void putLong(byte[] data, int offset, long value)
+	{
+		for(int i = SIZEOF_LONG - 1; i >= 0; --i)
+		{
+			data[offset + i] = (byte) value;
+			value >>>= 8;
+		}
+	}
+
+	private static void putInt(byte[] data, int offset, int value)
+	{
+		for(int i = SIZEOF_INT - 1; i >= 0; --i)
+		{
+			data[offset + i] = (byte) value;
+			value >>>= 8;
+		}
+	}
 }
@@ -0,0 +1,69 @@
+import java.net.DatagramPacket;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Pool of packets for messages, that wait for confirmation.
+ * <p>
+ * Every message to every neighbour gets its own copy of packet, because header is rewritten
+ * for every link before sending. Copy is returned to pool, when message is confirmed or dropped,
+ * so steady flow of messages doesn't allocate new arrays. Packets, that are bigger than
+ * <code>packetSize</code>, and packets, that are never returned, are left to garbage collector.
+ * </p>
+ */
+public class PacketPool
+{
+	private int packetSize;
+	private int maxFreeCount;
+	private Deque<DatagramPacket> freePackets = new ArrayDeque<>();
+
+	/**
+	 * @param packetSize   - size of pooled packets
+	 * @param maxFreeCount - maximal count of packets, kept in pool
+	 */
+	public PacketPool(int packetSize, int maxFreeCount)
+	{
+		this.packetSize = packetSize;
+		this.maxFreeCount = maxFreeCount;
+	}
+
+	/**
+	 * Copies contents of packet into packet from pool.
+	 *
+	 * @param packet - packet to copy
+	 * @return copy without address
+	 */
+	public DatagramPacket copyOf(DatagramPacket packet)
+	{
+		int length = packet.getLength();
+		DatagramPacket copy;
+		if(length > packetSize)
+		{
+			copy = new DatagramPacket(new byte[length], length);
+		}
+		else
+		{
+			copy = freePackets.poll();
+			if(copy == null)
+			{
+				copy = new DatagramPacket(new byte[packetSize], packetSize);
+			}
+		}
+		System.arraycopy(packet.getData(), packet.getOffset(), copy.getData(), 0, length);
+		copy.setLength(length);
+		return copy;
+	}
+
+	/**
+	 * Returns packet, taken by <code>copyOf</code>, to pool. Packet must not be used after that.
+	 *
+	 * @param packet - packet
+	 */
+	public void release(DatagramPacket packet)
+	{
+		if(packet.getData().length == packetSize && freePackets.size() < maxFreeCount)
+		{
+			freePackets.push(packet);
+		}
+	}
+}
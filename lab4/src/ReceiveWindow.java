@@ -0,0 +1,179 @@
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Receiving side of sequence numbered link from one neighbour.
+ * <p>
+ * Received sequence numbers are kept as cumulative number (all numbers up to it are received)
+ * and ranges above it, so duplicates are recognised without remembering every message.
+ * Acknowledgement is delayed until <code>ackEvery</code> messages are received or <code>ackDelay</code> passes,
+ * and then one packet acknowledges all of them: cumulative number and up to <code>MAX_SACK_BLOCKS</code>
+ * ranges above it.
+ * </p>
+ * <p>
+ * Link IDs of sender grow, so packet of older link, that comes late, doesn't reset newer link.
+ * </p>
+ */
+public class ReceiveWindow
+{
+	public static final int MAX_SACK_BLOCKS = 8;
+	public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+	public final InetSocketAddress address;
+	private long linkID;
+	private int ackEvery;
+	private long ackDelay;
+
+	private long cumulative = -1;
+	// Range start -> range end, only above cumulative number.
+	private TreeMap<Long, Long> ranges = new TreeMap<>();
+	private int unackedCount = 0;
+	private long ackDeadline = NO_DEADLINE;
+	private long lastReceiveTime;
+	// Acknowledgement is sent or copied into batch at once, so one packet is reused.
+	private DatagramPacket ackPacket = PacketFactory.createAck(MAX_SACK_BLOCKS);
+	private long[] ackBlocks = new long[2 * MAX_SACK_BLOCKS];
+
+	public ReceiveWindow(InetSocketAddress address, long linkID, int ackEvery, long ackDelay, long currentTime)
+	{
+		this.address = address;
+		this.linkID = linkID;
+		this.ackEvery = ackEvery;
+		this.ackDelay = ackDelay;
+		this.lastReceiveTime = currentTime;
+	}
+
+	/**
+	 * Forgets received messages, if sender has started new link.
+	 *
+	 * @param linkID - link ID from received packet
+	 * @return false if packet belongs to older link and should be ignored
+	 */
+	public boolean checkLinkID(long linkID)
+	{
+		if(linkID < this.linkID)
+		{
+			return false;
+		}
+		if(linkID > this.linkID)
+		{
+			this.linkID = linkID;
+			cumulative = -1;
+			ranges.clear();
+			unackedCount = 0;
+			ackDeadline = NO_DEADLINE;
+		}
+		return true;
+	}
+
+	public boolean contains(long seq)
+	{
+		if(seq <= cumulative)
+		{
+			return true;
+		}
+		Map.Entry<Long, Long> range = ranges.floorEntry(seq);
+		return (range != null && range.getValue() >= seq);
+	}
+
+	/**
+	 * Remembers message as received and schedules acknowledgement. Duplicate is acknowledged again,
+	 * because previous acknowledgement might be lost.
+	 *
+	 * @param seq         - sequence number of message
+	 * @param currentTime - current time
+	 */
+	public void confirm(long seq, long currentTime)
+	{
+		if(!contains(seq))
+		{
+			add(seq);
+		}
+		++unackedCount;
+		ackDeadline = Math.min(ackDeadline, currentTime + ackDelay);
+		lastReceiveTime = currentTime;
+	}
+
+	public boolean hasUnacked()
+	{
+		return unackedCount > 0;
+	}
+
+	/**
+	 * @param currentTime - current time
+	 * @param timeout     - time without received messages
+	 * @return true if nothing was received for <code>timeout</code> and everything is acknowledged
+	 */
+	public boolean isIdle(long currentTime, long timeout)
+	{
+		return unackedCount == 0 && currentTime - lastReceiveTime >= timeout;
+	}
+
+	public boolean isAckDue(long currentTime)
+	{
+		return unackedCount >= ackEvery || currentTime >= ackDeadline;
+	}
+
+	/**
+	 * @return time, when acknowledgement should be sent, or <code>NO_DEADLINE</code>
+	 */
+	public long getAckDeadline()
+	{
+		return (unackedCount >= ackEvery ? 0 : ackDeadline);
+	}
+
+	/**
+	 * Creates acknowledgement of all received messages.
+	 * Packet is valid until the next call.
+	 *
+	 * @return packet, addressed to sender
+	 */
+	public DatagramPacket createAck()
+	{
+		int blockCount = 0;
+		for(Map.Entry<Long, Long> range : ranges.entrySet())
+		{
+			if(blockCount == MAX_SACK_BLOCKS)
+			{
+				break;
+			}
+			ackBlocks[2 * blockCount] = range.getKey();
+			ackBlocks[2 * blockCount + 1] = range.getValue();
+			++blockCount;
+		}
+		unackedCount = 0;
+		ackDeadline = NO_DEADLINE;
+
+		PacketFactory.writeAck(ackPacket, linkID, cumulative, ackBlocks, blockCount);
+		ackPacket.setSocketAddress(address);
+		return ackPacket;
+	}
+
+	private void add(long seq)
+	{
+		long start = seq;
+		long end = seq;
+		Map.Entry<Long, Long> lower = ranges.lowerEntry(seq);
+		if(lower != null && lower.getValue() == seq - 1)
+		{
+			start = lower.getKey();
+			ranges.remove(start);
+		}
+		Long higherEnd = ranges.remove(seq + 1);
+		if(higherEnd != null)
+		{
+			end = higherEnd;
+		}
+
+		if(start == cumulative + 1)
+		{
+			cumulative = end;
+		}
+		else
+		{
+			ranges.put(start, end);
+		}
+	}
+}
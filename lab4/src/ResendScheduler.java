@@ -0,0 +1,135 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashed timer wheel of messages, waiting for resend.
+ * <p>
+ * Message is put into slot of its deadline tick, so every tick looks only at one slot.
+ * Deadlines beyond one turn of wheel stay in their slot until the right turn comes.
+ * Slots are intrusive doubly linked lists, so message is scheduled and cancelled in constant time.
+ * </p>
+ */
+public class ResendScheduler
+{
+	public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+	private long tickLength;
+	private NotConfirmedMessage[] slots;
+	// The first tick, that is not processed yet.
+	private long currentTick;
+	private int size = 0;
+
+	/**
+	 * @param tickLength  - tick length in milliseconds, precision of deadlines
+	 * @param slotCount   - count of slots
+	 * @param currentTime - current time
+	 */
+	public ResendScheduler(long tickLength, int slotCount, long currentTime)
+	{
+		this.tickLength = tickLength;
+		this.slots = new NotConfirmedMessage[slotCount];
+		this.currentTick = currentTime / tickLength;
+	}
+
+	/**
+	 * Schedules message at <code>message.deadline</code>, cancelling previous schedule.
+	 *
+	 * @param message - message
+	 */
+	public void schedule(NotConfirmedMessage message)
+	{
+		cancel(message);
+		long tick = Math.max(message.deadline / tickLength, currentTick);
+		int slot = (int) (tick % slots.length);
+		message.slot = slot;
+		message.prevTimer = null;
+		message.nextTimer = slots[slot];
+		if(slots[slot] != null)
+		{
+			slots[slot].prevTimer = message;
+		}
+		slots[slot] = message;
+		++size;
+	}
+
+	/**
+	 * @param message - message, that doesn't need resend anymore
+	 */
+	public void cancel(NotConfirmedMessage message)
+	{
+		if(message.slot < 0)
+		{
+			return;
+		}
+		if(message.prevTimer != null)
+		{
+			message.prevTimer.nextTimer = message.nextTimer;
+		}
+		else
+		{
+			slots[message.slot] = message.nextTimer;
+		}
+		if(message.nextTimer != null)
+		{
+			message.nextTimer.prevTimer = message.prevTimer;
+		}
+		message.prevTimer = null;
+		message.nextTimer = null;
+		message.slot = -1;
+		--size;
+	}
+
+	/**
+	 * Takes out all messages, whose deadline tick has come, so message may be taken up to one tick early.
+	 *
+	 * @param currentTime - current time
+	 * @return due messages
+	 */
+	public List<NotConfirmedMessage> pollDue(long currentTime)
+	{
+		List<NotConfirmedMessage> due = new ArrayList<>();
+		long lastTick = currentTime / tickLength;
+		// One turn of wheel looks through all slots.
+		long firstTick = Math.max(currentTick, lastTick - slots.length + 1);
+		for(long tick = firstTick; tick <= lastTick && size > 0; ++tick)
+		{
+			NotConfirmedMessage message = slots[(int) (tick % slots.length)];
+			while(message != null)
+			{
+				NotConfirmedMessage next = message.nextTimer;
+				if(message.deadline / tickLength <= lastTick)
+				{
+					cancel(message);
+					due.add(message);
+				}
+				message = next;
+			}
+		}
+		currentTick = Math.max(currentTick, lastTick + 1);
+		return due;
+	}
+
+	/**
+	 * @return start of the first tick, that has messages, or <code>NO_DEADLINE</code> if there are no messages
+	 */
+	public long getNextDeadline()
+	{
+		if(size == 0)
+		{
+			return NO_DEADLINE;
+		}
+		for(long tick = currentTick; tick < currentTick + slots.length; ++tick)
+		{
+			if(slots[(int) (tick % slots.length)] != null)
+			{
+				return tick * tickLength;
+			}
+		}
+		return NO_DEADLINE;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * Estimates round trip time of link and chooses resend timeout after it (Jacobson/Karels algorithm).
+ * <p>
+ * Every sample updates smoothed RTT and mean deviation of RTT; timeout is smoothed RTT plus four deviations.
+ * Samples should be taken only from messages, that weren't resent, because it is unknown,
+ * which copy of resent message was confirmed (Karn's rule). Every resend of message doubles its timeout.
+ * </p>
+ */
+public class RttEstimator
+{
+	private static final double RTT_GAIN = 0.125;
+	private static final double DEVIATION_GAIN = 0.25;
+	private static final int DEVIATION_FACTOR = 4;
+	private static final int MAX_BACKOFF_SHIFT = 16;
+
+	private long initialTimeout;
+	private long minTimeout;
+	private long maxTimeout;
+	private double smoothedRtt = 0;
+	private double rttDeviation = 0;
+	private boolean hasSamples = false;
+
+	/**
+	 * @param initialTimeout - timeout until the first sample
+	 * @param minTimeout     - lower bound of timeout
+	 * @param maxTimeout     - upper bound of timeout, also with backoff
+	 */
+	public RttEstimator(long initialTimeout, long minTimeout, long maxTimeout)
+	{
+		this.initialTimeout = initialTimeout;
+		this.minTimeout = minTimeout;
+		this.maxTimeout = maxTimeout;
+	}
+
+	/**
+	 * @param rtt - time from send of message to its confirmation, in milliseconds
+	 */
+	public void addSample(long rtt)
+	{
+		if(!hasSamples)
+		{
+			smoothedRtt = rtt;
+			rttDeviation = rtt / 2.0;
+			hasSamples = true;
+		}
+		else
+		{
+			rttDeviation = (1 - DEVIATION_GAIN) * rttDeviation + DEVIATION_GAIN * Math.abs(smoothedRtt - rtt);
+			smoothedRtt = (1 - RTT_GAIN) * smoothedRtt + RTT_GAIN * rtt;
+		}
+	}
+
+	/**
+	 * @return timeout of message, that wasn't resent yet
+	 */
+	public long getTimeout()
+	{
+		if(!hasSamples)
+		{
+			return initialTimeout;
+		}
+		long timeout = (long) Math.ceil(smoothedRtt + DEVIATION_FACTOR * rttDeviation);
+		return Math.max(minTimeout, Math.min(timeout, maxTimeout));
+	}
+
+	/**
+	 * @param resendCount - how many times message was resent
+	 * @return timeout, doubled for every resend
+	 */
+	public long getTimeout(int resendCount)
+	{
+		return Math.min(getTimeout() << Math.min(resendCount, MAX_BACKOFF_SHIFT), maxTimeout);
+	}
+
+	public boolean hasSamples()
+	{
+		return hasSamples;
+	}
+
+	public double getSmoothedRtt()
+	{
+		return smoothedRtt;
+	}
+
+	public double getRttDeviation()
+	{
+		return rttDeviation;
+	}
+}
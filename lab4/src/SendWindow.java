@@ -0,0 +1,174 @@
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.util.*;
+
+/**
+ * Sending side of sequence numbered link to one neighbour.
+ * <p>
+ * Every message gets the next sequence number of link. At most <code>windowSize</code> messages
+ * may be not acknowledged at once, the rest wait in queue. Link ID starts with creation time
+ * and grows with every new link, so that receiver can tell new link to the same address from the old one,
+ * even if packet of the old one comes late. Random low bits tell apart links of nodes, restarted at once.
+ * </p>
+ */
+public class SendWindow
+{
+	private static final int LINK_ID_RANDOM_BITS = 16;
+	private static Random random = new Random();
+	private static long lastLinkID = 0;
+
+	public final InetSocketAddress address;
+	public final long linkID = createLinkID();
+	private int windowSize;
+	private LimitedMap.LimitController limitController;
+
+	private long nextSeq = 0;
+	private Map<Long, NotConfirmedMessage> inFlight = new HashMap<>();
+	private Deque<DatagramPacket> waiting = new ArrayDeque<>();
+
+	public SendWindow(InetSocketAddress address, int windowSize, LimitedMap.LimitController limitController)
+	{
+		this.address = address;
+		this.windowSize = windowSize;
+		this.limitController = limitController;
+	}
+
+	/**
+	 * Puts packet into queue. When limit of not confirmed messages is reached, the oldest packet,
+	 * waiting in queue of this link, is dropped, like <code>LimitedMap</code> drops its oldest record.
+	 * Messages in flight already have sequence numbers and aren't dropped, so if none is waiting,
+	 * packet exceeds the limit.
+	 *
+	 * @param packet - packet
+	 * @return dropped packet or null
+	 */
+	public DatagramPacket offer(DatagramPacket packet)
+	{
+		DatagramPacket dropped = null;
+		if(!limitController.addRecordIfPossible())
+		{
+			if(waiting.isEmpty())
+			{
+				limitController.addRecord();
+			}
+			else
+			{
+				// Record of dropped packet goes to the new one.
+				dropped = waiting.poll();
+			}
+		}
+		waiting.add(packet);
+		return dropped;
+	}
+
+	/**
+	 * Takes the next packet from queue, if window allows, and numbers it.
+	 *
+	 * @param currentTime - current time
+	 * @return message, that should be sent now, or null
+	 */
+	public NotConfirmedMessage pollSendable(long currentTime)
+	{
+		if(waiting.isEmpty() || inFlight.size() >= windowSize)
+		{
+			return null;
+		}
+		NotConfirmedMessage message = new NotConfirmedMessage(waiting.poll(), currentTime);
+		message.window = this;
+		message.address = address;
+		message.seq = nextSeq++;
+		inFlight.put(message.seq, message);
+		return message;
+	}
+
+	/**
+	 * Marks messages as confirmed.
+	 *
+	 * @param cumulative - all messages up to this sequence number are received
+	 * @param blocks     - starts and ends of received ranges above <code>cumulative</code>, one after another
+	 * @param blockCount - count of ranges in <code>blocks</code>
+	 * @param confirmed  - list, to which newly confirmed messages are added
+	 */
+	public void acknowledge(long cumulative, long[] blocks, int blockCount, List<NotConfirmedMessage> confirmed)
+	{
+		Iterator<NotConfirmedMessage> it = inFlight.values().iterator();
+		while(it.hasNext())
+		{
+			NotConfirmedMessage message = it.next();
+			if(message.seq <= cumulative || isInBlocks(message.seq, blocks, blockCount))
+			{
+				it.remove();
+				message.isConfirmed = true;
+				limitController.removeRecord();
+				confirmed.add(message);
+			}
+		}
+	}
+
+	/**
+	 * Stops sending message, that wasn't confirmed.
+	 *
+	 * @param message - message in flight
+	 */
+	public void cancel(NotConfirmedMessage message)
+	{
+		if(inFlight.remove(message.seq) != null)
+		{
+			message.isConfirmed = true;
+			limitController.removeRecord();
+		}
+	}
+
+	/**
+	 * Forgets all messages.
+	 */
+	public void clear()
+	{
+		for(NotConfirmedMessage message : inFlight.values())
+		{
+			message.isConfirmed = true;
+			limitController.removeRecord();
+		}
+		for(int i = 0; i < waiting.size(); ++i)
+		{
+			limitController.removeRecord();
+		}
+		inFlight.clear();
+		waiting.clear();
+	}
+
+	/**
+	 * @return count of messages, that are sent and not acknowledged yet
+	 */
+	public int getInFlightCount()
+	{
+		return inFlight.size();
+	}
+
+	/**
+	 * @return count of messages in flight and in queue
+	 */
+	public int size()
+	{
+		return inFlight.size() + waiting.size();
+	}
+
+	private static synchronized long createLinkID()
+	{
+		long linkID = (System.currentTimeMillis() << LINK_ID_RANDOM_BITS) | random.nextInt(1 << LINK_ID_RANDOM_BITS);
+		lastLinkID = Math.max(linkID, lastLinkID + 1);
+		return lastLinkID;
+	}
+
+	private static boolean isInBlocks(long seq, long[] blocks, int blockCount)
+	{
+		for(int i = 0; i < 2 * blockCount; i += 2)
+		{
+			if(seq >= blocks[i] && seq <= blocks[i + 1])
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
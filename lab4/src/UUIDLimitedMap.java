@@ -0,0 +1,311 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * <code>LimitedMap</code> for UUID keys without allocations per record.
+ * <p>
+ * Keys are stored as pairs of longs in open addressing table with linear probing,
+ * empty slot has null value, so values must not be null.
+ * Insertion order is kept by indices of previous and next records, stored next to each other,
+ * so the oldest record is evicted, when <code>LimitController</code> doesn't allow one more record,
+ * like in <code>LimitedMap</code>. On remove the following records of probe sequence are shifted back
+ * instead of leaving deleted marks, and their neighbours in order are relinked.
+ * </p>
+ */
+public class UUIDLimitedMap<Value> implements Iterable<Pair<UUID, Value>>
+{
+	private final static int MIN_CAPACITY = 16;
+	private final static int NO_SLOT = -1;
+
+	// Pairs of most and least significant bits.
+	private long[] keys;
+	private Object[] values;
+	// Pairs of previous and next slots in insertion order.
+	private int[] links;
+	private int mask;
+	private int oldestSlot = NO_SLOT;
+	private int newestSlot = NO_SLOT;
+	private int recordCount = 0;
+	private LimitedMap.LimitController limitController;
+
+	public UUIDLimitedMap(LimitedMap.LimitController limitController)
+	{
+		this.limitController = limitController;
+		allocate(MIN_CAPACITY);
+	}
+
+	public void put(UUID key, Value value)
+	{
+		if(value == null)
+		{
+			throw new NullPointerException("Null value for key " + key);
+		}
+		long most = key.getMostSignificantBits();
+		long least = key.getLeastSignificantBits();
+		int slot = findSlot(most, least);
+		if(slot != NO_SLOT)
+		{
+			values[slot] = value;
+			return;
+		}
+
+		if(!limitController.addRecordIfPossible())
+		{
+			// New record takes place of the oldest one. If there is nothing to evict here,
+			// other maps hold the whole limit, and it is exceeded.
+			if(oldestSlot != NO_SLOT)
+			{
+				removeSlot(oldestSlot);
+			}
+			limitController.addRecord();
+		}
+
+		// Records take at most half of table.
+		if(2 * (recordCount + 1) > mask + 1)
+		{
+			rebuild(2 * (mask + 1));
+		}
+		insert(most, least, value);
+	}
+
+	public Value get(UUID key)
+	{
+		return get(key.getMostSignificantBits(), key.getLeastSignificantBits());
+	}
+
+	public Value get(long most, long least)
+	{
+		int slot = findSlot(most, least);
+		return (slot == NO_SLOT ? null : getValue(slot));
+	}
+
+	public boolean contains(UUID key)
+	{
+		return findSlot(key.getMostSignificantBits(), key.getLeastSignificantBits()) != NO_SLOT;
+	}
+
+	public void remove(UUID key)
+	{
+		remove(key.getMostSignificantBits(), key.getLeastSignificantBits());
+	}
+
+	public void remove(long most, long least)
+	{
+		int slot = findSlot(most, least);
+		if(slot != NO_SLOT)
+		{
+			removeSlot(slot);
+		}
+	}
+
+	public void clear()
+	{
+		for(int i = 0; i < recordCount; ++i)
+		{
+			limitController.removeRecord();
+		}
+		allocate(MIN_CAPACITY);
+	}
+
+	public int size()
+	{
+		return recordCount;
+	}
+
+	/**
+	 * @return iterator from the oldest record to the newest one
+	 */
+	@Override
+	public Iterator<Pair<UUID, Value>> iterator()
+	{
+		return new MQIterator();
+	}
+
+	private void allocate(int capacity)
+	{
+		keys = new long[2 * capacity];
+		values = new Object[capacity];
+		links = new int[2 * capacity];
+		mask = capacity - 1;
+		oldestSlot = NO_SLOT;
+		newestSlot = NO_SLOT;
+		recordCount = 0;
+	}
+
+	/**
+	 * Puts records into new table in the same order.
+	 */
+	private void rebuild(int capacity)
+	{
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		int[] oldLinks = links;
+		int slot = oldestSlot;
+		allocate(capacity);
+		for(; slot != NO_SLOT; slot = oldLinks[2 * slot + 1])
+		{
+			insert(oldKeys[2 * slot], oldKeys[2 * slot + 1], oldValues[slot]);
+		}
+	}
+
+	/**
+	 * Inserts record, that is known to be absent, as the newest one.
+	 */
+	private void insert(long most, long least, Object value)
+	{
+		int slot = MessageIDSet.hash(most, least) & mask;
+		while(values[slot] != null)
+		{
+			slot = (slot + 1) & mask;
+		}
+		keys[2 * slot] = most;
+		keys[2 * slot + 1] = least;
+		values[slot] = value;
+
+		links[2 * slot] = newestSlot;
+		links[2 * slot + 1] = NO_SLOT;
+		if(newestSlot != NO_SLOT)
+		{
+			links[2 * newestSlot + 1] = slot;
+		}
+		else
+		{
+			oldestSlot = slot;
+		}
+		newestSlot = slot;
+		++recordCount;
+	}
+
+	private int findSlot(long most, long least)
+	{
+		for(int slot = MessageIDSet.hash(most, least) & mask; values[slot] != null; slot = (slot + 1) & mask)
+		{
+			if(keys[2 * slot] == most && keys[2 * slot + 1] == least)
+			{
+				return slot;
+			}
+		}
+		return NO_SLOT;
+	}
+
+	private void removeSlot(int slot)
+	{
+		int prevSlot = links[2 * slot];
+		int nextSlot = links[2 * slot + 1];
+		if(prevSlot != NO_SLOT)
+		{
+			links[2 * prevSlot + 1] = nextSlot;
+		}
+		else
+		{
+			// This record is oldest record.
+			oldestSlot = nextSlot;
+		}
+		if(nextSlot != NO_SLOT)
+		{
+			links[2 * nextSlot] = prevSlot;
+		}
+		else
+		{
+			// This record is newest record.
+			newestSlot = prevSlot;
+		}
+		limitController.removeRecord();
+		--recordCount;
+
+		// Records after the hole, which couldn't be found from their home slot, are shifted back.
+		int hole = slot;
+		for(int i = (hole + 1) & mask; values[i] != null; i = (i + 1) & mask)
+		{
+			int home = MessageIDSet.hash(keys[2 * i], keys[2 * i + 1]) & mask;
+			if(((i - home) & mask) >= ((i - hole) & mask))
+			{
+				moveSlot(i, hole);
+				hole = i;
+			}
+		}
+		values[hole] = null;
+	}
+
+	private void moveSlot(int from, int to)
+	{
+		keys[2 * to] = keys[2 * from];
+		keys[2 * to + 1] = keys[2 * from + 1];
+		values[to] = values[from];
+
+		int prevSlot = links[2 * from];
+		int nextSlot = links[2 * from + 1];
+		links[2 * to] = prevSlot;
+		links[2 * to + 1] = nextSlot;
+		if(prevSlot != NO_SLOT)
+		{
+			links[2 * prevSlot + 1] = to;
+		}
+		else
+		{
+			oldestSlot = to;
+		}
+		if(nextSlot != NO_SLOT)
+		{
+			links[2 * nextSlot] = to;
+		}
+		else
+		{
+			newestSlot = to;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Value getValue(int slot)
+	{
+		return (Value) values[slot];
+	}
+
+	private class MQIterator implements Iterator<Pair<UUID, Value>>
+	{
+		private int slot = oldestSlot;
+		private int lastSlot = NO_SLOT;
+
+		@Override
+		public boolean hasNext()
+		{
+			return slot != NO_SLOT;
+		}
+
+		@Override
+		public Pair<UUID, Value> next()
+		{
+			if(slot == NO_SLOT)
+			{
+				throw new NoSuchElementException();
+			}
+			Pair<UUID, Value> ret = new Pair<>(new UUID(keys[2 * slot], keys[2 * slot + 1]), getValue(slot));
+			lastSlot = slot;
+			slot = links[2 * slot + 1];
+			return ret;
+		}
+
+		@Override
+		public void remove()
+		{
+			if(lastSlot == NO_SLOT)
+			{
+				throw new IllegalStateException();
+			}
+			if(slot == NO_SLOT)
+			{
+				removeSlot(lastSlot);
+			}
+			else
+			{
+				// Removal may shift the next record to other slot.
+				long most = keys[2 * slot];
+				long least = keys[2 * slot + 1];
+				removeSlot(lastSlot);
+				slot = findSlot(most, least);
+			}
+			lastSlot = NO_SLOT;
+		}
+	}
+}
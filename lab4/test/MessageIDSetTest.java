@@ -0,0 +1,121 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Randomized comparison of <code>MessageIDSet</code> with <code>LimitedMap</code> of the same capacity,
+ * that Node used for received message IDs before.
+ * <p>
+ * IDs are added like Node does it (only if they are not in set yet), while time goes on with random steps
+ * and sometimes stops for several periods. Every ID, that <code>LimitedMap</code> still remembers
+ * and that was added less than <code>(GENERATION_COUNT - 1)</code> periods ago, must be in set.
+ * ID, that was never added, must never be in set. ID must be forgotten, when twice the capacity of newer IDs
+ * were added or <code>GENERATION_COUNT</code> periods passed.
+ * </p>
+ * <p>
+ * Run with optional seed; exits with <code>AssertionError</code> on the first violation.
+ * </p>
+ */
+public class MessageIDSetTest
+{
+	private static final int CAPACITY = 1000;
+	private static final long PERIOD = 1000;
+	private static final int GENERATION_COUNT = 4;
+	private static final long MAX_TIME_STEP = 20;
+	private static final int STEP_COUNT = 1000000;
+	private static final int QUERIES_PER_STEP = 4;
+
+	private static class AddedID
+	{
+		UUID id;
+		long addTime;
+		long addNumber;
+
+		AddedID(UUID id, long addTime, long addNumber)
+		{
+			this.id = id;
+			this.addTime = addTime;
+			this.addNumber = addNumber;
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		long seed = (args.length == 1 ? Long.parseLong(args[0]) : System.nanoTime());
+		System.out.println("MessageIDSetTest: seed " + seed);
+		Random random = new Random(seed);
+
+		long currentTime = 0;
+		MessageIDSet set = new MessageIDSet(CAPACITY, PERIOD, currentTime);
+		LimitedMap<UUID, UUID> model = new LimitedMap<>(new LimitedMap.LimitController(CAPACITY));
+		List<AddedID> history = new ArrayList<>();
+		long addCount = 0;
+		long keptChecks = 0;
+		long forgottenChecks = 0;
+
+		for(int step = 0; step < STEP_COUNT; ++step)
+		{
+			int op = random.nextInt(1000);
+			if(op < 600)
+			{
+				UUID id = new UUID(random.nextLong(), random.nextLong());
+				if(!set.contains(id))
+				{
+					set.add(id, currentTime);
+					model.put(id, id);
+					history.add(new AddedID(id, currentTime, addCount++));
+				}
+			}
+			else if(op < 999)
+			{
+				currentTime += random.nextInt((int) MAX_TIME_STEP + 1);
+				set.expire(currentTime);
+			}
+			else
+			{
+				// Node was idle for several periods.
+				currentTime += (long) (random.nextDouble() * (GENERATION_COUNT + 1) * PERIOD);
+				set.expire(currentTime);
+			}
+
+			for(int i = 0; i < QUERIES_PER_STEP && !history.isEmpty(); ++i)
+			{
+				// Recent IDs are asked more often, like duplicates come.
+				int idx = history.size() - 1 - Math.min(history.size() - 1, (int) Math.abs(random.nextGaussian() * 2 * CAPACITY));
+				AddedID added = history.get(idx);
+				boolean contained = set.contains(added.id);
+				if(model.contains(added.id) && currentTime - added.addTime < (GENERATION_COUNT - 1) * PERIOD)
+				{
+					check(contained, "ID, added " + (currentTime - added.addTime) + " ms and " +
+					                 (addCount - 1 - added.addNumber) + " IDs ago, is lost");
+					++keptChecks;
+				}
+				// Expire may start generation a time step later, than period has passed.
+				if(addCount - 1 - added.addNumber >= 2 * CAPACITY ||
+				   currentTime - added.addTime >= GENERATION_COUNT * (PERIOD + MAX_TIME_STEP))
+				{
+					check(!contained, "ID, added " + (currentTime - added.addTime) + " ms and " +
+					                  (addCount - 1 - added.addNumber) + " IDs ago, is still remembered");
+					++forgottenChecks;
+				}
+			}
+			check(!set.contains(new UUID(random.nextLong(), random.nextLong())), "ID, that wasn't added, is found");
+			if(history.size() > 20 * CAPACITY)
+			{
+				history.subList(0, 10 * CAPACITY).clear();
+			}
+		}
+		System.out.println("MessageIDSetTest: " + addCount + " IDs added, " + keptChecks + " kept and " +
+		                   forgottenChecks + " forgotten IDs checked, no false positives in " + STEP_COUNT + " lookups");
+		System.out.println("MessageIDSetTest: OK");
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if(!condition)
+		{
+			throw new AssertionError(message);
+		}
+	}
+}
@@ -0,0 +1,172 @@
+import java.util.*;
+
+/**
+ * Randomized comparison of <code>UUIDLimitedMap</code> with model of <code>LinkedHashMap</code>s
+ * in insertion order, that follows the same eviction rule.
+ * <p>
+ * Two maps share one <code>LimitController</code>, like maps of neighbours in Node do.
+ * New key takes free place of limit, or evicts the oldest record of the same map,
+ * or exceeds limit, if the same map is empty. Keys of the same home slot and zero keys are frequent,
+ * so that probe sequences and shifts on remove are exercised. Iteration must go from the oldest record
+ * to the newest one, and records may be removed by iterator in the middle of it.
+ * </p>
+ * <p>
+ * Run with optional seed; exits with <code>AssertionError</code> on the first mismatch.
+ * </p>
+ */
+public class UUIDLimitedMapTest
+{
+	private static final int ROUND_COUNT = 300;
+	private static final int STEPS_PER_ROUND = 5000;
+	private static final int MAX_LIMIT = 300;
+	private static final int MAP_COUNT = 2;
+
+	private Random random;
+	private LimitedMap.LimitController limitController;
+	private long limit;
+	private List<UUIDLimitedMap<Integer>> maps = new ArrayList<>();
+	private List<LinkedHashMap<UUID, Integer>> models = new ArrayList<>();
+	private long recordsUsed = 0;
+	private List<UUID> usedKeys = new ArrayList<>();
+
+	public UUIDLimitedMapTest(Random random)
+	{
+		this.random = random;
+		this.limit = 1 + random.nextInt(MAX_LIMIT);
+		this.limitController = new LimitedMap.LimitController(limit);
+		for(int i = 0; i < MAP_COUNT; ++i)
+		{
+			maps.add(new UUIDLimitedMap<>(limitController));
+			models.add(new LinkedHashMap<>());
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		long seed = (args.length == 1 ? Long.parseLong(args[0]) : System.nanoTime());
+		System.out.println("UUIDLimitedMapTest: seed " + seed);
+		Random random = new Random(seed);
+		for(int round = 0; round < ROUND_COUNT; ++round)
+		{
+			new UUIDLimitedMapTest(random).run();
+		}
+		System.out.println("UUIDLimitedMapTest: " + ROUND_COUNT + " rounds of " + STEPS_PER_ROUND + " steps match model");
+		System.out.println("UUIDLimitedMapTest: OK");
+	}
+
+	private void run()
+	{
+		for(int step = 0; step < STEPS_PER_ROUND; ++step)
+		{
+			int mapIdx = random.nextInt(MAP_COUNT);
+			int op = random.nextInt(10);
+			if(op < 4 || usedKeys.isEmpty())
+			{
+				put(mapIdx, step);
+			}
+			else if(op < 6)
+			{
+				UUID key = getUsedKey();
+				maps.get(mapIdx).remove(key);
+				if(models.get(mapIdx).remove(key) != null)
+				{
+					--recordsUsed;
+				}
+			}
+			else if(op < 9)
+			{
+				UUID key = getUsedKey();
+				check(Objects.equals(maps.get(mapIdx).get(key), models.get(mapIdx).get(key)), "get");
+				check(maps.get(mapIdx).contains(key) == models.get(mapIdx).containsKey(key), "contains");
+				check(Objects.equals(maps.get(mapIdx).get(key.getMostSignificantBits(), key.getLeastSignificantBits()),
+				                     models.get(mapIdx).get(key)), "get by longs");
+			}
+			else
+			{
+				iterate(mapIdx);
+			}
+			check(maps.get(mapIdx).size() == models.get(mapIdx).size(),
+			      "size " + maps.get(mapIdx).size() + ", expected " + models.get(mapIdx).size());
+			check(limitController.getRecordsUsed() == recordsUsed,
+			      "records used " + limitController.getRecordsUsed() + ", expected " + recordsUsed);
+		}
+		for(UUIDLimitedMap<Integer> map : maps)
+		{
+			map.clear();
+			check(map.size() == 0, "size after clear");
+		}
+		check(limitController.getRecordsUsed() == 0, "records used after clear");
+	}
+
+	private void put(int mapIdx, int value)
+	{
+		UUID key;
+		if(random.nextInt(8) == 0 && !usedKeys.isEmpty())
+		{
+			key = getUsedKey();
+		}
+		else
+		{
+			// Small keys often fall into the same slots.
+			key = (random.nextInt(4) == 0 ? new UUID(0, random.nextInt(64)) : new UUID(random.nextLong(), random.nextLong()));
+			usedKeys.add(key);
+		}
+		maps.get(mapIdx).put(key, value);
+
+		LinkedHashMap<UUID, Integer> model = models.get(mapIdx);
+		if(model.containsKey(key))
+		{
+			// Value is replaced, record keeps its place in order.
+			model.put(key, value);
+			return;
+		}
+		if(recordsUsed < limit)
+		{
+			++recordsUsed;
+		}
+		else if(!model.isEmpty())
+		{
+			model.remove(model.keySet().iterator().next());
+		}
+		else
+		{
+			// Other maps hold the whole limit.
+			++recordsUsed;
+		}
+		model.put(key, value);
+	}
+
+	private void iterate(int mapIdx)
+	{
+		Iterator<Pair<UUID, Integer>> it = maps.get(mapIdx).iterator();
+		Iterator<Map.Entry<UUID, Integer>> modelIt = models.get(mapIdx).entrySet().iterator();
+		while(modelIt.hasNext())
+		{
+			Map.Entry<UUID, Integer> expected = modelIt.next();
+			check(it.hasNext(), "iterator ends too early");
+			Pair<UUID, Integer> record = it.next();
+			check(record.first.equals(expected.getKey()) && record.second.equals(expected.getValue()),
+			      "iteration order");
+			if(random.nextInt(5) == 0)
+			{
+				it.remove();
+				modelIt.remove();
+				--recordsUsed;
+			}
+		}
+		check(!it.hasNext(), "iterator has extra records");
+	}
+
+	private UUID getUsedKey()
+	{
+		return usedKeys.get(random.nextInt(usedKeys.size()));
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if(!condition)
+		{
+			throw new AssertionError(message);
+		}
+	}
+}
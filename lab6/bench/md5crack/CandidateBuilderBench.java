@@ -0,0 +1,149 @@
+package md5crack;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares candidate generation: ns and bytes allocated per candidate.
+ * <ul>
+ * <li><code>old</code> - the former builder, that looked up letter indices in <code>HashMap</code>
+ * and rewrote every position after the changed one;</li>
+ * <li><code>new</code> - <code>CandidateStringBuilder.getNextCandidate</code> with odometer of letter indices.</li>
+ * </ul>
+ * <p>
+ * Both builders start from the same index of default search space, checksum of letters is printed
+ * to show that they generate the same strings. Every builder is repeated several times, the first third
+ * of repetitions is warm-up, and median of the rest is printed.
+ * </p>
+ * <p>
+ * <code>javac -d out -cp classes bench/md5crack/CandidateBuilderBench.java</code>,
+ * then <code>java -cp out:classes md5crack.CandidateBuilderBench</code>.
+ * </p>
+ */
+public class CandidateBuilderBench implements CommonData
+{
+	private static final long START_INDEX = 1000000000L;
+	private static final int CANDIDATES_PER_REPETITION = 20000000;
+	private static final int REPETITIONS = 9;
+
+	private interface Generator
+	{
+		/**
+		 * Generates <code>CANDIDATES_PER_REPETITION</code> candidates from <code>START_INDEX</code>.
+		 *
+		 * @return checksum of generated letters
+		 */
+		long run();
+	}
+
+	public static void main(String[] args)
+	{
+		measure("old", () ->
+		{
+			OldBuilder builder = new OldBuilder(START_INDEX);
+			long checksum = 0;
+			for(int k = 0; k < CANDIDATES_PER_REPETITION; ++k)
+			{
+				CandidateStringBuilder.Candidate candidate = builder.getNextCandidate();
+				checksum += candidate.data[candidate.length - 1] + candidate.length;
+			}
+			return checksum;
+		});
+
+		measure("new", () ->
+		{
+			CandidateStringBuilder builder = new CandidateStringBuilder(SearchSpace.DEFAULT, START_INDEX);
+			long checksum = 0;
+			for(int k = 0; k < CANDIDATES_PER_REPETITION; ++k)
+			{
+				CandidateStringBuilder.Candidate candidate = builder.getNextCandidate();
+				checksum += candidate.data[candidate.length - 1] + candidate.length;
+			}
+			return checksum;
+		});
+	}
+
+	private static void measure(String name, Generator generator)
+	{
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadID = Thread.currentThread().getId();
+		double[] times = new double[REPETITIONS];
+		long allocated = 0;
+		long checksum = 0;
+		for(int i = 0; i < REPETITIONS; ++i)
+		{
+			long allocatedBefore = threadBean.getThreadAllocatedBytes(threadID);
+			long startTime = System.nanoTime();
+			checksum = generator.run();
+			times[i] = (System.nanoTime() - startTime) / (double) CANDIDATES_PER_REPETITION;
+			allocated = threadBean.getThreadAllocatedBytes(threadID) - allocatedBefore;
+		}
+		double[] measured = Arrays.copyOfRange(times, REPETITIONS / 3, REPETITIONS);
+		Arrays.sort(measured);
+		System.out.println(String.format("%s: %.2f ns and %.3f bytes allocated per candidate (checksum %d)",
+				name, measured[measured.length / 2], allocated / (double) CANDIDATES_PER_REPETITION, checksum));
+	}
+
+	/**
+	 * The former builder over default alphabet, kept for comparison.
+	 */
+	private static class OldBuilder
+	{
+		private long startIdx;
+		private CandidateStringBuilder.Candidate candidate;
+		private Map<Byte, Integer> letterToIdx = new HashMap<>();
+
+		public OldBuilder(long startIdx)
+		{
+			this.startIdx = startIdx;
+
+			for(int i = 0; i < ALPHABET.length; ++i)
+			{
+				letterToIdx.put(ALPHABET[i], i);
+			}
+		}
+
+		public CandidateStringBuilder.Candidate getNextCandidate()
+		{
+			if(candidate == null)
+			{
+				candidate = CandidateStringBuilder.getByIndex(SearchSpace.DEFAULT, startIdx);
+			}
+			else
+			{
+				byte[] data = candidate.data;
+				int length = candidate.length;
+				int maxLetterIdx = ALPHABET.length - 1;
+
+				boolean isMaxStringForThisLength = true;
+				for(int i = length - 1; i >= 0; --i)
+				{
+					int letterIdx = letterToIdx.get(data[i]);
+					if(letterIdx < maxLetterIdx)
+					{
+						data[i] = ALPHABET[letterIdx + 1];
+						for(int j = i + 1; j < length; ++j)
+						{
+							data[j] = ALPHABET[0];
+						}
+						isMaxStringForThisLength = false;
+						break;
+					}
+				}
+				if(isMaxStringForThisLength)
+				{
+					length = ++candidate.length;
+					for(int j = 0; j < length; ++j)
+					{
+						data[j] = ALPHABET[0];
+					}
+				}
+
+				++candidate.index;
+			}
+			return candidate;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package md5crack;
+
+import javax.xml.bind.DatatypeConverter;
+import java.lang.management.ManagementFactory;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Compares ways of checking candidate against target hash: candidates per second and bytes allocated per candidate.
+ * <ul>
+ * <li><code>hex</code> - the old client path: <code>digest()</code> into new array, hex string of it
+ * and comparison of strings;</li>
+ * <li><code>raw</code> - <code>MessageDigest.digest(byte[], int, int)</code> into reused buffer
+ * and comparison of bytes in place;</li>
+ * <li><code>kernel</code> - <code>Md5Kernel.matches</code>, that client uses now.</li>
+ * </ul>
+ * <p>
+ * Candidates of default search space are generated in the same way for all paths, target is never found.
+ * Every path is repeated several times, the first third of repetitions is warm-up, and median of the rest
+ * is printed. Allocation is measured by <code>ThreadMXBean</code> over the last repetition.
+ * </p>
+ * <p>
+ * <code>javac -d out -cp classes bench/md5crack/DigestPathBench.java</code>,
+ * then <code>java -cp out:classes md5crack.DigestPathBench</code>.
+ * </p>
+ */
+public class DigestPathBench implements CommonData
+{
+	private static final long START_INDEX = 1000000000L;
+	private static final int CANDIDATES_PER_REPETITION = 2000000;
+	private static final int REPETITIONS = 9;
+
+	// Consumes results, so that checks aren't eliminated.
+	private static long sink = 0;
+
+	private interface CheckPath
+	{
+		/**
+		 * @return true if candidate has target hash
+		 */
+		boolean check(byte[] data, int length) throws DigestException;
+	}
+
+	public static void main(String[] args) throws NoSuchAlgorithmException, DigestException
+	{
+		// Hash of string, that is not in space.
+		byte[] target = MessageDigest.getInstance(HASH_TYPE).digest("not a candidate".getBytes(CHARSET));
+		String hexTarget = DatatypeConverter.printHexBinary(target);
+
+		MessageDigest hexDigest = MessageDigest.getInstance(HASH_TYPE);
+		measure("hex", (data, length) ->
+		{
+			hexDigest.update(data, 0, length);
+			return DatatypeConverter.printHexBinary(hexDigest.digest()).equals(hexTarget);
+		});
+
+		MessageDigest rawDigest = MessageDigest.getInstance(HASH_TYPE);
+		byte[] hash = new byte[DIGEST_LENGTH];
+		measure("raw", (data, length) ->
+		{
+			rawDigest.update(data, 0, length);
+			rawDigest.digest(hash, 0, DIGEST_LENGTH);
+			return hashEquals(hash, target);
+		});
+
+		Md5Kernel kernel = new Md5Kernel();
+		kernel.setTarget(target);
+		measure("kernel", kernel::matches);
+		System.out.println("  (" + sink + ")");
+	}
+
+	private static void measure(String name, CheckPath path) throws DigestException
+	{
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadID = Thread.currentThread().getId();
+		double[] times = new double[REPETITIONS];
+		long allocated = 0;
+		for(int i = 0; i < REPETITIONS; ++i)
+		{
+			CandidateStringBuilder builder = new CandidateStringBuilder(SearchSpace.DEFAULT, START_INDEX);
+			long allocatedBefore = threadBean.getThreadAllocatedBytes(threadID);
+			long startTime = System.nanoTime();
+			for(int k = 0; k < CANDIDATES_PER_REPETITION; ++k)
+			{
+				CandidateStringBuilder.Candidate candidate = builder.getNextCandidate();
+				sink += (path.check(candidate.data, candidate.length) ? 1 : 0);
+			}
+			times[i] = (System.nanoTime() - startTime) / (double) CANDIDATES_PER_REPETITION;
+			allocated = threadBean.getThreadAllocatedBytes(threadID) - allocatedBefore;
+		}
+		double time = getMedian(times);
+		System.out.println(String.format("%s: %.0f candidates per second, %.1f ns and %.1f bytes allocated per candidate",
+				name, 1e9 / time, time, allocated / (double) CANDIDATES_PER_REPETITION));
+	}
+
+	private static boolean hashEquals(byte[] hash, byte[] target)
+	{
+		for(int i = 0; i < DIGEST_LENGTH; ++i)
+		{
+			if(hash[i] != target[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static double getMedian(double[] times)
+	{
+		double[] measured = Arrays.copyOfRange(times, times.length / 3, times.length);
+		Arrays.sort(measured);
+		return measured[measured.length / 2];
+	}
+}
@@ -0,0 +1,250 @@
+package md5crack.client;
+
+import md5crack.CandidateStringBuilder;
+import md5crack.CommonData;
+import md5crack.Md5Kernel;
+import md5crack.Range;
+import md5crack.SearchSpace;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Benchmarks of cracking hot loop: candidate generation, hashing and checking of whole ranges.
+ * <p>
+ * Every benchmark is warmed up first, then measured for several iterations of fixed duration.
+ * Clock is read after batches, that grow until they take <code>CLOCK_CHECK_PERIOD</code>,
+ * so iteration overruns its duration by no more than one batch, even if one operation checks a whole range.
+ * Average time per candidate and half-width of its 99.9% confidence interval are printed for every benchmark
+ * into standard error, and all results are written as JSON array with the same fields as JMH result file
+ * (<code>benchmark</code>, <code>mode</code>, <code>params</code>, <code>primaryMetric</code>),
+ * so results of different versions can be compared by the same tools.
+ * </p>
+ * <p>
+ * Benchmark needs package-private classes of client, so it is compiled against client classes:
+ * <code>javac -d out -cp classes bench/md5crack/client/Benchmark.java</code>,
+ * then run as <code>java -cp out:classes md5crack.client.Benchmark [iterations] [outputFile]</code>.
+ * JSON goes to standard output, if there is no output file.
+ * </p>
+ */
+public class Benchmark implements CommonData
+{
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final int DEFAULT_ITERATIONS = 5;
+	private static final long ITERATION_TIME = 1000;
+	// Nanoseconds.
+	private static final long CLOCK_CHECK_PERIOD = 100000;
+	// Score error is half-width of 99.9% confidence interval.
+	private static final double CONFIDENCE_Z = 3.29;
+	private static final long START_INDEX = 1000000000L;
+	private static final long[] RANGE_LENGTHS = {1000, 100000, 1000000};
+
+	// Keeps results alive, so that JIT can't throw benchmarked code away.
+	private static volatile long sink;
+
+	private interface Operation
+	{
+		/**
+		 * @return value, that depends on the work done
+		 */
+		long run();
+	}
+
+	/**
+	 * Candidate builder, that starts from the beginning again after the last string of space.
+	 */
+	private static class CyclingBuilder
+	{
+		private SearchSpace space;
+		private CandidateStringBuilder builder;
+
+		CyclingBuilder(SearchSpace space)
+		{
+			this.space = space;
+			this.builder = new CandidateStringBuilder(space, START_INDEX);
+		}
+
+		CandidateStringBuilder.Candidate next()
+		{
+			CandidateStringBuilder.Candidate candidate = builder.getNextCandidate();
+			if(candidate.index == space.getMaxIndex())
+			{
+				builder = new CandidateStringBuilder(space, START_INDEX);
+			}
+			return candidate;
+		}
+	}
+
+	private static class Result
+	{
+		String name;
+		String params;
+		double score;
+		double error;
+		String unit;
+	}
+
+	public static void main(String[] args)
+	{
+		if(args.length > 2)
+		{
+			System.out.println("Usage: <(optional)iterations> <(optional)outputFile>");
+			return;
+		}
+		int iterations = (args.length >= 1 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS);
+		String outputFile = (args.length == 2 ? args[1] : null);
+
+		SearchSpace space = SearchSpace.DEFAULT;
+		// Hash of string, that is not in space, so nothing is ever found.
+		byte[] target = new byte[DIGEST_LENGTH];
+		TargetHashSet singleTarget = new TargetHashSet(new byte[][]{target});
+		List<Result> results = new ArrayList<>();
+
+		CyclingBuilder builder = new CyclingBuilder(space);
+		results.add(measure("getNextCandidate", "", iterations, 1, () -> builder.next().length));
+
+		long[] index = {START_INDEX};
+		results.add(measure("getByIndex", "", iterations, 1, () ->
+		{
+			index[0] = (index[0] * 6364136223846793005L + 1442695040888963407L) & Long.MAX_VALUE;
+			return CandidateStringBuilder.getByIndex(space, index[0] % (space.getMaxIndex() + 1)).length;
+		}));
+
+		CyclingBuilder matchBuilder = new CyclingBuilder(space);
+		Md5Kernel kernel = new Md5Kernel();
+		kernel.setTarget(target);
+		results.add(measure("matches", "", iterations, 1, () ->
+		{
+			CandidateStringBuilder.Candidate candidate = matchBuilder.next();
+			return (kernel.matches(candidate.data, candidate.length) ? 1 : 0);
+		}));
+
+		CyclingBuilder digestBuilder = new CyclingBuilder(space);
+		byte[] hash = new byte[DIGEST_LENGTH];
+		TargetHashSet targets = new TargetHashSet(new byte[][]{target, new byte[DIGEST_LENGTH]});
+		results.add(measure("digestAndFind", "", iterations, 1, () ->
+		{
+			CandidateStringBuilder.Candidate candidate = digestBuilder.next();
+			kernel.digest(candidate.data, candidate.length, hash, 0);
+			return targets.find(hash);
+		}));
+
+		CrackingWorker worker = new CrackingWorker("benchmark");
+		HitListener listener = (hashIdx, stringIdx) -> {};
+		for(long rangeLength : RANGE_LENGTHS)
+		{
+			Range range = new Range(START_INDEX, START_INDEX + rangeLength - 1);
+			results.add(measure("crackRange", "\"rangeLength\": \"" + rangeLength + "\"", iterations, rangeLength,
+					() -> worker.crack(space, range, singleTarget, listener, new AtomicBoolean(false))));
+		}
+
+		String json = toJson(results);
+		if(outputFile == null)
+		{
+			System.out.println(json);
+		}
+		else
+		{
+			try
+			{
+				Files.write(Paths.get(outputFile), json.getBytes(CHARSET));
+			}
+			catch(IOException e)
+			{
+				System.out.println("Couldn't write results: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Runs operation repeatedly and measures average time of one candidate.
+	 *
+	 * @param name             - benchmark name
+	 * @param params           - JSON members of benchmark parameters
+	 * @param iterations       - count of measured iterations
+	 * @param candidatesPerRun - count of candidates, checked by one run of operation
+	 * @param operation        - benchmarked operation
+	 * @return result in nanoseconds per candidate
+	 */
+	private static Result measure(String name, String params, int iterations, long candidatesPerRun, Operation operation)
+	{
+		for(int i = 0; i < WARMUP_ITERATIONS; ++i)
+		{
+			runIteration(operation, candidatesPerRun);
+		}
+		double[] scores = new double[iterations];
+		double sum = 0;
+		for(int i = 0; i < iterations; ++i)
+		{
+			scores[i] = runIteration(operation, candidatesPerRun);
+			sum += scores[i];
+		}
+
+		Result result = new Result();
+		result.name = name;
+		result.params = params;
+		result.score = sum / iterations;
+		double variance = 0;
+		for(double score : scores)
+		{
+			variance += (score - result.score) * (score - result.score);
+		}
+		variance = (iterations > 1 ? variance / (iterations - 1) : 0);
+		result.error = CONFIDENCE_Z * Math.sqrt(variance / iterations);
+		result.unit = "ns/candidate";
+		System.err.println(String.format("%s %s: %.3f +- %.3f %s", name, params, result.score, result.error, result.unit));
+		return result;
+	}
+
+	private static double runIteration(Operation operation, long candidatesPerRun)
+	{
+		long runs = 0;
+		long value = 0;
+		long batch = 1;
+		long startTime = System.nanoTime();
+		long endTime = startTime + ITERATION_TIME * 1000000;
+		long now = startTime;
+		do
+		{
+			long batchStartTime = now;
+			for(long i = 0; i < batch; ++i)
+			{
+				value += operation.run();
+			}
+			runs += batch;
+			now = System.nanoTime();
+			// Fast operations are run in larger batches, so that reading of clock doesn't count.
+			if(now - batchStartTime < CLOCK_CHECK_PERIOD)
+			{
+				batch *= 2;
+			}
+		}
+		while(now < endTime);
+		sink = value;
+		return (double) (now - startTime) / (runs * candidatesPerRun);
+	}
+
+	private static String toJson(List<Result> results)
+	{
+		StringBuilder json = new StringBuilder("[\n");
+		for(int i = 0; i < results.size(); ++i)
+		{
+			Result result = results.get(i);
+			json.append("  {\n");
+			json.append("    \"benchmark\": \"md5crack.").append(result.name).append("\",\n");
+			json.append("    \"mode\": \"avgt\",\n");
+			json.append("    \"params\": {").append(result.params).append("},\n");
+			json.append("    \"primaryMetric\": {\n");
+			json.append("      \"score\": ").append(result.score).append(",\n");
+			json.append("      \"scoreError\": ").append(result.error).append(",\n");
+			json.append("      \"scoreUnit\": \"").append(result.unit).append("\"\n");
+			json.append("    }\n");
+			json.append("  }").append(i + 1 < results.size() ? ",\n" : "\n");
+		}
+		return json.append("]").toString();
+	}
+}
@@ -0,0 +1,195 @@
+package md5crack.server;
+
+import md5crack.Range;
+import md5crack.SearchSpace;
+
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+/**
+ * Discrete-event simulation of the end of crack run, with and without copies of straggler ranges.
+ * <p>
+ * Clients of different speeds take ranges from real <code>RangeSet</code>, sized by real
+ * <code>ClientHandler</code> after their measured throughput, as server does. In every scenario
+ * one client changes its speed at some moment: slows down or stalls. Stalled client keeps its ranges,
+ * until they are taken back after <code>JOB_TIMEOUT</code>. Time of completion of the whole space
+ * is printed for server, that answers "no job" when free ranges are over, and for server,
+ * that gives copy of the oldest range in flight instead.
+ * </p>
+ * <p>
+ * <code>javac -d out -cp classes bench/md5crack/server/StragglerSimulation.java</code>,
+ * then <code>java -cp out:classes md5crack.server.StragglerSimulation</code>.
+ * </p>
+ */
+public class StragglerSimulation
+{
+	// The same values as in Server.
+	private static final long DEFAULT_RANGE_TO_CRACK = 20000;
+	private static final long MIN_RANGE_TO_CRACK = 1000;
+	private static final long MAX_RANGE_TO_CRACK = 200000000;
+	private static final long TARGET_JOB_TIME = 3000;
+	private static final long JOB_TIMEOUT = 9000;
+	// Client without job asks again after this time.
+	private static final long RETRY_PERIOD = 500;
+
+	// Strings per millisecond.
+	private static final double[] CLIENT_SPEEDS = {5000, 5000, 5000, 5000, 4000, 4000, 3000, 2000, 1000, 500};
+
+	private static class Scenario
+	{
+		String name;
+		// Part of ideal completion time, when client changes its speed, or negative for no change.
+		double changeAt;
+		int client;
+		// New speed, 0 for stall.
+		double newSpeed;
+
+		Scenario(String name, double changeAt, int client, double newSpeed)
+		{
+			this.name = name;
+			this.changeAt = changeAt;
+			this.client = client;
+			this.newSpeed = newSpeed;
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		long spaceSize = SearchSpace.DEFAULT.getMaxIndex() + 1;
+		double totalSpeed = 0;
+		for(double speed : CLIENT_SPEEDS)
+		{
+			totalSpeed += speed;
+		}
+		double idealTime = spaceSize / totalSpeed;
+		System.out.println(String.format("%d clients, %s, ideal time %.1f s",
+				CLIENT_SPEEDS.length, SearchSpace.DEFAULT, idealTime / 1000));
+
+		Scenario[] scenarios = {
+				new Scenario("steady speeds", -1, 0, 0),
+				new Scenario("fast client slows 20x at 80%", 0.8, 0, CLIENT_SPEEDS[0] / 20),
+				new Scenario("fast client stalls at 90%", 0.9, 0, 0),
+				new Scenario("slow client slows 10x at 95%", 0.95, CLIENT_SPEEDS.length - 1,
+						CLIENT_SPEEDS[CLIENT_SPEEDS.length - 1] / 10),
+		};
+		for(Scenario scenario : scenarios)
+		{
+			long changeTime = (scenario.changeAt < 0 ? Long.MAX_VALUE : (long) (idealTime * scenario.changeAt));
+			double withoutCopies = simulate(spaceSize, changeTime, scenario, false);
+			double withCopies = simulate(spaceSize, changeTime, scenario, true);
+			System.out.println(String.format("%-32s without copies %.1f s, with copies %.1f s",
+					scenario.name, withoutCopies / 1000, withCopies / 1000));
+		}
+	}
+
+	/**
+	 * @param spaceSize  - count of strings to check
+	 * @param changeTime - time, when client of scenario changes its speed
+	 * @param scenario   - scenario
+	 * @param useCopies  - whether clients without free ranges get copies of ranges in flight
+	 * @return time in milliseconds, when all strings are checked
+	 */
+	private static double simulate(long spaceSize, long changeTime, Scenario scenario, boolean useCopies)
+	{
+		RangeSet ranges = new RangeSet(new Range(0L, spaceSize - 1));
+		int clientCount = CLIENT_SPEEDS.length;
+		ClientHandler[] handlers = new ClientHandler[clientCount];
+		Range[] currentRanges = new Range[clientCount];
+		boolean[] stalled = new boolean[clientCount];
+		// Events are pairs of time and client, which finishes its range or asks for job at that time.
+		PriorityQueue<double[]> events = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+		for(int i = 0; i < clientCount; ++i)
+		{
+			handlers[i] = new ClientHandler(new UUID(0, i));
+			events.add(new double[]{0, i});
+		}
+
+		double currentTime = 0;
+		while(!events.isEmpty())
+		{
+			double[] event = events.poll();
+			currentTime = event[0];
+			int client = (int) event[1];
+			expireClients(handlers, stalled, ranges, currentTime);
+			if(stalled[client])
+			{
+				continue;
+			}
+			if(currentRanges[client] != null)
+			{
+				handlers[client].jobCompleted(currentRanges[client], (long) currentTime);
+				ranges.complete(currentRanges[client]);
+				currentRanges[client] = null;
+			}
+			if(ranges.isEmpty() && ranges.getInFlightLength() == 0)
+			{
+				return currentTime;
+			}
+
+			long rangeLength = handlers[client].getNextRangeLength(
+					TARGET_JOB_TIME, DEFAULT_RANGE_TO_CRACK, MIN_RANGE_TO_CRACK, MAX_RANGE_TO_CRACK);
+			Range range = ranges.take(rangeLength);
+			if(range == null && useCopies)
+			{
+				range = ranges.takeCopy(handlers[client].stringRanges);
+			}
+			if(range == null)
+			{
+				events.add(new double[]{currentTime + RETRY_PERIOD, client});
+				continue;
+			}
+			handlers[client].jobStarted(range, (long) currentTime);
+			currentRanges[client] = range;
+
+			double finishTime = getFinishTime(client, range.getLength(), currentTime, changeTime, scenario);
+			if(Double.isInfinite(finishTime))
+			{
+				// Client stalls and will be silent, until its ranges are taken back.
+				stalled[client] = true;
+				events.add(new double[]{currentTime + JOB_TIMEOUT + 1, client});
+			}
+			else
+			{
+				events.add(new double[]{finishTime, client});
+			}
+		}
+		return currentTime;
+	}
+
+	/**
+	 * @return time, when client checks given count of strings, or infinity if it stalls before
+	 */
+	private static double getFinishTime(int client, long count, double startTime, long changeTime, Scenario scenario)
+	{
+		double speed = CLIENT_SPEEDS[client];
+		if(client != scenario.client || startTime + count / speed <= changeTime)
+		{
+			return startTime + count / speed;
+		}
+		double checkedBeforeChange = Math.max(changeTime - startTime, 0) * speed;
+		double timeOfChange = Math.max(changeTime, startTime);
+		if(scenario.newSpeed == 0)
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+		return timeOfChange + (count - checkedBeforeChange) / scenario.newSpeed;
+	}
+
+	/**
+	 * Takes ranges back from stalled clients, which were silent for <code>JOB_TIMEOUT</code>.
+	 */
+	private static void expireClients(ClientHandler[] handlers, boolean[] stalled, RangeSet ranges, double currentTime)
+	{
+		for(int i = 0; i < handlers.length; ++i)
+		{
+			if(stalled[i] && handlers[i].lastSeenTime + JOB_TIMEOUT < currentTime)
+			{
+				Range range;
+				while((range = handlers[i].stringRanges.pollLast()) != null)
+				{
+					ranges.release(range);
+				}
+			}
+		}
+	}
+}
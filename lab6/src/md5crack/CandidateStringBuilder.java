@@ -1,93 +1,100 @@
 package md5crack;
 
-import java.util.HashMap;
-import java.util.Map;
-
+/**
+ * Generates candidate strings in index order.
+ * <p>
+ * Current string is kept as odometer of letter indices in alphabet,
+ * so moving to the next candidate touches only changed positions.
+ * Candidates end with the last string of search space.
+ * </p>
+ */
 public class CandidateStringBuilder
 {
+	private SearchSpace space;
+	private byte[] alphabet;
+	private int maxDigit;
+	private long maxIdx;
+
 	private long startIdx;
 	private Candidate candidate;
-	private Map<Byte, Integer> letterToIdx = new HashMap<>();
+	private byte[] digits;
 
-	public CandidateStringBuilder(long startIdx)
+	public CandidateStringBuilder(SearchSpace space, long startIdx)
 	{
+		this.space = space;
+		this.alphabet = space.getAlphabet();
+		this.maxDigit = alphabet.length - 1;
+		this.maxIdx = space.getMaxIndex();
 		this.startIdx = startIdx;
-
-		for(int i = 0; i < CommonData.ALPHABET.length; ++i)
-		{
-			letterToIdx.put(CommonData.ALPHABET[i], i);
-		}
+		this.digits = new byte[space.getMaxLength()];
 	}
 
+	/**
+	 * @return next candidate, the same object every time, or null after the last string of search space
+	 */
 	public Candidate getNextCandidate()
 	{
 		if(candidate == null)
 		{
-            candidate = getByIndex(startIdx);
+			if(startIdx > maxIdx)
+			{
+				return null;
+			}
+			candidate = getByIndex(space, startIdx, digits);
 		}
 		else
 		{
-			byte[] data = candidate.data;
-			int length = candidate.length;
-			int maxLetterIdx = CommonData.ALPHABET.length - 1;
-
-			boolean isMaxStringForThisLength = true;
-			for(int i = length - 1; i >= 0; --i)
-			{
-				int letterIdx = letterToIdx.get(data[i]);
-				if(letterIdx < maxLetterIdx)
-				{
-					data[i] = CommonData.ALPHABET[letterIdx + 1];
-					for(int j = i + 1; j < length; ++j)
-					{
-						data[j] = CommonData.ALPHABET[0];
-					}
-					isMaxStringForThisLength = false;
-					break;
-				}
-			}
-			if(isMaxStringForThisLength)
+			if(candidate.index == maxIdx)
 			{
-				length = ++candidate.length;
-				for(int j = 0; j < length; ++j)
-				{
-					data[j] = CommonData.ALPHABET[0];
-				}
+				return null;
 			}
-
+			candidate.length = increment(candidate.data, candidate.length);
 			++candidate.index;
 		}
 		return candidate;
 	}
 
-	public static Candidate getByIndex(long index)
+	/**
+	 * Moves odometer to the next string. Current string shouldn't be the last one of search space.
+	 *
+	 * @param data   - letters of current string
+	 * @param length - current string length
+	 * @return length of the next string
+	 */
+	private int increment(byte[] data, int length)
 	{
-		byte[] data = new byte[CommonData.MAX_STRING_LENGTH];
-		int length;
-		if(index == 0)
-		{
-			length = 0;
-		}
-		else
+		for(int i = length - 1; i >= 0; --i)
 		{
-			length = 1;
-			long stringsForLength = CommonData.ALPHABET.length;
-			long expectedIdx = stringsForLength;
-			while(expectedIdx < index)
+			int digit = digits[i];
+			if(digit < maxDigit)
 			{
-				++length;
-				stringsForLength *= CommonData.ALPHABET.length;
-				expectedIdx += stringsForLength;
+				digits[i] = (byte) (digit + 1);
+				data[i] = alphabet[digit + 1];
+				return length;
 			}
+			digits[i] = 0;
+			data[i] = alphabet[0];
+		}
 
-			// Now length is determined.
-			long tmp = index - 1;
-			for(int i = length - 1; i >= 0; --i)
-			{
-				int letterIdx = (int) (tmp % CommonData.ALPHABET.length);
-				data[i] = CommonData.ALPHABET[letterIdx];
-				tmp = (tmp / CommonData.ALPHABET.length) - 1;
-			}
+		// It was the last string for this length, all positions are reset already.
+		digits[length] = 0;
+		data[length] = alphabet[0];
+		return length + 1;
+	}
+
+	public static Candidate getByIndex(SearchSpace space, long index)
+	{
+		return getByIndex(space, index, new byte[space.getMaxLength()]);
+	}
+
+	private static Candidate getByIndex(SearchSpace space, long index, byte[] digits)
+	{
+		byte[] alphabet = space.getAlphabet();
+		byte[] data = new byte[space.getMaxLength()];
+		int length = space.getDigits(index, digits);
+		for(int i = 0; i < length; ++i)
+		{
+			data[i] = alphabet[digits[i]];
 		}
 		return new Candidate(data, index, length);
 	}
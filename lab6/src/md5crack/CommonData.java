@@ -10,9 +10,11 @@ public interface CommonData
 
 	String HASH_TYPE = "MD5";
 	int HASH_LENGTH = 32;
+	int DIGEST_LENGTH = 16;
 
 	int CLIENT_RECONNECT_MAX = 5;
 	long CLIENT_RECONNECT_PERIOD = 3000;
+	int SIZEOF_INT = 4;
 	int SIZEOF_LONG = 8;
 
 	long NO_JOB_TO_DO = -1L;
@@ -0,0 +1,16 @@
+package md5crack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public interface FrameListener
+{
+	/**
+	 * Processes received frame.
+	 *
+	 * @param type    - frame type
+	 * @param payload - buffer, containing only frame payload; valid only during this call
+	 * @throws IOException
+	 */
+	void frameReceived(byte type, ByteBuffer payload) throws IOException;
+}
@@ -0,0 +1,133 @@
+package md5crack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Splits stream of socket channel into frames of <code>SessionProtocol</code>.
+ * Works both with blocking and non-blocking channels.
+ */
+public class FramedConnection implements SessionProtocol
+{
+	private static final int INITIAL_BUFFER_SIZE = 256;
+
+	private SocketChannel channel;
+	private ByteBuffer recvBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+	// Contains queued output between 0 and position.
+	private ByteBuffer sendBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+	public FramedConnection(SocketChannel channel)
+	{
+		this.channel = channel;
+	}
+
+	public SocketChannel getChannel()
+	{
+		return channel;
+	}
+
+	/**
+	 * Reads available data and passes every complete frame to <code>listener</code>.
+	 * For blocking channel waits until some data is available.
+	 *
+	 * @param listener - listener for received frames
+	 * @return false if peer has closed connection
+	 * @throws IOException
+	 */
+	public boolean receive(FrameListener listener) throws IOException
+	{
+		if(channel.read(recvBuffer) == -1)
+		{
+			return false;
+		}
+
+		recvBuffer.flip();
+		while(recvBuffer.remaining() >= FRAME_HEADER_LENGTH)
+		{
+			int frameStart = recvBuffer.position();
+			int payloadLength = getPayloadLength(frameStart);
+			int frameEnd = frameStart + FRAME_HEADER_LENGTH + payloadLength;
+			if(recvBuffer.limit() < frameEnd)
+			{
+				break;
+			}
+
+			ByteBuffer payload = recvBuffer.duplicate();
+			payload.limit(frameEnd);
+			payload.position(frameStart + FRAME_HEADER_LENGTH);
+			recvBuffer.position(frameEnd);
+			listener.frameReceived(recvBuffer.get(frameStart), payload.slice());
+		}
+		recvBuffer.compact();
+
+		if(recvBuffer.position() >= FRAME_HEADER_LENGTH)
+		{
+			// Make sure, that incomplete frame fits into buffer.
+			int frameLength = FRAME_HEADER_LENGTH + getPayloadLength(0);
+			if(frameLength > recvBuffer.capacity())
+			{
+				recvBuffer.flip();
+				recvBuffer = ByteBuffer.allocate(frameLength).put(recvBuffer);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Queues frame header and returns buffer for frame payload.
+	 * Payload of exactly <code>payloadLength</code> bytes should be put into returned buffer
+	 * before next call of any other method of this connection.
+	 *
+	 * @param type          - frame type
+	 * @param payloadLength - payload length
+	 * @return buffer for payload
+	 */
+	public ByteBuffer startFrame(byte type, int payloadLength)
+	{
+		int frameLength = FRAME_HEADER_LENGTH + payloadLength;
+		if(sendBuffer.remaining() < frameLength)
+		{
+			int capacity = Math.max(sendBuffer.capacity() * 2, sendBuffer.position() + frameLength);
+			sendBuffer.flip();
+			sendBuffer = ByteBuffer.allocate(capacity).put(sendBuffer);
+		}
+		sendBuffer.put(type);
+		sendBuffer.putInt(payloadLength);
+		return sendBuffer;
+	}
+
+	/**
+	 * Writes queued frames. For non-blocking channel writes as much as possible.
+	 *
+	 * @return true if all queued frames are written
+	 * @throws IOException
+	 */
+	public boolean flush() throws IOException
+	{
+		sendBuffer.flip();
+		channel.write(sendBuffer);
+		sendBuffer.compact();
+		return !hasPendingOutput();
+	}
+
+	public boolean hasPendingOutput()
+	{
+		return sendBuffer.position() != 0;
+	}
+
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	private int getPayloadLength(int frameStart) throws IOException
+	{
+		int payloadLength = recvBuffer.getInt(frameStart + 1);
+		if(payloadLength < 0 || payloadLength > MAX_FRAME_PAYLOAD)
+		{
+			throw new IOException("Invalid frame length: " + payloadLength);
+		}
+		return payloadLength;
+	}
+}
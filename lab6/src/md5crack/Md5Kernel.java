@@ -0,0 +1,229 @@
+package md5crack;
+
+/**
+ * MD5 implementation for messages, that fit into one 64-byte block
+ * (up to <code>MAX_MESSAGE_LENGTH</code> bytes).
+ * <p>
+ * Padding and length words are written only when message length changes,
+ * so for every next candidate only words with message bytes are rewritten.
+ * Comparison with target hash stops after step 60 of 64: the last step
+ * uses message word 9, which is zero for messages up to 35 bytes,
+ * so target state can be reversed by one step in advance.
+ * </p>
+ */
+public class Md5Kernel
+{
+	public static final int MAX_MESSAGE_LENGTH = 55;
+	// Longer messages have nonzero message word 9.
+	private static final int EARLY_STOP_MAX_LENGTH = 35;
+
+	private static final int A0 = 0x67452301;
+	private static final int B0 = 0xEFCDAB89;
+	private static final int C0 = 0x98BADCFE;
+	private static final int D0 = 0x10325476;
+
+	private static final int[] S = {
+			7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22,
+			5, 9, 14, 20, 5, 9, 14, 20, 5, 9, 14, 20, 5, 9, 14, 20,
+			4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23,
+			6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21};
+	private static final int[] K = new int[64];
+	private static final int[] G = new int[64];
+
+	static
+	{
+		for(int i = 0; i < 64; ++i)
+		{
+			K[i] = (int) (long) Math.floor(Math.abs(Math.sin(i + 1)) * 4294967296.0);
+			if(i < 16)
+			{
+				G[i] = i;
+			}
+			else if(i < 32)
+			{
+				G[i] = (5 * i + 1) & 0xF;
+			}
+			else if(i < 48)
+			{
+				G[i] = (3 * i + 5) & 0xF;
+			}
+			else
+			{
+				G[i] = (7 * i) & 0xF;
+			}
+		}
+	}
+
+	private final int[] block = new int[16];
+	private int messageLength = -1;
+
+	private int stateA, stateB, stateC, stateD;
+
+	private int targetA, targetB, targetC, targetD;
+	// Register value after step 60, obtained by reversing the last step.
+	private int targetX59;
+
+	/**
+	 * Sets hash, that <code>matches</code> compares with.
+	 *
+	 * @param hash - raw bytes of MD5 hash
+	 */
+	public void setTarget(byte[] hash)
+	{
+		targetA = readIntLE(hash, 0) - A0;
+		targetB = readIntLE(hash, 4) - B0;
+		targetC = readIntLE(hash, 8) - C0;
+		targetD = readIntLE(hash, 12) - D0;
+
+		// After the last step a = X60, b = X63, c = X62, d = X61,
+		// where Xi is register value produced by step i.
+		int x60 = targetA;
+		int x61 = targetD;
+		int x62 = targetC;
+		int x63 = targetB;
+		// Message word 9, used by the last step, is zero for messages shorter than 36 bytes.
+		targetX59 = Integer.rotateRight(x63 - x62, S[63]) - (x61 ^ (x62 | ~x60)) - K[63];
+	}
+
+	/**
+	 * Checks if MD5 of message equals to hash, set by <code>setTarget</code>.
+	 *
+	 * @param data   - message bytes
+	 * @param length - message length, no more than <code>MAX_MESSAGE_LENGTH</code>
+	 * @return true if hashes are equal
+	 */
+	public boolean matches(byte[] data, int length)
+	{
+		loadMessage(data, length);
+		if(!transform(length <= EARLY_STOP_MAX_LENGTH))
+		{
+			return false;
+		}
+		return stateA == targetA && stateB == targetB && stateC == targetC && stateD == targetD;
+	}
+
+	/**
+	 * Computes MD5 of message.
+	 *
+	 * @param data   - message bytes
+	 * @param length - message length, no more than <code>MAX_MESSAGE_LENGTH</code>
+	 * @param out    - buffer for hash
+	 * @param offset - offset of hash in <code>out</code>
+	 */
+	public void digest(byte[] data, int length, byte[] out, int offset)
+	{
+		loadMessage(data, length);
+		transform(false);
+		writeIntLE(out, offset, stateA + A0);
+		writeIntLE(out, offset + 4, stateB + B0);
+		writeIntLE(out, offset + 8, stateC + C0);
+		writeIntLE(out, offset + 12, stateD + D0);
+	}
+
+	private void loadMessage(byte[] data, int length)
+	{
+		if(length > MAX_MESSAGE_LENGTH)
+		{
+			throw new IllegalArgumentException("Message doesn't fit into one block: " + length);
+		}
+		if(length != messageLength)
+		{
+			for(int i = 0; i < 14; ++i)
+			{
+				block[i] = 0;
+			}
+			block[14] = length << 3;
+			messageLength = length;
+		}
+
+		int fullWords = length >> 2;
+		for(int i = 0; i < fullWords; ++i)
+		{
+			block[i] = readIntLE(data, i << 2);
+		}
+		// Last word holds message tail and padding byte.
+		int word = 0x80 << ((length & 3) << 3);
+		for(int i = (fullWords << 2), shift = 0; i < length; ++i, shift += 8)
+		{
+			word |= (data[i] & 0xFF) << shift;
+		}
+		block[fullWords] = word;
+	}
+
+	private boolean transform(boolean stopEarly)
+	{
+		int[] m = block;
+		int a = A0, b = B0, c = C0, d = D0;
+		int i = 0;
+		for(; i < 16; ++i)
+		{
+			int f = (b & c) | (~b & d);
+			int tmp = d;
+			d = c;
+			c = b;
+			b += Integer.rotateLeft(a + f + K[i] + m[G[i]], S[i]);
+			a = tmp;
+		}
+		for(; i < 32; ++i)
+		{
+			int f = (d & b) | (~d & c);
+			int tmp = d;
+			d = c;
+			c = b;
+			b += Integer.rotateLeft(a + f + K[i] + m[G[i]], S[i]);
+			a = tmp;
+		}
+		for(; i < 48; ++i)
+		{
+			int f = b ^ c ^ d;
+			int tmp = d;
+			d = c;
+			c = b;
+			b += Integer.rotateLeft(a + f + K[i] + m[G[i]], S[i]);
+			a = tmp;
+		}
+		for(; i < 60; ++i)
+		{
+			int f = c ^ (b | ~d);
+			int tmp = d;
+			d = c;
+			c = b;
+			b += Integer.rotateLeft(a + f + K[i] + m[G[i]], S[i]);
+			a = tmp;
+		}
+		if(stopEarly && b != targetX59)
+		{
+			return false;
+		}
+		for(; i < 64; ++i)
+		{
+			int f = c ^ (b | ~d);
+			int tmp = d;
+			d = c;
+			c = b;
+			b += Integer.rotateLeft(a + f + K[i] + m[G[i]], S[i]);
+			a = tmp;
+		}
+		stateA = a;
+		stateB = b;
+		stateC = c;
+		stateD = d;
+		return true;
+	}
+
+	private static int readIntLE(byte[] data, int offset)
+	{
+		return (data[offset] & 0xFF) |
+		       ((data[offset + 1] & 0xFF) << 8) |
+		       ((data[offset + 2] & 0xFF) << 16) |
+		       ((data[offset + 3] & 0xFF) << 24);
+	}
+
+	private static void writeIntLE(byte[] data, int offset, int value)
+	{
+		data[offset] = (byte) value;
+		data[offset + 1] = (byte) (value >>> 8);
+		data[offset + 2] = (byte) (value >>> 16);
+		data[offset + 3] = (byte) (value >>> 24);
+	}
+}
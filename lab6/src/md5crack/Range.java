@@ -11,8 +11,11 @@ public class Range
 		this.end = end;
 	}
 
+	/**
+	 * @return count of indices in range, both ends are included
+	 */
 	public long getLength()
 	{
-		return end - start;
+		return end - start + 1;
 	}
 }
@@ -0,0 +1,258 @@
+package md5crack;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Set of all strings over given alphabet, not longer than given length.
+ * <p>
+ * Strings are indexed by length first, then in lexicographic order of letter indices:
+ * index 0 is the empty string, indices from 1 to alphabet size are strings of length 1 and so on.
+ * Index of the first string of every length is precomputed, so index is converted
+ * to string in O(length) steps.
+ * </p>
+ * <p>
+ * Ranges and jobs use long indices, so space with more than <code>PART_SIZE</code> strings
+ * is split into parts of <code>PART_SIZE</code> consecutive strings, and every crack run checks one part.
+ * Index within part is converted to string through <code>BigInteger</code> index in the whole space,
+ * which is done once per range, while following strings are generated by <code>CandidateStringBuilder</code>.
+ * </p>
+ */
+public class SearchSpace
+{
+	// Letter indices are kept in bytes.
+	public static final int MAX_ALPHABET_SIZE = 128;
+	// Lengths of ranges in part still fit into long.
+	public static final long PART_SIZE = 1L << 62;
+
+	public static final SearchSpace DEFAULT = new SearchSpace(CommonData.ALPHABET, CommonData.MAX_STRING_LENGTH);
+
+	private byte[] alphabet;
+	private int maxLength;
+	private BigInteger part;
+	// Index of the first string of this part in the whole space.
+	private BigInteger partStart;
+	private long maxIndex;
+	// firstIndex[length] is index of the first string of this length in the whole space,
+	// firstIndex[maxLength + 1] is count of all strings.
+	private BigInteger[] firstIndex;
+	// The same indices, if count of all strings fits into long, otherwise null.
+	private long[] longFirstIndex;
+	private long longPartStart;
+
+	/**
+	 * Creates the first part of space, that is the whole space, if it has no more than <code>PART_SIZE</code> strings.
+	 *
+	 * @param alphabet  - distinct letters
+	 * @param maxLength - maximal string length
+	 * @throws IllegalArgumentException if space is invalid
+	 */
+	public SearchSpace(byte[] alphabet, int maxLength)
+	{
+		this(alphabet, maxLength, BigInteger.ZERO);
+	}
+
+	/**
+	 * @param alphabet  - distinct letters
+	 * @param maxLength - maximal string length
+	 * @param part      - part number, from 0
+	 * @throws IllegalArgumentException if space is invalid or has no such part
+	 */
+	public SearchSpace(byte[] alphabet, int maxLength, BigInteger part)
+	{
+		if(alphabet.length == 0)
+		{
+			throw new IllegalArgumentException("Alphabet is empty");
+		}
+		if(alphabet.length > MAX_ALPHABET_SIZE)
+		{
+			throw new IllegalArgumentException("Alphabet should contain no more than " + MAX_ALPHABET_SIZE + " letters");
+		}
+		boolean[] usedLetters = new boolean[256];
+		for(byte letter : alphabet)
+		{
+			if(usedLetters[letter & 0xFF])
+			{
+				throw new IllegalArgumentException("Alphabet contains letter twice: " + (char) (letter & 0xFF));
+			}
+			usedLetters[letter & 0xFF] = true;
+		}
+		if(maxLength < 1 || maxLength > Md5Kernel.MAX_MESSAGE_LENGTH)
+		{
+			throw new IllegalArgumentException("Maximal length should be from 1 to " + Md5Kernel.MAX_MESSAGE_LENGTH);
+		}
+
+		this.alphabet = alphabet.clone();
+		this.maxLength = maxLength;
+		this.part = part;
+		this.firstIndex = new BigInteger[maxLength + 2];
+		firstIndex[0] = BigInteger.ZERO;
+		BigInteger stringsForLength = BigInteger.ONE;
+		BigInteger alphabetSize = BigInteger.valueOf(alphabet.length);
+		for(int length = 0; length <= maxLength; ++length)
+		{
+			firstIndex[length + 1] = firstIndex[length].add(stringsForLength);
+			stringsForLength = stringsForLength.multiply(alphabetSize);
+		}
+
+		BigInteger count = firstIndex[maxLength + 1];
+		BigInteger partCount = count.add(BigInteger.valueOf(PART_SIZE - 1)).divide(BigInteger.valueOf(PART_SIZE));
+		if(part.signum() < 0 || part.compareTo(partCount) >= 0)
+		{
+			throw new IllegalArgumentException("Part should be from 0 to " + partCount.subtract(BigInteger.ONE));
+		}
+		this.partStart = part.multiply(BigInteger.valueOf(PART_SIZE));
+		this.maxIndex = count.subtract(partStart).min(BigInteger.valueOf(PART_SIZE)).longValue() - 1;
+		if(count.bitLength() < Long.SIZE)
+		{
+			longPartStart = partStart.longValue();
+			longFirstIndex = new long[maxLength + 2];
+			for(int length = 0; length <= maxLength + 1; ++length)
+			{
+				longFirstIndex[length] = firstIndex[length].longValue();
+			}
+		}
+	}
+
+	/**
+	 * Parses search space specification of form <code>alphabet:maxLength</code>, for example "ACGT:15",
+	 * or <code>alphabet:maxLength/part</code> for part of large space, for example "ACGT:40/2".
+	 *
+	 * @param spec - specification
+	 * @return search space
+	 * @throws IllegalArgumentException if specification is invalid
+	 */
+	public static SearchSpace parse(String spec)
+	{
+		int separator = spec.lastIndexOf(':');
+		if(separator <= 0)
+		{
+			throw new IllegalArgumentException("Search space should look like <alphabet>:<maxLength>[/<part>]");
+		}
+		String alphabet = spec.substring(0, separator);
+		for(int i = 0; i < alphabet.length(); ++i)
+		{
+			if(alphabet.charAt(i) > 0x7F)
+			{
+				throw new IllegalArgumentException("Alphabet should contain only ASCII letters");
+			}
+		}
+		String lengthAndPart = spec.substring(separator + 1);
+		int partSeparator = lengthAndPart.indexOf('/');
+		int maxLength = Integer.parseInt(partSeparator < 0 ? lengthAndPart : lengthAndPart.substring(0, partSeparator));
+		BigInteger part = (partSeparator < 0 ? BigInteger.ZERO : new BigInteger(lengthAndPart.substring(partSeparator + 1)));
+		return new SearchSpace(alphabet.getBytes(CommonData.CHARSET), maxLength, part);
+	}
+
+	/**
+	 * @return the next part of the same space or null if this part is the last one
+	 */
+	public SearchSpace getNextPart()
+	{
+		if(partStart.add(BigInteger.valueOf(PART_SIZE)).compareTo(firstIndex[maxLength + 1]) >= 0)
+		{
+			return null;
+		}
+		return new SearchSpace(alphabet, maxLength, part.add(BigInteger.ONE));
+	}
+
+	public byte[] getAlphabet()
+	{
+		return alphabet;
+	}
+
+	public int getMaxLength()
+	{
+		return maxLength;
+	}
+
+	public BigInteger getPart()
+	{
+		return part;
+	}
+
+	/**
+	 * @return index of the last string in part
+	 */
+	public long getMaxIndex()
+	{
+		return maxIndex;
+	}
+
+	/**
+	 * @param length - string length, no more than <code>maxLength + 1</code>
+	 * @return index of the first string of given length; 0 or <code>maxIndex + 1</code>,
+	 * if such strings start before or after this part
+	 */
+	public long getFirstIndex(int length)
+	{
+		BigInteger index = firstIndex[length].subtract(partStart);
+		if(index.signum() < 0)
+		{
+			return 0;
+		}
+		return index.min(BigInteger.valueOf(maxIndex + 1)).longValue();
+	}
+
+	/**
+	 * Writes letter indices of string with given index.
+	 *
+	 * @param index  - string index in part
+	 * @param digits - buffer for letter indices, at least <code>maxLength</code> long
+	 * @return string length
+	 */
+	public int getDigits(long index, byte[] digits)
+	{
+		if(longFirstIndex != null)
+		{
+			long globalIndex = longPartStart + index;
+			int pos = Arrays.binarySearch(longFirstIndex, 0, maxLength + 1, globalIndex);
+			// Not found: insertion point is the first length, that starts after index.
+			int length = (pos >= 0 ? pos : -pos - 2);
+			long offset = globalIndex - longFirstIndex[length];
+			for(int i = length - 1; i >= 0; --i)
+			{
+				digits[i] = (byte) (offset % alphabet.length);
+				offset /= alphabet.length;
+			}
+			return length;
+		}
+
+		BigInteger globalIndex = partStart.add(BigInteger.valueOf(index));
+		int pos = Arrays.binarySearch(firstIndex, 0, maxLength + 1, globalIndex);
+		int length = (pos >= 0 ? pos : -pos - 2);
+		BigInteger offset = globalIndex.subtract(firstIndex[length]);
+		BigInteger alphabetSize = BigInteger.valueOf(alphabet.length);
+		for(int i = length - 1; i >= 0; --i)
+		{
+			BigInteger[] quotientAndRemainder = offset.divideAndRemainder(alphabetSize);
+			digits[i] = (byte) quotientAndRemainder[1].intValue();
+			offset = quotientAndRemainder[0];
+		}
+		return length;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if(!(o instanceof SearchSpace))
+		{
+			return false;
+		}
+		SearchSpace other = (SearchSpace) o;
+		return maxLength == other.maxLength && part.equals(other.part) && Arrays.equals(alphabet, other.alphabet);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return 31 * (31 * Arrays.hashCode(alphabet) + maxLength) + part.hashCode();
+	}
+
+	@Override
+	public String toString()
+	{
+		String spec = new String(alphabet, CommonData.CHARSET) + ":" + maxLength;
+		return (part.signum() == 0 ? spec : spec + "/" + part);
+	}
+}
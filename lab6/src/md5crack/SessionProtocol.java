@@ -0,0 +1,35 @@
+package md5crack;
+
+/**
+ * Frames of long-lived client sessions.
+ * <p>
+ * Every frame starts with one byte of frame type and four bytes
+ * of payload length, followed by payload.
+ * </p>
+ */
+public interface SessionProtocol
+{
+	// Client -> server: client UUID (two longs).
+	byte FRAME_HELLO = 0x01;
+	// Client -> server: empty, asks for one more range.
+	byte FRAME_JOB_REQUEST = 0x02;
+	// Server -> client: range start, range end.
+	// NO_JOB_TO_DO instead of range means, that client should stop.
+	byte FRAME_JOB = 0x03;
+	// Client -> server: range start, range end of checked range.
+	byte FRAME_RESULT = 0x04;
+	// Client -> server: empty, tells that client is still alive.
+	byte FRAME_HEARTBEAT = 0x05;
+	// Server -> client, once after hello: hash count (int), then raw hashes.
+	byte FRAME_HASH_LIST = 0x06;
+	// Client -> server, as soon as found: hash index (int), string index.
+	byte FRAME_FOUND = 0x07;
+	// Server -> client, once after hello before hash list: max string length (int),
+	// alphabet length (int), alphabet letters, then part number (BigInteger bytes, rest of payload).
+	byte FRAME_SEARCH_SPACE = 0x08;
+
+	int FRAME_HEADER_LENGTH = 1 + 4;
+	int MAX_FRAME_PAYLOAD = 1 << 24;
+
+	long HEARTBEAT_PERIOD = 3000;
+}
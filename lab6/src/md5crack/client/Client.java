@@ -1,16 +1,15 @@
 package md5crack.client;
 
-import md5crack.CandidateStringBuilder;
 import md5crack.CommonData;
 import md5crack.Range;
+import md5crack.SearchSpace;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.xml.bind.DatatypeConverter;
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.SocketChannel;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.UUID;
 
 public class Client implements CommonData
@@ -18,50 +17,68 @@ public class Client implements CommonData
 	private static Logger logger = LogManager.getLogger("default_logger");
 
 	private UUID clientID;
-	private MessageDigest digest;
+	private CrackingEngine engine;
 	private InetSocketAddress serverAddress;
+	private boolean useSession;
 
 	private String hashToCrack;
+	private TargetHashSet targets;
 	private Range rangeToCrack;
 	private long crackedStringIdx = HASH_NOT_CRACKED;
 
 	public Client(InetSocketAddress serverAddress)
+	{
+		this(serverAddress, 1);
+	}
+
+	public Client(InetSocketAddress serverAddress, int threadCount)
+	{
+		this(serverAddress, threadCount, false);
+	}
+
+	public Client(InetSocketAddress serverAddress, int threadCount, boolean useSession)
 	{
 		this.serverAddress = serverAddress;
+		this.useSession = useSession;
 		this.clientID = UUID.randomUUID();
-		try
-		{
-			this.digest = MessageDigest.getInstance(HASH_TYPE);
-		}
-		catch(NoSuchAlgorithmException e)
-		{
-			throw new RuntimeException("NO such hash type");
-		}
+		this.engine = new CrackingEngine(clientID.toString(), threadCount);
 	}
 
 	public static void main(String[] args)
 	{
-		if(args.length == 2)
+		if(args.length >= 2 && args.length <= 4)
 		{
 			int port = Integer.parseInt(args[1]);
 			InetSocketAddress address = new InetSocketAddress(args[0], port);
-			Client client = new Client(address);
+			int threadCount = (args.length >= 3 ? Integer.parseInt(args[2]) : 1);
+			boolean useSession = (args.length == 4 && args[3].equals("session"));
+			Client client = new Client(address, threadCount, useSession);
 			client.run();
 		}
 		else
 		{
-			System.out.println("Invalid arguments.");
+			System.out.println("Usage: <serverIP> <serverPort> <(optional)threadCount> <(optional)session>");
 		}
 	}
 
 	public void run()
 	{
-		boolean gotJob = getFirstJob();
-		while(gotJob)
+		if(useSession)
 		{
-			findString();
-			gotJob = reportToServerAndGetNewJob();
+			runSession();
 		}
+		else
+		{
+			boolean gotJob = getFirstJob();
+			while(gotJob)
+			{
+				findString();
+				gotJob = reportToServerAndGetNewJob();
+			}
+		}
+		engine.shutdown();
+		logger.info("Client {}: checked {} candidates in {} ranges.",
+				clientID.toString(), engine.getTotalCandidatesTried(), engine.getTotalRangesChecked());
 		logger.info("Client {}: No job to do. Going down...", clientID.toString());
 	}
 
@@ -79,8 +96,7 @@ public class Client implements CommonData
 				handler.startOver();
 				handler.sendMessage(channel);
 				handler.receiveMessage(channel);
-				rangeToCrack = handler.getRangeToCrack();
-				hashToCrack = handler.getHashToCrack();
+				setJob(handler.getRangeToCrack(), handler.getHashToCrack());
 
 				gotJob = (rangeToCrack != null);
 				gotServersAnswer = true;
@@ -106,6 +122,37 @@ public class Client implements CommonData
 		return gotJob;
 	}
 
+	/**
+	 * Works through long-lived session. Session talks to server on its own thread,
+	 * so cracking never waits for network: the next range is already queued locally.
+	 */
+	private void runSession()
+	{
+		try(ClientSideSession session = new ClientSideSession(serverAddress, clientID))
+		{
+			HitListener listener = session::sendFound;
+			while((rangeToCrack = session.takeJob()) != null)
+			{
+				engine.crack(session.getSearchSpace(), rangeToCrack, session.getTargets(), listener);
+				session.sendResult(rangeToCrack);
+			}
+		}
+		catch(IOException e)
+		{
+			logger.info("Client {}: {}", clientID.toString(), e.getMessage());
+		}
+	}
+
+	private void setJob(Range range, String hash)
+	{
+		rangeToCrack = range;
+		if(!hash.equals(hashToCrack))
+		{
+			hashToCrack = hash;
+			targets = new TargetHashSet(new byte[][]{DatatypeConverter.parseHexBinary(hashToCrack)});
+		}
+	}
+
 	private boolean getFirstJob()
 	{
 		ClientSideSessionHandler handler = new ClientSideSessionHandler(clientID, HASH_NOT_CRACKED);
@@ -120,34 +167,7 @@ public class Client implements CommonData
 
 	private void findString()
 	{
-		CandidateStringBuilder builder = new CandidateStringBuilder(rangeToCrack.start);
-		for(long idx = rangeToCrack.start; idx <= rangeToCrack.end; ++idx)
-		{
-			CandidateStringBuilder.Candidate candidate = builder.getNextCandidate();
-
-			digest.update(candidate.data, 0, candidate.length);
-			byte[] hash = digest.digest();
-			digest.reset();
-
-			String hexHash = DatatypeConverter.printHexBinary(hash);
-
-			if(idx % 100 == 0)
-			{
-				String candidateStr = new String(candidate.data, 0, candidate.length, CHARSET);
-				logger.info("Client {}: Tried string: '{}'", clientID.toString(), candidateStr);
-			}
-
-			if(hexHash.equals(hashToCrack))
-			{
-				crackedStringIdx = candidate.index;
-				String candidateStr = new String(candidate.data, 0, candidate.length, CHARSET);
-				logger.info("Client {}: Answer found: {}", clientID.toString(), candidateStr);
-				break;
-			}
-			else
-			{
-				crackedStringIdx = HASH_NOT_CRACKED;
-			}
-		}
+		crackedStringIdx = HASH_NOT_CRACKED;
+		engine.crack(SearchSpace.DEFAULT, rangeToCrack, targets, (hashIdx, stringIdx) -> crackedStringIdx = stringIdx);
 	}
 }
@@ -0,0 +1,447 @@
+package md5crack.client;
+
+import md5crack.*;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Long-lived session with server, served by its own I/O thread over non-blocking channel.
+ * <p>
+ * I/O thread keeps up to <code>LOCAL_QUEUE_LENGTH</code> ranges received or requested in advance,
+ * so cracking thread takes the next range without waiting for server.
+ * Results are queued by cracking thread and written by I/O thread.
+ * Broken connection is reestablished in background with exponential backoff; ranges,
+ * queued locally at that moment, are dropped, because server gives them out again.
+ * </p>
+ */
+class ClientSideSession implements FrameListener, SessionProtocol, CommonData, Closeable
+{
+	private static Logger logger = LogManager.getLogger("default_logger");
+	// Deque doesn't accept nulls.
+	private static final Range NO_JOB = new Range(NO_JOB_TO_DO, NO_JOB_TO_DO);
+	// Put into queue, when I/O thread stops for any reason, so that cracking threads don't wait forever.
+	private static final Range NO_CONNECTION = new Range(NO_JOB_TO_DO, NO_JOB_TO_DO);
+	private static final int LOCAL_QUEUE_LENGTH = 2;
+	private static final long RECONNECT_MIN_DELAY = 500;
+	private static final long RECONNECT_MAX_DELAY = 8000;
+	// Time for writing results, queued before close.
+	private static final long CLOSE_TIMEOUT = 1000;
+
+	private InetSocketAddress serverAddress;
+	private UUID clientID;
+	private Thread ioThread;
+	private Selector selector;
+	private volatile boolean closed = false;
+
+	// Shared between threads.
+	private volatile SearchSpace searchSpace = null;
+	private volatile TargetHashSet targets = null;
+	private BlockingQueue<Range> receivedJobs = new LinkedBlockingQueue<>();
+	private Queue<Range> resultsToSend = new ConcurrentLinkedQueue<>();
+	private Queue<long[]> foundToSend = new ConcurrentLinkedQueue<>();
+
+	// Accessed only by I/O thread.
+	private FramedConnection connection = null;
+	private SelectionKey key = null;
+	private boolean connected = false;
+	private int requestedJobs = 0;
+	private boolean noMoreJobs = false;
+	private int failedAttempts = 0;
+	private long nextConnectTime = 0;
+	private long nextHeartbeatTime = 0;
+
+	public ClientSideSession(InetSocketAddress serverAddress, UUID clientID) throws IOException
+	{
+		this.serverAddress = serverAddress;
+		this.clientID = clientID;
+		this.selector = Selector.open();
+		this.ioThread = new Thread(this::runIoLoop, clientID.toString() + "-io");
+		this.ioThread.setDaemon(true);
+		this.ioThread.start();
+	}
+
+	/**
+	 * Waits for the next job.
+	 *
+	 * @return range to check or null if there is no job to do
+	 * @throws IOException if connection to server couldn't be reestablished
+	 */
+	public Range takeJob() throws IOException
+	{
+		Range job;
+		try
+		{
+			job = receivedJobs.take();
+		}
+		catch(InterruptedException e)
+		{
+			throw new IOException("Interrupted while waiting for job", e);
+		}
+		if(job == NO_CONNECTION)
+		{
+			// Let other callers see it too.
+			receivedJobs.add(NO_CONNECTION);
+			throw new IOException("Couldn't connect to server " + serverAddress);
+		}
+		// Local queue has free place now.
+		selector.wakeup();
+		return (job == NO_JOB ? null : job);
+	}
+
+	public void sendResult(Range range)
+	{
+		resultsToSend.add(range);
+		selector.wakeup();
+	}
+
+	public void sendFound(int hashIdx, long stringIdx)
+	{
+		foundToSend.add(new long[]{hashIdx, stringIdx});
+		selector.wakeup();
+	}
+
+	/**
+	 * @return search space, received from server, or null if it hasn't been received yet
+	 */
+	public SearchSpace getSearchSpace()
+	{
+		return searchSpace;
+	}
+
+	/**
+	 * @return hashes to crack, received from server, or null if they haven't been received yet
+	 */
+	public TargetHashSet getTargets()
+	{
+		return targets;
+	}
+
+	/**
+	 * Writes queued results and stops I/O thread.
+	 */
+	@Override
+	public void close()
+	{
+		closed = true;
+		selector.wakeup();
+		try
+		{
+			ioThread.join(CLOSE_TIMEOUT);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void frameReceived(byte type, ByteBuffer payload) throws IOException
+	{
+		switch(type)
+		{
+			case FRAME_SEARCH_SPACE:
+				checkPayloadLength(type, payload, 2 * SIZEOF_INT, true);
+				int maxLength = payload.getInt();
+				int alphabetLength = payload.getInt();
+				if(alphabetLength < 0 || alphabetLength >= payload.remaining())
+				{
+					throw new IOException("Invalid alphabet length " + alphabetLength);
+				}
+				byte[] alphabet = new byte[alphabetLength];
+				payload.get(alphabet);
+				byte[] part = new byte[payload.remaining()];
+				payload.get(part);
+				try
+				{
+					searchSpace = new SearchSpace(alphabet, maxLength, new BigInteger(part));
+				}
+				catch(IllegalArgumentException e)
+				{
+					throw new IOException("Invalid search space: " + e.getMessage());
+				}
+				break;
+			case FRAME_HASH_LIST:
+				checkPayloadLength(type, payload, SIZEOF_INT, true);
+				int hashCount = payload.getInt();
+				if(hashCount <= 0 || hashCount != payload.remaining() / DIGEST_LENGTH ||
+				   payload.remaining() % DIGEST_LENGTH != 0)
+				{
+					throw new IOException("Invalid hash count " + hashCount);
+				}
+				byte[][] hashes = new byte[hashCount][DIGEST_LENGTH];
+				for(byte[] hash : hashes)
+				{
+					payload.get(hash);
+				}
+				targets = new TargetHashSet(hashes);
+				break;
+			case FRAME_JOB:
+				if(searchSpace == null || targets == null)
+				{
+					throw new IOException("Job was received before search space and hash list");
+				}
+				checkPayloadLength(type, payload, 2 * SIZEOF_LONG, false);
+				long start = payload.getLong();
+				long end = payload.getLong();
+				--requestedJobs;
+				if(start == NO_JOB_TO_DO || end == NO_JOB_TO_DO)
+				{
+					noMoreJobs = true;
+					receivedJobs.add(NO_JOB);
+				}
+				else
+				{
+					if(start < 0 || start > end || end > searchSpace.getMaxIndex())
+					{
+						throw new IOException("Job from " + start + " to " + end + " is out of search space");
+					}
+					receivedJobs.add(new Range(start, end));
+				}
+				break;
+			default:
+				throw new IOException("Unexpected frame type " + type);
+		}
+		// Server answers, so the next failure starts backoff from the beginning.
+		failedAttempts = 0;
+	}
+
+	/**
+	 * @param type         - frame type
+	 * @param payload      - frame payload
+	 * @param length       - expected length
+	 * @param allowsLonger - true if payload may be longer, then <code>length</code> is the minimal length
+	 * @throws IOException if payload length is wrong
+	 */
+	private static void checkPayloadLength(byte type, ByteBuffer payload, int length, boolean allowsLonger)
+			throws IOException
+	{
+		if(payload.remaining() < length || (!allowsLonger && payload.remaining() != length))
+		{
+			throw new IOException("Invalid payload length " + payload.remaining() + " of frame type " + type);
+		}
+	}
+
+	private void runIoLoop()
+	{
+		long closeDeadline = 0;
+		try
+		{
+			while(true)
+			{
+				long now = System.currentTimeMillis();
+				if(closed)
+				{
+					if(closeDeadline == 0)
+					{
+						closeDeadline = now + CLOSE_TIMEOUT;
+					}
+					if(!connected || now >= closeDeadline || !hasOutput())
+					{
+						break;
+					}
+				}
+
+				if(key == null && !closed && now >= nextConnectTime)
+				{
+					startConnecting();
+				}
+
+				selector.select(getSelectTimeout(now));
+				now = System.currentTimeMillis();
+				try
+				{
+					if(key != null && key.isValid())
+					{
+						if(key.isConnectable())
+						{
+							finishConnecting(now);
+						}
+						if(connected && key.isReadable() && !connection.receive(this))
+						{
+							throw new IOException("Session closed by server");
+						}
+					}
+					selector.selectedKeys().clear();
+					if(connected)
+					{
+						writeQueued(now);
+					}
+				}
+				catch(IOException e)
+				{
+					if(!connectionFailed(e, now))
+					{
+						break;
+					}
+				}
+			}
+		}
+		catch(IOException | RuntimeException e)
+		{
+			logger.info("Client {}: I/O thread failed: {}", clientID.toString(), e.toString());
+		}
+		finally
+		{
+			receivedJobs.add(NO_CONNECTION);
+			closeConnection();
+			try
+			{
+				selector.close();
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void startConnecting() throws IOException
+	{
+		logger.info("Client {}: starting session with server {}.", clientID.toString(), serverAddress.toString());
+		SocketChannel channel = SocketChannel.open();
+		channel.configureBlocking(false);
+		connection = new FramedConnection(channel);
+		key = channel.register(selector, SelectionKey.OP_CONNECT);
+		try
+		{
+			if(channel.connect(serverAddress))
+			{
+				finishConnecting(System.currentTimeMillis());
+			}
+		}
+		catch(IOException e)
+		{
+			if(!connectionFailed(e, System.currentTimeMillis()))
+			{
+				// I/O loop stops and reports no connection.
+				closed = true;
+			}
+		}
+	}
+
+	private void finishConnecting(long now) throws IOException
+	{
+		if(connected || !connection.getChannel().finishConnect())
+		{
+			return;
+		}
+		connected = true;
+		key.interestOps(SelectionKey.OP_READ);
+
+		// Server takes back all ranges of previous connection.
+		receivedJobs.removeIf(job -> job != NO_JOB);
+		requestedJobs = 0;
+
+		ByteBuffer payload = connection.startFrame(FRAME_HELLO, 2 * SIZEOF_LONG);
+		payload.putLong(clientID.getMostSignificantBits());
+		payload.putLong(clientID.getLeastSignificantBits());
+		nextHeartbeatTime = now + HEARTBEAT_PERIOD;
+	}
+
+	/**
+	 * Moves queued results into connection, requests ranges for local queue and flushes.
+	 */
+	private void writeQueued(long now) throws IOException
+	{
+		long[] found;
+		while((found = foundToSend.poll()) != null)
+		{
+			ByteBuffer payload = connection.startFrame(FRAME_FOUND, SIZEOF_INT + SIZEOF_LONG);
+			payload.putInt((int) found[0]);
+			payload.putLong(found[1]);
+		}
+		Range result;
+		while((result = resultsToSend.poll()) != null)
+		{
+			ByteBuffer payload = connection.startFrame(FRAME_RESULT, 2 * SIZEOF_LONG);
+			payload.putLong(result.start);
+			payload.putLong(result.end);
+		}
+		while(!noMoreJobs && !closed && receivedJobs.size() + requestedJobs < LOCAL_QUEUE_LENGTH)
+		{
+			connection.startFrame(FRAME_JOB_REQUEST, 0);
+			++requestedJobs;
+		}
+		if(now >= nextHeartbeatTime)
+		{
+			connection.startFrame(FRAME_HEARTBEAT, 0);
+			nextHeartbeatTime = now + HEARTBEAT_PERIOD;
+		}
+
+		boolean flushed = connection.flush();
+		key.interestOps(flushed ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+	}
+
+	/**
+	 * Closes broken connection and schedules the next attempt.
+	 *
+	 * @return false if there are no attempts left
+	 */
+	private boolean connectionFailed(IOException e, long now)
+	{
+		closeConnection();
+		++failedAttempts;
+		if(failedAttempts > CLIENT_RECONNECT_MAX || closed)
+		{
+			logger.info("Client {}: couldn't connect to server {}.", clientID.toString(), serverAddress.toString());
+			return false;
+		}
+		long delay = Math.min(RECONNECT_MIN_DELAY << (failedAttempts - 1), RECONNECT_MAX_DELAY);
+		nextConnectTime = now + delay;
+		logger.info("Client {}: session failed ({}). Will try again in {} milliseconds.",
+				clientID.toString(), e.getMessage(), delay);
+		return true;
+	}
+
+	private void closeConnection()
+	{
+		if(key != null)
+		{
+			key.cancel();
+			key = null;
+		}
+		if(connection != null)
+		{
+			try
+			{
+				connection.close();
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+			connection = null;
+		}
+		connected = false;
+	}
+
+	private boolean hasOutput()
+	{
+		return !resultsToSend.isEmpty() || !foundToSend.isEmpty() || connection.hasPendingOutput();
+	}
+
+	private long getSelectTimeout(long now)
+	{
+		long wakeupTime = (key == null ? nextConnectTime : nextHeartbeatTime);
+		if(closed)
+		{
+			wakeupTime = Math.min(wakeupTime, now + CLOSE_TIMEOUT);
+		}
+		// Zero means infinite timeout for select.
+		return Math.max(wakeupTime - now, 1L);
+	}
+}
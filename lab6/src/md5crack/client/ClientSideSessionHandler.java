@@ -62,5 +62,6 @@ public class ClientSideSessionHandler extends SessionHandler
 		{
 			rangeToCrack = new Range(start, end);
 		}
+		setFullyReceived(true);
 	}
 }
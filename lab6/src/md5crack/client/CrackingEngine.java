@@ -0,0 +1,181 @@
+package md5crack.client;
+
+import md5crack.CommonData;
+import md5crack.Range;
+import md5crack.SearchSpace;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Splits range, received from server, into equal sub-ranges
+ * and checks them simultaneously on fixed pool of workers.
+ */
+class CrackingEngine implements CommonData
+{
+	private static Logger logger = LogManager.getLogger("default_logger");
+
+	private final String clientName;
+	private final CrackingWorker[] workers;
+	private final ExecutorService executor;
+	// Totals since start, updated only by thread, that calls crack.
+	private long totalCandidatesTried = 0;
+	private long totalRangesChecked = 0;
+
+	public CrackingEngine(String clientName, int threadCount)
+	{
+		if(threadCount < 1)
+		{
+			throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+		}
+		this.clientName = clientName;
+		this.workers = new CrackingWorker[threadCount];
+		for(int i = 0; i < threadCount; ++i)
+		{
+			workers[i] = new CrackingWorker(clientName);
+		}
+		// Single worker runs on caller's thread, no pool needed.
+		this.executor = (threadCount == 1 ? null : Executors.newFixedThreadPool(threadCount, runnable ->
+		{
+			Thread thread = new Thread(runnable, clientName + "-worker");
+			thread.setDaemon(true);
+			return thread;
+		}));
+	}
+
+	public int getThreadCount()
+	{
+		return workers.length;
+	}
+
+	/**
+	 * Checks all strings from <code>range</code>.
+	 * For single target the first found answer cancels all other workers.
+	 *
+	 * @param space    - search space, that indices belong to
+	 * @param range    - range of string indices to try, both ends inclusive
+	 * @param targets  - hashes to crack
+	 * @param listener - listener for found strings, called from worker threads
+	 */
+	public void crack(SearchSpace space, Range range, TargetHashSet targets, HitListener listener)
+	{
+		AtomicBoolean cancelled = new AtomicBoolean(false);
+		long startTime = System.nanoTime();
+		// Candidates and time of every worker, so that imbalance between workers is seen.
+		long[] workerCandidates = new long[workers.length];
+		long[] workerNanos = new long[workers.length];
+		int workerCount = 1;
+
+		if(executor == null)
+		{
+			workerCandidates[0] = workers[0].crack(space, range, targets, listener, cancelled);
+			workerNanos[0] = System.nanoTime() - startTime;
+		}
+		else
+		{
+			List<Callable<Long>> tasks = new ArrayList<>(workers.length);
+			long rangeLength = range.getLength();
+			long partLength = (rangeLength + workers.length - 1) / workers.length;
+			for(int i = 0; i < workers.length; ++i)
+			{
+				long partStart = range.start + i * partLength;
+				if(partStart > range.end)
+				{
+					break;
+				}
+				Range part = new Range(partStart, Math.min(partStart + partLength - 1, range.end));
+				CrackingWorker worker = workers[i];
+				int workerIdx = i;
+				tasks.add(() ->
+				{
+					long workerStart = System.nanoTime();
+					long tried = worker.crack(space, part, targets, listener, cancelled);
+					workerNanos[workerIdx] = System.nanoTime() - workerStart;
+					return tried;
+				});
+			}
+			workerCount = tasks.size();
+
+			try
+			{
+				// Completed futures publish values, written by their tasks.
+				List<Future<Long>> results = executor.invokeAll(tasks);
+				for(int i = 0; i < workerCount; ++i)
+				{
+					workerCandidates[i] = results.get(i).get();
+				}
+			}
+			catch(InterruptedException | ExecutionException e)
+			{
+				throw new RuntimeException("Cracking was interrupted", e);
+			}
+		}
+
+		reportRate(workerCandidates, workerNanos, workerCount, System.nanoTime() - startTime);
+	}
+
+	public void shutdown()
+	{
+		if(executor != null)
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	public long getTotalCandidatesTried()
+	{
+		return totalCandidatesTried;
+	}
+
+	public long getTotalRangesChecked()
+	{
+		return totalRangesChecked;
+	}
+
+	/**
+	 * Logs total rate and rate of every worker, that took part in the last range.
+	 *
+	 * @param workerCandidates - candidates, tried by every worker
+	 * @param workerNanos      - time of every worker
+	 * @param workerCount      - count of workers, that took part
+	 * @param elapsedNanos     - time of the whole range
+	 */
+	private void reportRate(long[] workerCandidates, long[] workerNanos, int workerCount, long elapsedNanos)
+	{
+		long candidatesTried = 0;
+		long[] workerRates = new long[workerCount];
+		long minRate = Long.MAX_VALUE;
+		long maxRate = 0;
+		for(int i = 0; i < workerCount; ++i)
+		{
+			candidatesTried += workerCandidates[i];
+			workerRates[i] = getRate(workerCandidates[i], workerNanos[i]);
+			minRate = Math.min(minRate, workerRates[i]);
+			maxRate = Math.max(maxRate, workerRates[i]);
+		}
+		totalCandidatesTried += candidatesTried;
+		++totalRangesChecked;
+		logger.info("Client {}: tried {} candidates in {} ms: {} candidates/sec; per thread min {}, max {} candidates/sec " +
+		            "{} ({} threads); {} candidates in {} ranges in total",
+				clientName,
+				candidatesTried,
+				elapsedNanos / 1000000,
+				getRate(candidatesTried, elapsedNanos),
+				minRate,
+				maxRate,
+				Arrays.toString(workerRates),
+				workerCount,
+				totalCandidatesTried,
+				totalRangesChecked);
+	}
+
+	private static long getRate(long candidates, long elapsedNanos)
+	{
+		return (long) (candidates / (Math.max(elapsedNanos, 1L) / 1e9));
+	}
+}
@@ -0,0 +1,90 @@
+package md5crack.client;
+
+import md5crack.CandidateStringBuilder;
+import md5crack.CommonData;
+import md5crack.Md5Kernel;
+import md5crack.Range;
+import md5crack.SearchSpace;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks candidates from one sub-range on a single thread.
+ * Every worker owns its MD5 kernel, so workers never share hashing state.
+ */
+class CrackingWorker implements CommonData
+{
+	private static Logger logger = LogManager.getLogger("default_logger");
+	private static final long CANCEL_CHECK_MASK = 0x3FF;
+
+	private String clientName;
+	private Md5Kernel kernel = new Md5Kernel();
+	private byte[] hash = new byte[DIGEST_LENGTH];
+
+	public CrackingWorker(String clientName)
+	{
+		this.clientName = clientName;
+	}
+
+	/**
+	 * Tries all strings from <code>range</code> until <code>cancelled</code> is set.
+	 * <p>
+	 * Single target is compared by MD5 kernel with early stop, and the first hit sets <code>cancelled</code>.
+	 * For several targets every full hash is looked up in the set, and the pass goes on after hits.
+	 * </p>
+	 *
+	 * @param space     - search space, that indices belong to
+	 * @param range     - range of string indices to try, both ends inclusive
+	 * @param targets   - hashes to crack
+	 * @param listener  - listener for found strings
+	 * @param cancelled - flag, shared between workers
+	 * @return count of tried candidates
+	 */
+	public long crack(SearchSpace space, Range range, TargetHashSet targets, HitListener listener, AtomicBoolean cancelled)
+	{
+		boolean singleTarget = (targets.size() == 1);
+		if(singleTarget)
+		{
+			kernel.setTarget(targets.get(0));
+		}
+
+		CandidateStringBuilder builder = new CandidateStringBuilder(space, range.start);
+		long idx = range.start;
+		for(; idx <= range.end; ++idx)
+		{
+			if((idx & CANCEL_CHECK_MASK) == 0 && cancelled.get())
+			{
+				break;
+			}
+
+			CandidateStringBuilder.Candidate candidate = builder.getNextCandidate();
+
+			int hashIdx;
+			if(singleTarget)
+			{
+				hashIdx = (kernel.matches(candidate.data, candidate.length) ? 0 : -1);
+			}
+			else
+			{
+				kernel.digest(candidate.data, candidate.length, hash, 0);
+				hashIdx = targets.find(hash);
+			}
+
+			if(hashIdx != -1)
+			{
+				String candidateStr = new String(candidate.data, 0, candidate.length, CHARSET);
+				logger.info("Client {}: Answer for hash #{} found: {}", clientName, hashIdx, candidateStr);
+				listener.hashCracked(hashIdx, candidate.index);
+				if(singleTarget)
+				{
+					cancelled.set(true);
+					++idx;
+					break;
+				}
+			}
+		}
+		return idx - range.start;
+	}
+}
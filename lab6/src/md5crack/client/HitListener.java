@@ -0,0 +1,12 @@
+package md5crack.client;
+
+interface HitListener
+{
+	/**
+	 * Called from worker thread for every found string.
+	 *
+	 * @param hashIdx   - index of cracked hash in target set
+	 * @param stringIdx - index of string with this hash
+	 */
+	void hashCracked(int hashIdx, long stringIdx);
+}
@@ -0,0 +1,358 @@
+package md5crack.client;
+
+import md5crack.CommonData;
+import md5crack.Range;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Load generator for server: simulates many one-shot clients without hashing anything.
+ * <p>
+ * Every simulated worker connects to server like <code>Client</code> does, gets range,
+ * "checks" it by sleeping for given time and reports back. With given probability worker fails
+ * instead of reporting: it goes silent with its range, and after a while it is started again as new client.
+ * All workers are served by one thread with one selector, so thousands of them don't need thousands of threads.
+ * </p>
+ * <p>
+ * At the end it prints latency of assignments (from connecting to receiving range), assignments per second,
+ * and checks received ranges: indices, that were given out but are neither reported, nor held by live worker,
+ * nor held by recently failed one, are lost; indices, given to several live workers, are duplicated.
+ * Near the end of search space server gives out copies on purpose, so duplicates are expected only then.
+ * </p>
+ */
+public class LoadGenerator implements CommonData
+{
+	private static final int DEFAULT_WORKERS = 1000;
+	private static final long DEFAULT_RANGE_TIME = 3000;
+	private static final double DEFAULT_FAILURE_PROBABILITY = 0.01;
+	private static final long DEFAULT_DURATION = 60;
+	// Failed worker is started again as new client after this delay.
+	private static final long RESTART_DELAY = 1000;
+	// Server takes back ranges of silent client after its job timeout; until then they are pending, not lost.
+	private static final long REASSIGN_GRACE = 12000;
+
+	private InetSocketAddress serverAddress;
+	private long rangeTime;
+	private double failureProbability;
+	private Random random = new Random();
+	private Selector selector;
+	private PriorityQueue<SimulatedWorker> sleepingWorkers =
+			new PriorityQueue<>(Comparator.comparingLong((SimulatedWorker worker) -> worker.wakeTime));
+
+	// Statistics.
+	private List<Long> latencies = new ArrayList<>();
+	private List<Range> reportedRanges = new ArrayList<>();
+	private List<Range> failedRanges = new ArrayList<>();
+	private List<Long> failureTimes = new ArrayList<>();
+	private Set<SimulatedWorker> liveWorkers = new HashSet<>();
+	private long connectionErrors = 0;
+	private long failures = 0;
+	private int finishedWorkers = 0;
+
+	private static class SimulatedWorker
+	{
+		UUID clientID = UUID.randomUUID();
+		Range range = null;
+		ClientSideSessionHandler handler = null;
+		long requestTime = 0;
+		long wakeTime = 0;
+	}
+
+	public LoadGenerator(InetSocketAddress serverAddress, long rangeTime, double failureProbability)
+	{
+		this.serverAddress = serverAddress;
+		this.rangeTime = rangeTime;
+		this.failureProbability = failureProbability;
+	}
+
+	public static void main(String[] args)
+	{
+		if(args.length < 2 || args.length > 6)
+		{
+			System.out.println("Usage: <serverIP> <serverPort> <(optional)workerCount> <(optional)rangeTimeMillis>" +
+			                   " <(optional)failureProbability> <(optional)durationSeconds>");
+			return;
+		}
+		InetSocketAddress address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+		int workerCount = (args.length >= 3 ? Integer.parseInt(args[2]) : DEFAULT_WORKERS);
+		long rangeTime = (args.length >= 4 ? Long.parseLong(args[3]) : DEFAULT_RANGE_TIME);
+		double failureProbability = (args.length >= 5 ? Double.parseDouble(args[4]) : DEFAULT_FAILURE_PROBABILITY);
+		long duration = (args.length == 6 ? Long.parseLong(args[5]) : DEFAULT_DURATION);
+
+		LoadGenerator generator = new LoadGenerator(address, rangeTime, failureProbability);
+		try
+		{
+			generator.run(workerCount, duration * 1000);
+		}
+		catch(IOException e)
+		{
+			System.out.println("Load generator failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Runs workers and prints report.
+	 *
+	 * @param workerCount - count of simultaneously working clients
+	 * @param duration    - duration in milliseconds
+	 * @throws IOException if selector couldn't be opened
+	 */
+	public void run(int workerCount, long duration) throws IOException
+	{
+		long startTime = System.currentTimeMillis();
+		long endTime = startTime + duration;
+		try(Selector selector = Selector.open())
+		{
+			this.selector = selector;
+			for(int i = 0; i < workerCount; ++i)
+			{
+				// Workers start evenly during the first range time, so they don't come in lockstep.
+				SimulatedWorker worker = new SimulatedWorker();
+				worker.wakeTime = startTime + rangeTime * i / workerCount;
+				sleepingWorkers.add(worker);
+				liveWorkers.add(worker);
+			}
+
+			long now = startTime;
+			while(now < endTime && finishedWorkers < workerCount)
+			{
+				SimulatedWorker next = sleepingWorkers.peek();
+				long timeout = Math.min(endTime, (next == null ? endTime : next.wakeTime)) - now;
+				selector.select(Math.max(timeout, 1L));
+				now = System.currentTimeMillis();
+				for(SelectionKey key : selector.selectedKeys())
+				{
+					serve(key, now);
+				}
+				selector.selectedKeys().clear();
+				while(!sleepingWorkers.isEmpty() && sleepingWorkers.peek().wakeTime <= now)
+				{
+					wakeUp(sleepingWorkers.poll(), now);
+				}
+			}
+			for(SelectionKey key : selector.keys())
+			{
+				key.channel().close();
+			}
+			printReport(workerCount, System.currentTimeMillis() - startTime);
+		}
+	}
+
+	/**
+	 * Worker has "checked" its range: it either fails or asks server for the next one.
+	 */
+	private void wakeUp(SimulatedWorker worker, long now)
+	{
+		if(worker.range != null && random.nextDouble() < failureProbability)
+		{
+			++failures;
+			failedRanges.add(worker.range);
+			failureTimes.add(now);
+			liveWorkers.remove(worker);
+
+			SimulatedWorker restarted = new SimulatedWorker();
+			restarted.wakeTime = now + RESTART_DELAY;
+			sleepingWorkers.add(restarted);
+			liveWorkers.add(restarted);
+			return;
+		}
+
+		worker.handler = new ClientSideSessionHandler(worker.clientID, HASH_NOT_CRACKED);
+		worker.requestTime = now;
+		try
+		{
+			SocketChannel channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_CONNECT, worker);
+			if(channel.connect(serverAddress))
+			{
+				key.interestOps(SelectionKey.OP_WRITE);
+			}
+		}
+		catch(IOException e)
+		{
+			requestFailed(worker, null, now);
+		}
+	}
+
+	private void serve(SelectionKey key, long now)
+	{
+		SimulatedWorker worker = (SimulatedWorker) key.attachment();
+		SocketChannel channel = (SocketChannel) key.channel();
+		try
+		{
+			if(key.isConnectable())
+			{
+				channel.finishConnect();
+				key.interestOps(SelectionKey.OP_WRITE);
+			}
+			else if(key.isWritable())
+			{
+				worker.handler.sendMessage(channel);
+				if(worker.handler.hasFullySent())
+				{
+					key.interestOps(SelectionKey.OP_READ);
+				}
+			}
+			else if(key.isReadable())
+			{
+				worker.handler.receiveMessage(channel);
+				if(worker.handler.hasFullyReceived())
+				{
+					channel.close();
+					jobReceived(worker, now);
+				}
+			}
+		}
+		catch(Exception e)
+		{
+			requestFailed(worker, channel, now);
+		}
+	}
+
+	private void jobReceived(SimulatedWorker worker, long now)
+	{
+		latencies.add(now - worker.requestTime);
+		if(worker.range != null)
+		{
+			// Server completes previous range of client, when client comes for the next one.
+			reportedRanges.add(worker.range);
+		}
+		worker.range = worker.handler.getRangeToCrack();
+		worker.handler = null;
+		if(worker.range == null)
+		{
+			++finishedWorkers;
+			liveWorkers.remove(worker);
+			return;
+		}
+		worker.wakeTime = now + (long) (rangeTime * (0.9 + 0.2 * random.nextDouble()));
+		sleepingWorkers.add(worker);
+	}
+
+	private void requestFailed(SimulatedWorker worker, SocketChannel channel, long now)
+	{
+		++connectionErrors;
+		if(channel != null)
+		{
+			try
+			{
+				channel.close();
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		// Worker keeps its range and tries again, like Client does.
+		worker.handler = null;
+		worker.wakeTime = now + CLIENT_RECONNECT_PERIOD;
+		sleepingWorkers.add(worker);
+	}
+
+	private void printReport(int workerCount, long elapsed)
+	{
+		long now = System.currentTimeMillis();
+		List<Range> held = new ArrayList<>();
+		for(SimulatedWorker worker : liveWorkers)
+		{
+			if(worker.range != null)
+			{
+				held.add(worker.range);
+			}
+		}
+		List<Range> pending = new ArrayList<>();
+		for(int i = 0; i < failedRanges.size(); ++i)
+		{
+			if(now - failureTimes.get(i) < REASSIGN_GRACE)
+			{
+				pending.add(failedRanges.get(i));
+			}
+		}
+
+		List<Range> live = new ArrayList<>(reportedRanges);
+		live.addAll(held);
+		long duplicated = getOverlapLength(live);
+		List<Range> all = new ArrayList<>(live);
+		all.addAll(failedRanges);
+		List<Range> accounted = new ArrayList<>(live);
+		accounted.addAll(pending);
+		long lost = getUnionLength(all) - getUnionLength(accounted);
+
+		long[] sorted = new long[latencies.size()];
+		for(int i = 0; i < sorted.length; ++i)
+		{
+			sorted[i] = latencies.get(i);
+		}
+		Arrays.sort(sorted);
+
+		System.out.println("Workers: " + workerCount + ", range time: " + rangeTime + " ms, failure probability: " +
+		                   failureProbability + ", elapsed: " + elapsed + " ms");
+		System.out.println(String.format("Assignments: %d (%.1f/sec)", sorted.length, sorted.length * 1000.0 / elapsed));
+		System.out.println("Assignment latency, ms: p50 " + getPercentile(sorted, 50) +
+		                   ", p90 " + getPercentile(sorted, 90) +
+		                   ", p99 " + getPercentile(sorted, 99) +
+		                   ", p99.9 " + getPercentile(sorted, 99.9) +
+		                   ", max " + getPercentile(sorted, 100));
+		System.out.println("Failures: " + failures + ", connection errors: " + connectionErrors);
+		System.out.println("Strings reported: " + getUnionLength(reportedRanges) + ", held: " + getUnionLength(held) +
+		                   ", pending reassignment: " + getUnionLength(pending));
+		System.out.println("Strings lost: " + lost + ", duplicated: " + duplicated);
+	}
+
+	private static long getPercentile(long[] sorted, double percentile)
+	{
+		if(sorted.length == 0)
+		{
+			return 0;
+		}
+		int idx = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(idx, sorted.length - 1))];
+	}
+
+	/**
+	 * @return count of indices, that are in at least one of ranges
+	 */
+	private static long getUnionLength(List<Range> ranges)
+	{
+		List<Range> sorted = new ArrayList<>(ranges);
+		sorted.sort(Comparator.comparingLong((Range range) -> range.start));
+		long length = 0;
+		long coveredEnd = -1;
+		for(Range range : sorted)
+		{
+			if(range.end > coveredEnd)
+			{
+				length += range.end - Math.max(range.start, coveredEnd + 1) + 1;
+				coveredEnd = range.end;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * @return count of indices, that are in more than one of ranges
+	 */
+	private static long getOverlapLength(List<Range> ranges)
+	{
+		long totalLength = 0;
+		for(Range range : ranges)
+		{
+			totalLength += range.getLength();
+		}
+		return totalLength - getUnionLength(ranges);
+	}
+}
@@ -0,0 +1,108 @@
+package md5crack.client;
+
+import md5crack.CommonData;
+
+/**
+ * Set of hashes to crack, searchable without allocation.
+ * Open addressing table is keyed by the first 8 bytes of hash,
+ * full hash is compared only when keys are equal.
+ */
+class TargetHashSet implements CommonData
+{
+	private static final int EMPTY = -1;
+
+	private byte[][] hashes;
+	private long[] keys;
+	private int[] hashIndices;
+	private int mask;
+
+	/**
+	 * @param hashes - raw hashes; position in array is hash index
+	 */
+	public TargetHashSet(byte[][] hashes)
+	{
+		this.hashes = hashes;
+
+		// Keep load factor no more than 0.5.
+		int capacity = Integer.highestOneBit(Math.max(hashes.length, 1) * 2) * 2;
+		keys = new long[capacity];
+		hashIndices = new int[capacity];
+		mask = capacity - 1;
+		for(int i = 0; i < capacity; ++i)
+		{
+			hashIndices[i] = EMPTY;
+		}
+
+		for(int i = 0; i < hashes.length; ++i)
+		{
+			long key = getKey(hashes[i]);
+			int slot = getSlot(key);
+			while(hashIndices[slot] != EMPTY)
+			{
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			hashIndices[slot] = i;
+		}
+	}
+
+	public int size()
+	{
+		return hashes.length;
+	}
+
+	public byte[] get(int hashIdx)
+	{
+		return hashes[hashIdx];
+	}
+
+	/**
+	 * Looks for hash in set.
+	 *
+	 * @param hash - raw hash
+	 * @return hash index or -1 if there is no such hash in set
+	 */
+	public int find(byte[] hash)
+	{
+		long key = getKey(hash);
+		int slot = getSlot(key);
+		int hashIdx;
+		while((hashIdx = hashIndices[slot]) != EMPTY)
+		{
+			if(keys[slot] == key && equalTail(hashes[hashIdx], hash))
+			{
+				return hashIdx;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return EMPTY;
+	}
+
+	private int getSlot(long key)
+	{
+		// Hashes are uniformly distributed already, just mix higher bits in.
+		return (int) (key ^ (key >>> 32)) & mask;
+	}
+
+	private static long getKey(byte[] hash)
+	{
+		long key = 0;
+		for(int i = 0; i < SIZEOF_LONG; ++i)
+		{
+			key = (key << 8) | (hash[i] & 0xFF);
+		}
+		return key;
+	}
+
+	private static boolean equalTail(byte[] a, byte[] b)
+	{
+		for(int i = SIZEOF_LONG; i < DIGEST_LENGTH; ++i)
+		{
+			if(a[i] != b[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,252 @@
+package md5crack.server;
+
+import md5crack.Range;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stores ranges, that are not checked yet, and answers, that are found already, into file.
+ * <p>
+ * Every checkpoint is a full snapshot: hashes to crack, list of ranges and list of cracked hashes.
+ * Answer is kept as index of string, that is enough with search space, which is part of hashes to crack.
+ * It is written by separate thread into temporary file, which is synced to disk
+ * and then atomically replaces previous checkpoint, so a crash leaves either old or new checkpoint.
+ * </p>
+ */
+class Checkpoint
+{
+	private static Logger logger = LogManager.getLogger("default_logger");
+	// Files of older format without cracked hashes aren't recognized.
+	private static final int MAGIC = 0x4D443544;
+	// Record of range or cracked hash takes at least this many bytes.
+	private static final int MIN_RECORD_SIZE = 12;
+
+	private Path file;
+	private Path tmpFile;
+	private ExecutorService writer = Executors.newSingleThreadExecutor(runnable ->
+	{
+		Thread thread = new Thread(runnable, "checkpoint-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private AtomicBoolean isWriting = new AtomicBoolean(false);
+	// Cleared after the first failure, when platform doesn't allow to sync directories.
+	private volatile boolean canSyncDirectory = true;
+
+	public Checkpoint(Path file)
+	{
+		this.file = file;
+		this.tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+	}
+
+	/**
+	 * State, restored from checkpoint.
+	 */
+	public static class State
+	{
+		public List<Range> ranges;
+		// Hash indices and string indices of answers, one after another.
+		public long[] crackedHashes;
+
+		public State(List<Range> ranges, long[] crackedHashes)
+		{
+			this.ranges = ranges;
+			this.crackedHashes = crackedHashes;
+		}
+	}
+
+	/**
+	 * Reads ranges and cracked hashes from checkpoint file.
+	 *
+	 * @param hashToCrack - hashes, which checkpoint should belong to, one after another
+	 * @param maxIndex    - index of the last string in search space
+	 * @return state or null if there is no valid checkpoint for this hash
+	 */
+	public State load(byte[] hashToCrack, long maxIndex)
+	{
+		if(!Files.exists(file))
+		{
+			return null;
+		}
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+		{
+			long fileSize = Files.size(file);
+			if(in.readInt() != MAGIC)
+			{
+				logger.info("Checkpoint: {} is not a checkpoint file", file.toString());
+				return null;
+			}
+			int hashLength = in.readInt();
+			if(hashLength != hashToCrack.length)
+			{
+				logger.info("Checkpoint: {} belongs to another hash", file.toString());
+				return null;
+			}
+			byte[] hash = new byte[hashLength];
+			in.readFully(hash);
+			if(!Arrays.equals(hash, hashToCrack))
+			{
+				logger.info("Checkpoint: {} belongs to another hash", file.toString());
+				return null;
+			}
+			int rangeCount = readCount(in, fileSize);
+			List<Range> ranges = new ArrayList<>(rangeCount);
+			long previousEnd = -1;
+			for(int i = 0; i < rangeCount; ++i)
+			{
+				Range range = new Range(in.readLong(), in.readLong());
+				if(range.start <= previousEnd || range.start > range.end)
+				{
+					throw new IOException("Ranges are not sorted");
+				}
+				if(range.end > maxIndex)
+				{
+					throw new IOException("Range ends beyond search space");
+				}
+				ranges.add(range);
+				previousEnd = range.end;
+			}
+			int crackedCount = readCount(in, fileSize);
+			long[] crackedHashes = new long[2 * crackedCount];
+			for(int i = 0; i < crackedCount; ++i)
+			{
+				crackedHashes[2 * i] = in.readInt();
+				crackedHashes[2 * i + 1] = in.readLong();
+			}
+			logger.info("Checkpoint: restored {} ranges and {} cracked hashes from {}",
+					rangeCount, crackedCount, file.toString());
+			return new State(ranges, crackedHashes);
+		}
+		catch(IOException e)
+		{
+			// Corrupt or truncated checkpoint: search starts from scratch.
+			logger.info("Checkpoint: couldn't read {}: {}", file.toString(), e.toString());
+			return null;
+		}
+	}
+
+	private static int readCount(DataInputStream in, long fileSize) throws IOException
+	{
+		int count = in.readInt();
+		if(count < 0 || count > fileSize / MIN_RECORD_SIZE)
+		{
+			throw new IOException("Invalid record count " + count);
+		}
+		return count;
+	}
+
+	/**
+	 * Schedules write of checkpoint. Does nothing, if previous checkpoint is still being written.
+	 *
+	 * @param hashToCrack   - hashes to crack, one after another
+	 * @param ranges        - range starts and ends, one after another
+	 * @param crackedHashes - hash indices and string indices of answers, one after another
+	 * @return false if checkpoint was skipped
+	 */
+	public boolean save(byte[] hashToCrack, long[] ranges, long[] crackedHashes)
+	{
+		if(!isWriting.compareAndSet(false, true))
+		{
+			return false;
+		}
+		writer.execute(() ->
+		{
+			try
+			{
+				write(hashToCrack, ranges, crackedHashes);
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+			finally
+			{
+				isWriting.set(false);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Waits for pending write, writes final checkpoint and stops writer thread.
+	 *
+	 * @param hashToCrack   - hashes to crack, one after another
+	 * @param ranges        - range starts and ends, one after another
+	 * @param crackedHashes - hash indices and string indices of answers, one after another
+	 */
+	public void close(byte[] hashToCrack, long[] ranges, long[] crackedHashes)
+	{
+		writer.shutdown();
+		try
+		{
+			writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			write(hashToCrack, ranges, crackedHashes);
+		}
+		catch(InterruptedException | IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	private void write(byte[] hashToCrack, long[] ranges, long[] crackedHashes) throws IOException
+	{
+		try(FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(hashToCrack.length);
+			out.write(hashToCrack);
+			out.writeInt(ranges.length / 2);
+			for(long value : ranges)
+			{
+				out.writeLong(value);
+			}
+			out.writeInt(crackedHashes.length / 2);
+			for(int i = 0; i < crackedHashes.length; i += 2)
+			{
+				out.writeInt((int) crackedHashes[i]);
+				out.writeLong(crackedHashes[i + 1]);
+			}
+			out.flush();
+			// Otherwise rename may reach disk before data, and crash leaves empty checkpoint.
+			channel.force(true);
+		}
+		Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory();
+	}
+
+	/**
+	 * Syncs directory of checkpoint, so that rename itself survives crash.
+	 * Some platforms don't allow to open directory, then rename is left to file system.
+	 */
+	private void syncDirectory()
+	{
+		if(!canSyncDirectory)
+		{
+			return;
+		}
+		Path directory = file.toAbsolutePath().getParent();
+		try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ))
+		{
+			channel.force(true);
+		}
+		catch(IOException e)
+		{
+			canSyncDirectory = false;
+			logger.info("Checkpoint: couldn't sync directory {}: {}", directory.toString(), e.toString());
+		}
+	}
+}
@@ -2,16 +2,106 @@ package md5crack.server;
 
 import md5crack.Range;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.UUID;
 
+/**
+ * Client state. Server accesses it only under lock of the handler itself.
+ */
 class ClientHandler
 {
+	// Weight of the latest measurement in smoothed throughput.
+	private static final double THROUGHPUT_SMOOTHING = 0.5;
+
 	public UUID clientID;
-	public Range stringRange = null;
+	// Ranges in order of assignment. Session clients may have several of them.
+	public Deque<Range> stringRanges = new ArrayDeque<>();
+	// Not null for clients, connected through long-lived session.
+	public ServerSideSession session = null;
 	public long lastSeenTime = 0;
+	public long jobStartTime = 0;
+	// Strings per millisecond, 0 until the first job is completed.
+	public double throughput = 0;
+	// True after server has forgotten this client.
+	public boolean removed = false;
 
 	public ClientHandler(UUID clientID)
 	{
 		this.clientID = clientID;
 	}
+
+	public void jobStarted(Range range, long currentTime)
+	{
+		if(stringRanges.isEmpty())
+		{
+			jobStartTime = currentTime;
+		}
+		stringRanges.addLast(range);
+		lastSeenTime = currentTime;
+	}
+
+	/**
+	 * Removes completed range and updates throughput estimate with time, spent on it.
+	 * Client works on its ranges in order of assignment,
+	 * so the next range is considered started right now.
+	 *
+	 * @param range       - completed range or null for the oldest one
+	 * @param currentTime - time, when client reported about completed range
+	 * @return completed range or null if client has no such range
+	 */
+	public Range jobCompleted(Range range, long currentTime)
+	{
+		Range completed = removeRange(range);
+		if(completed != null)
+		{
+			long elapsed = Math.max(currentTime - jobStartTime, 1L);
+			double lastThroughput = (double) completed.getLength() / elapsed;
+			throughput = (throughput == 0 ?
+			              lastThroughput :
+			              THROUGHPUT_SMOOTHING * lastThroughput + (1 - THROUGHPUT_SMOOTHING) * throughput);
+			jobStartTime = currentTime;
+		}
+		lastSeenTime = currentTime;
+		return completed;
+	}
+
+	/**
+	 * Returns length of range, that client is expected to check in <code>targetTime</code>.
+	 *
+	 * @param targetTime    - desired job duration in milliseconds
+	 * @param defaultLength - length for client with unknown throughput
+	 * @param minLength     - lower bound of result
+	 * @param maxLength     - upper bound of result
+	 * @return range length
+	 */
+	public long getNextRangeLength(long targetTime, long defaultLength, long minLength, long maxLength)
+	{
+		if(throughput == 0)
+		{
+			return defaultLength;
+		}
+		long length = (long) (throughput * targetTime);
+		return Math.max(minLength, Math.min(length, maxLength));
+	}
+
+	private Range removeRange(Range range)
+	{
+		if(range == null)
+		{
+			return stringRanges.pollFirst();
+		}
+		Iterator<Range> it = stringRanges.iterator();
+		while(it.hasNext())
+		{
+			Range assigned = it.next();
+			if(assigned.start == range.start && assigned.end == range.end)
+			{
+				it.remove();
+				return assigned;
+			}
+		}
+		return null;
+	}
 }
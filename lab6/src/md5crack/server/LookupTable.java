@@ -0,0 +1,354 @@
+package md5crack.server;
+
+import md5crack.CandidateStringBuilder;
+import md5crack.CommonData;
+import md5crack.Md5Kernel;
+import md5crack.Range;
+import md5crack.SearchSpace;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Sorted table of hashes of all strings, that are not longer than given length.
+ * <p>
+ * Every entry is one long: the first 4 bytes of hash in high half and string index in low half.
+ * Table is built once into file and then memory-mapped, so lookup is a binary search
+ * over mapped file. Different strings may share hash prefix, so every match is checked
+ * by hashing the string again.
+ * </p>
+ * <p>
+ * File format: magic, search space specification, max length, entry count, then sorted entries.
+ * </p>
+ * <p>
+ * Table is built by external merge sort, so building takes a chunk of <code>CHUNK_ENTRIES</code> entries
+ * and a small buffer per chunk of heap, whatever the table size is, and twice the table size on disk.
+ * </p>
+ */
+class LookupTable implements CommonData
+{
+	private static Logger logger = LogManager.getLogger("default_logger");
+	private static final int MAGIC = 0x4D44354C;
+	// Entries of one file are mapped at once.
+	private static final long MAX_ENTRIES = Integer.MAX_VALUE / SIZEOF_LONG;
+	// Entries, sorted in memory at once while table is built: 32 MB of heap.
+	private static final int CHUNK_ENTRIES = 1 << 22;
+	private static final int IO_BUFFER_SIZE = 1 << 16;
+	private static final long INDEX_MASK = 0xFFFFFFFFL;
+
+	private SearchSpace space;
+	private int maxLength;
+	private LongBuffer entries;
+	private Md5Kernel kernel = new Md5Kernel();
+	private byte[] hash = new byte[DIGEST_LENGTH];
+
+	private LookupTable(SearchSpace space, int maxLength, LongBuffer entries)
+	{
+		this.space = space;
+		this.maxLength = maxLength;
+		this.entries = entries;
+	}
+
+	/**
+	 * Maps table from file, building it first if file doesn't exist or belongs to another table.
+	 *
+	 * @param file      - table file
+	 * @param space     - search space
+	 * @param maxLength - maximal length of strings in table
+	 * @return table
+	 * @throws IOException
+	 * @throws IllegalArgumentException if table for such length would be too big or space isn't the first part
+	 */
+	public static LookupTable open(Path file, SearchSpace space, int maxLength) throws IOException
+	{
+		if(space.getPart().signum() != 0)
+		{
+			throw new IllegalArgumentException("Table covers only the first part of search space");
+		}
+		if(maxLength < 0 || maxLength > space.getMaxLength())
+		{
+			throw new IllegalArgumentException("Table length should be from 0 to " + space.getMaxLength());
+		}
+		long entryCount = space.getFirstIndex(maxLength + 1);
+		if(entryCount > MAX_ENTRIES)
+		{
+			throw new IllegalArgumentException("Table for length " + maxLength + " would have " + entryCount +
+			                                   " entries, no more than " + MAX_ENTRIES + " are supported");
+		}
+
+		byte[] header = getHeader(space, maxLength, entryCount);
+		if(!hasHeader(file, header))
+		{
+			build(file, header, space, entryCount);
+		}
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, header.length, entryCount * SIZEOF_LONG);
+			logger.info("Lookup table: mapped {} entries for strings up to {} letters from {}",
+					entryCount, maxLength, file.toString());
+			return new LookupTable(space, maxLength, mapped.asLongBuffer());
+		}
+	}
+
+	/**
+	 * @return range of string indices, covered by table
+	 */
+	public Range getCoveredRange()
+	{
+		return new Range(0L, space.getFirstIndex(maxLength + 1) - 1);
+	}
+
+	/**
+	 * @param rawHash - raw bytes of MD5 hash
+	 * @return index of string with such hash or <code>HASH_NOT_CRACKED</code>
+	 */
+	public long find(byte[] rawHash)
+	{
+		int prefix = getPrefix(rawHash);
+		long key = (long) prefix << 32;
+		int low = 0;
+		int high = entries.limit();
+		// The first entry, that is not less than key.
+		while(low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if(entries.get(middle) < key)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+
+		for(int i = low; i < entries.limit() && (int) (entries.get(i) >> 32) == prefix; ++i)
+		{
+			long stringIdx = entries.get(i) & INDEX_MASK;
+			CandidateStringBuilder.Candidate candidate = CandidateStringBuilder.getByIndex(space, stringIdx);
+			kernel.digest(candidate.data, candidate.length, hash, 0);
+			if(Arrays.equals(hash, rawHash))
+			{
+				return stringIdx;
+			}
+		}
+		return HASH_NOT_CRACKED;
+	}
+
+	/**
+	 * Hashes strings in chunks, sorts every chunk and writes it as run into temporary file,
+	 * then merges runs into table file. Only one chunk is kept in memory.
+	 */
+	private static void build(Path file, byte[] header, SearchSpace space, long entryCount) throws IOException
+	{
+		logger.info("Lookup table: hashing {} strings into {}", entryCount, file.toString());
+		long startTime = System.currentTimeMillis();
+
+		Path runFile = file.resolveSibling(file.getFileName() + ".runs");
+		Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+		try
+		{
+			int runCount = writeSortedRuns(runFile, space, entryCount);
+			mergeRuns(runFile, tmpFile, header, entryCount, runCount);
+		}
+		finally
+		{
+			Files.deleteIfExists(runFile);
+		}
+		Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		logger.info("Lookup table: built in {} ms", System.currentTimeMillis() - startTime);
+	}
+
+	/**
+	 * @return count of runs, every run but the last one has <code>CHUNK_ENTRIES</code> entries
+	 */
+	private static int writeSortedRuns(Path runFile, SearchSpace space, long entryCount) throws IOException
+	{
+		long[] chunk = new long[(int) Math.min(entryCount, CHUNK_ENTRIES)];
+		Md5Kernel kernel = new Md5Kernel();
+		byte[] hash = new byte[DIGEST_LENGTH];
+		CandidateStringBuilder builder = new CandidateStringBuilder(space, 0);
+		ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+		int runCount = 0;
+		try(FileChannel channel = FileChannel.open(runFile, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			long hashedCount = 0;
+			while(hashedCount < entryCount)
+			{
+				int chunkLength = (int) Math.min(chunk.length, entryCount - hashedCount);
+				for(int i = 0; i < chunkLength; ++i)
+				{
+					CandidateStringBuilder.Candidate candidate = builder.getNextCandidate();
+					kernel.digest(candidate.data, candidate.length, hash, 0);
+					chunk[i] = ((long) getPrefix(hash) << 32) | candidate.index;
+				}
+				Arrays.sort(chunk, 0, chunkLength);
+				for(int i = 0; i < chunkLength; ++i)
+				{
+					putEntry(channel, buffer, chunk[i]);
+				}
+				hashedCount += chunkLength;
+				++runCount;
+			}
+			buffer.flip();
+			writeFully(channel, buffer);
+		}
+		return runCount;
+	}
+
+	private static void mergeRuns(Path runFile, Path tmpFile, byte[] header, long entryCount, int runCount)
+			throws IOException
+	{
+		PriorityQueue<Run> heads = new PriorityQueue<>(Math.max(runCount, 1), Comparator.comparingLong((Run run) -> run.head));
+		try(FileChannel runChannel = FileChannel.open(runFile, StandardOpenOption.READ);
+		    FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE,
+				    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			for(int i = 0; i < runCount; ++i)
+			{
+				long runStart = (long) i * CHUNK_ENTRIES;
+				long runEnd = Math.min(runStart + CHUNK_ENTRIES, entryCount);
+				Run run = new Run(runChannel, runStart * SIZEOF_LONG, runEnd * SIZEOF_LONG);
+				if(run.next())
+				{
+					heads.add(run);
+				}
+			}
+
+			writeFully(channel, ByteBuffer.wrap(header));
+			ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+			Run run;
+			while((run = heads.poll()) != null)
+			{
+				putEntry(channel, buffer, run.head);
+				if(run.next())
+				{
+					heads.add(run);
+				}
+			}
+			buffer.flip();
+			writeFully(channel, buffer);
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * Sorted run of entries in temporary file, read through small buffer.
+	 */
+	private static class Run
+	{
+		private FileChannel channel;
+		private long position;
+		private long end;
+		private ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+		// Current entry.
+		long head;
+
+		Run(FileChannel channel, long start, long end)
+		{
+			this.channel = channel;
+			this.position = start;
+			this.end = end;
+			buffer.limit(0);
+		}
+
+		/**
+		 * @return false if run has ended
+		 */
+		boolean next() throws IOException
+		{
+			if(!buffer.hasRemaining())
+			{
+				if(position == end)
+				{
+					return false;
+				}
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), end - position));
+				while(buffer.hasRemaining())
+				{
+					int count = channel.read(buffer, position);
+					if(count < 0)
+					{
+						throw new EOFException("Run file is truncated");
+					}
+					position += count;
+				}
+				buffer.flip();
+			}
+			head = buffer.getLong();
+			return true;
+		}
+	}
+
+	private static void putEntry(FileChannel channel, ByteBuffer buffer, long entry) throws IOException
+	{
+		if(!buffer.hasRemaining())
+		{
+			buffer.flip();
+			writeFully(channel, buffer);
+			buffer.clear();
+		}
+		buffer.putLong(entry);
+	}
+
+	private static byte[] getHeader(SearchSpace space, int maxLength, long entryCount) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes))
+		{
+			byte[] spaceID = space.toString().getBytes(CHARSET);
+			out.writeInt(MAGIC);
+			out.writeInt(spaceID.length);
+			out.write(spaceID);
+			out.writeInt(maxLength);
+			out.writeLong(entryCount);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static boolean hasHeader(Path file, byte[] header) throws IOException
+	{
+		if(!Files.exists(file) || Files.size(file) != header.length + getEntryCount(header) * SIZEOF_LONG)
+		{
+			return false;
+		}
+		byte[] fileHeader = new byte[header.length];
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+		{
+			in.readFully(fileHeader);
+		}
+		return Arrays.equals(header, fileHeader);
+	}
+
+	private static long getEntryCount(byte[] header)
+	{
+		return ByteBuffer.wrap(header, header.length - SIZEOF_LONG, SIZEOF_LONG).getLong();
+	}
+
+	private static int getPrefix(byte[] rawHash)
+	{
+		return ByteBuffer.wrap(rawHash, 0, SIZEOF_INT).getInt();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		while(buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package md5crack.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import md5crack.CommonData;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server counters. They are updated by all reactor threads and main thread at once
+ * and read by HTTP thread, which serves them in plain text scrape format on <code>/metrics</code>.
+ * Every counter is atomic, and client rates are kept in concurrent map.
+ */
+class Metrics implements HttpHandler, CommonData
+{
+	private static final String PATH = "/metrics";
+
+	private AtomicLong candidatesChecked = new AtomicLong();
+	private AtomicLong rangesCompleted = new AtomicLong();
+	private AtomicLong rangesReassigned = new AtomicLong();
+	private AtomicLong rangesCopied = new AtomicLong();
+	private AtomicLong hashesCracked = new AtomicLong();
+	// Strings per second of every known client, 0 until the first job is completed.
+	private Map<UUID, Double> clientRates = new ConcurrentHashMap<>();
+	// Bits of double; it only grows, so value from a late reactor doesn't hide a newer one.
+	private AtomicLong completedPercent = new AtomicLong(Double.doubleToLongBits(0));
+	private HttpServer httpServer = null;
+
+	/**
+	 * Starts HTTP listener on loopback interface.
+	 *
+	 * @param port - port to listen on
+	 * @throws IOException
+	 */
+	public void start(int port) throws IOException
+	{
+		httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		httpServer.createContext(PATH, this);
+		httpServer.start();
+	}
+
+	public void stop()
+	{
+		if(httpServer != null)
+		{
+			httpServer.stop(0);
+			httpServer = null;
+		}
+	}
+
+	/**
+	 * @param length - count of strings in completed range
+	 */
+	public void rangeCompleted(long length)
+	{
+		candidatesChecked.addAndGet(length);
+		rangesCompleted.incrementAndGet();
+	}
+
+	/**
+	 * @param count - count of ranges, taken back from timed out client
+	 */
+	public void rangesReassigned(int count)
+	{
+		rangesReassigned.addAndGet(count);
+	}
+
+	public void rangeCopied()
+	{
+		rangesCopied.incrementAndGet();
+	}
+
+	public void hashCracked()
+	{
+		hashesCracked.incrementAndGet();
+	}
+
+	public void setCompletedPercent(double percent)
+	{
+		long current;
+		do
+		{
+			current = completedPercent.get();
+			if(Double.longBitsToDouble(current) >= percent)
+			{
+				return;
+			}
+		}
+		while(!completedPercent.compareAndSet(current, Double.doubleToLongBits(percent)));
+	}
+
+	/**
+	 * @param clientID   - client
+	 * @param throughput - strings per millisecond
+	 */
+	public void setClientRate(UUID clientID, double throughput)
+	{
+		clientRates.put(clientID, throughput * 1000);
+	}
+
+	public void clientRemoved(UUID clientID)
+	{
+		clientRates.remove(clientID);
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException
+	{
+		StringBuilder text = new StringBuilder();
+		appendMetric(text, "md5crack_candidates_checked_total", "counter", candidatesChecked.get());
+		appendMetric(text, "md5crack_ranges_completed_total", "counter", rangesCompleted.get());
+		appendMetric(text, "md5crack_ranges_reassigned_total", "counter", rangesReassigned.get());
+		appendMetric(text, "md5crack_ranges_copied_total", "counter", rangesCopied.get());
+		appendMetric(text, "md5crack_hashes_cracked_total", "counter", hashesCracked.get());
+		appendMetric(text, "md5crack_completed_percent", "gauge", Double.longBitsToDouble(completedPercent.get()));
+		appendMetric(text, "md5crack_clients", "gauge", clientRates.size());
+
+		double totalRate = 0;
+		text.append("# TYPE md5crack_client_candidates_per_second gauge\n");
+		for(Map.Entry<UUID, Double> client : clientRates.entrySet())
+		{
+			totalRate += client.getValue();
+			text.append("md5crack_client_candidates_per_second{client=\"").append(client.getKey())
+			    .append("\"} ").append(client.getValue()).append('\n');
+		}
+		appendMetric(text, "md5crack_candidates_per_second", "gauge", totalRate);
+
+		byte[] response = text.toString().getBytes(CHARSET);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+		exchange.sendResponseHeaders(200, response.length);
+		try(OutputStream out = exchange.getResponseBody())
+		{
+			out.write(response);
+		}
+	}
+
+	private static void appendMetric(StringBuilder text, String name, String type, Object value)
+	{
+		text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		text.append(name).append(' ').append(value).append('\n');
+	}
+}
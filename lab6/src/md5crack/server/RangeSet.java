@@ -0,0 +1,476 @@
+package md5crack.server;
+
+import md5crack.Range;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps track of string indices: which of them are free, in flight (assigned to some client)
+ * or completed. Range ends are inclusive. All methods may be called from any thread.
+ * <p>
+ * Indices, that were never taken, lie from frontier to the end of space, and new ranges
+ * are cut from frontier by compare-and-set without any lock. Ranges, returned by clients
+ * or restored from checkpoint, are kept in small ordered map under lock; they are coalesced
+ * with their neighbours and taken before frontier, so lower indices are checked first.
+ * In flight ranges are kept in concurrent map.
+ * </p>
+ * <p>
+ * Range, cut from frontier, is not in flight yet for a moment. Such moves share read lock,
+ * and snapshot of uncompleted ranges takes write lock, so it sees either old or new state.
+ * </p>
+ * <p>
+ * When there are no free ranges left, in flight range may be taken once more by <code>takeCopy</code>.
+ * Such range stays in flight until it is completed by any of its holders or released by all of them.
+ * </p>
+ */
+class RangeSet
+{
+	// Count of clients, that may check one range at once.
+	private static final int MAX_COPIES = 2;
+
+	private long spaceEnd;
+	private long totalLength;
+	// Indices from frontier to the end of space were never taken.
+	private AtomicLong frontier;
+	// Range start -> range end. Guarded by itself.
+	private TreeMap<Long, Long> freeRanges = new TreeMap<>();
+	private AtomicLong freeLength = new AtomicLong();
+	private ConcurrentSkipListMap<Long, InFlightRange> inFlightRanges = new ConcurrentSkipListMap<>();
+	private AtomicLong inFlightLength = new AtomicLong();
+	private AtomicLong takeCounter = new AtomicLong();
+	// Read lock is held by moves out of frontier, write lock by snapshot.
+	private ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+	/**
+	 * Creates set, where all indices from <code>space</code> are free.
+	 *
+	 * @param space - all indices
+	 */
+	public RangeSet(Range space)
+	{
+		this.spaceEnd = space.end;
+		this.totalLength = length(space.start, space.end);
+		this.frontier = new AtomicLong(space.start);
+	}
+
+	/**
+	 * Creates set, where only <code>free</code> ranges are not completed yet.
+	 *
+	 * @param space - all indices
+	 * @param free  - non-overlapping ranges inside of <code>space</code>
+	 */
+	public RangeSet(Range space, List<Range> free)
+	{
+		this.spaceEnd = space.end;
+		this.totalLength = length(space.start, space.end);
+		this.frontier = new AtomicLong(space.end + 1);
+		for(Range range : free)
+		{
+			if(range.end == space.end)
+			{
+				// The last range of space is the usual case: it is taken without lock then.
+				frontier.set(range.start);
+			}
+			else
+			{
+				addFree(range.start, range.end);
+			}
+		}
+	}
+
+	/**
+	 * Takes the first free range, but no longer than <code>maxLength</code>, and marks it in flight.
+	 *
+	 * @param maxLength - maximal length of result
+	 * @return range or null if there is no free range
+	 */
+	public Range take(long maxLength)
+	{
+		snapshotLock.readLock().lock();
+		try
+		{
+			Range range = (freeLength.get() > 0 ? takeFree(maxLength) : null);
+			if(range == null)
+			{
+				range = takeFrontier(maxLength);
+			}
+			if(range != null)
+			{
+				inFlightRanges.put(range.start, new InFlightRange(range.end, takeCounter.getAndIncrement()));
+				inFlightLength.addAndGet(length(range.start, range.end));
+			}
+			return range;
+		}
+		finally
+		{
+			snapshotLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Takes one more copy of the oldest in flight range, that has less than <code>MAX_COPIES</code> holders.
+	 * Straggling client doesn't delay completion then: whoever completes the range first, completes it.
+	 *
+	 * @param held - ranges of client, that takes copy; they are skipped
+	 * @return range or null if there is no such range
+	 */
+	public Range takeCopy(Collection<Range> held)
+	{
+		while(true)
+		{
+			Map.Entry<Long, InFlightRange> oldest = null;
+			for(Map.Entry<Long, InFlightRange> entry : inFlightRanges.entrySet())
+			{
+				InFlightRange range = entry.getValue();
+				if(range.copies < MAX_COPIES && !range.done &&
+				   (oldest == null || range.takeOrder < oldest.getValue().takeOrder) &&
+				   !isHeld(held, entry.getKey()))
+				{
+					oldest = entry;
+				}
+			}
+			if(oldest == null)
+			{
+				return null;
+			}
+			InFlightRange range = oldest.getValue();
+			synchronized(range)
+			{
+				// Otherwise range has changed since scan and won't be chosen again.
+				if(range.copies < MAX_COPIES && !range.done)
+				{
+					++range.copies;
+					return new Range(oldest.getKey(), range.end);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns range, taken earlier, back to free ones, if nobody else holds its copy.
+	 *
+	 * @param range - range, returned by <code>take</code> or <code>takeCopy</code>
+	 * @return false if range is not in flight
+	 */
+	public boolean release(Range range)
+	{
+		InFlightRange inFlight = getInFlight(range);
+		if(inFlight == null)
+		{
+			return false;
+		}
+		synchronized(inFlight)
+		{
+			if(inFlight.done)
+			{
+				return false;
+			}
+			if(--inFlight.copies != 0)
+			{
+				return true;
+			}
+			inFlight.done = true;
+		}
+		// Range is made free before it leaves in flight ones, so snapshot never misses it.
+		addFree(range.start, range.end);
+		removeInFlight(range, inFlight);
+		return true;
+	}
+
+	/**
+	 * Marks range, taken earlier, as completed. Results of other copies are ignored after that.
+	 *
+	 * @param range - range, returned by <code>take</code> or <code>takeCopy</code>
+	 * @return false if range is not in flight
+	 */
+	public boolean complete(Range range)
+	{
+		InFlightRange inFlight = getInFlight(range);
+		if(inFlight == null)
+		{
+			return false;
+		}
+		synchronized(inFlight)
+		{
+			if(inFlight.done)
+			{
+				return false;
+			}
+			inFlight.done = true;
+		}
+		removeInFlight(range, inFlight);
+		return true;
+	}
+
+	/**
+	 * Marks all free indices from <code>range</code> as completed without taking them.
+	 *
+	 * @param range - range of indices, that are known to be checked
+	 */
+	public void completeFree(Range range)
+	{
+		snapshotLock.readLock().lock();
+		try
+		{
+			long oldFrontier;
+			do
+			{
+				oldFrontier = frontier.get();
+			}
+			while(oldFrontier <= range.end && !frontier.compareAndSet(oldFrontier, range.end + 1));
+			if(oldFrontier < range.start && oldFrontier <= range.end)
+			{
+				// Indices before range are not completed, they just stop being part of frontier.
+				addFree(oldFrontier, range.start - 1);
+			}
+		}
+		finally
+		{
+			snapshotLock.readLock().unlock();
+		}
+
+		synchronized(freeRanges)
+		{
+			Map.Entry<Long, Long> entry = freeRanges.floorEntry(range.start);
+			if(entry == null || entry.getValue() < range.start)
+			{
+				entry = freeRanges.higherEntry(range.start);
+			}
+			while(entry != null && entry.getKey() <= range.end)
+			{
+				long start = entry.getKey();
+				long end = entry.getValue();
+				freeRanges.remove(start);
+				freeLength.addAndGet(-length(start, end));
+				if(start < range.start)
+				{
+					freeRanges.put(start, range.start - 1);
+					freeLength.addAndGet(length(start, range.start - 1));
+				}
+				if(end > range.end)
+				{
+					freeRanges.put(range.end + 1, end);
+					freeLength.addAndGet(length(range.end + 1, end));
+				}
+				entry = freeRanges.higherEntry(start);
+			}
+		}
+	}
+
+	/**
+	 * Forgets all free and in flight ranges.
+	 */
+	public void clear()
+	{
+		frontier.set(spaceEnd + 1);
+		synchronized(freeRanges)
+		{
+			freeRanges.clear();
+			freeLength.set(0);
+		}
+		inFlightRanges.clear();
+		inFlightLength.set(0);
+	}
+
+	/**
+	 * @return true if there are no free ranges
+	 */
+	public boolean isEmpty()
+	{
+		return freeLength.get() == 0 && frontier.get() > spaceEnd;
+	}
+
+	public long getFreeLength()
+	{
+		return freeLength.get() + Math.max(0L, spaceEnd - frontier.get() + 1);
+	}
+
+	public long getInFlightLength()
+	{
+		return inFlightLength.get();
+	}
+
+	public long getCompletedLength()
+	{
+		return totalLength - getFreeLength() - getInFlightLength();
+	}
+
+	public double getCompletedPercent()
+	{
+		return 100.0 * getCompletedLength() / totalLength;
+	}
+
+	/**
+	 * Returns free and in flight ranges, that is, everything not completed.
+	 *
+	 * @return range starts and ends, one after another, sorted and not overlapping
+	 */
+	public long[] getUncompletedRanges()
+	{
+		TreeMap<Long, Long> snapshot = new TreeMap<>();
+		snapshotLock.writeLock().lock();
+		try
+		{
+			for(Map.Entry<Long, InFlightRange> entry : inFlightRanges.entrySet())
+			{
+				addToSnapshot(snapshot, entry.getKey(), entry.getValue().end);
+			}
+			synchronized(freeRanges)
+			{
+				for(Map.Entry<Long, Long> entry : freeRanges.entrySet())
+				{
+					addToSnapshot(snapshot, entry.getKey(), entry.getValue());
+				}
+			}
+			long frontierStart = frontier.get();
+			if(frontierStart <= spaceEnd)
+			{
+				addToSnapshot(snapshot, frontierStart, spaceEnd);
+			}
+		}
+		finally
+		{
+			snapshotLock.writeLock().unlock();
+		}
+
+		// Range, that is being released, may be both in flight and free.
+		List<Long> merged = new ArrayList<>(2 * snapshot.size());
+		for(Map.Entry<Long, Long> entry : snapshot.entrySet())
+		{
+			int last = merged.size() - 1;
+			if(last > 0 && entry.getKey() <= merged.get(last) + 1)
+			{
+				merged.set(last, Math.max(merged.get(last), entry.getValue()));
+			}
+			else
+			{
+				merged.add(entry.getKey());
+				merged.add(entry.getValue());
+			}
+		}
+		long[] ranges = new long[merged.size()];
+		for(int i = 0; i < ranges.length; ++i)
+		{
+			ranges[i] = merged.get(i);
+		}
+		return ranges;
+	}
+
+	private Range takeFree(long maxLength)
+	{
+		synchronized(freeRanges)
+		{
+			Map.Entry<Long, Long> first = freeRanges.pollFirstEntry();
+			if(first == null)
+			{
+				return null;
+			}
+			long start = first.getKey();
+			long end = first.getValue();
+			if(length(start, end) > maxLength)
+			{
+				freeRanges.put(start + maxLength, end);
+				end = start + maxLength - 1;
+			}
+			freeLength.addAndGet(-length(start, end));
+			return new Range(start, end);
+		}
+	}
+
+	private Range takeFrontier(long maxLength)
+	{
+		while(true)
+		{
+			long start = frontier.get();
+			if(start > spaceEnd)
+			{
+				return null;
+			}
+			long end = start + Math.min(maxLength, length(start, spaceEnd)) - 1;
+			if(frontier.compareAndSet(start, end + 1))
+			{
+				return new Range(start, end);
+			}
+		}
+	}
+
+	private InFlightRange getInFlight(Range range)
+	{
+		InFlightRange inFlight = inFlightRanges.get(range.start);
+		return (inFlight == null || inFlight.end != range.end ? null : inFlight);
+	}
+
+	private void removeInFlight(Range range, InFlightRange inFlight)
+	{
+		// Range may be taken again already, then another entry has the same start.
+		inFlightRanges.remove(range.start, inFlight);
+		inFlightLength.addAndGet(-length(range.start, range.end));
+	}
+
+	private void addFree(long start, long end)
+	{
+		synchronized(freeRanges)
+		{
+			freeLength.addAndGet(length(start, end));
+
+			Map.Entry<Long, Long> before = freeRanges.floorEntry(start);
+			if(before != null && before.getValue() == start - 1)
+			{
+				start = before.getKey();
+			}
+			Long afterEnd = freeRanges.remove(end + 1);
+			if(afterEnd != null)
+			{
+				end = afterEnd;
+			}
+			freeRanges.put(start, end);
+		}
+	}
+
+	private static void addToSnapshot(TreeMap<Long, Long> snapshot, long start, long end)
+	{
+		Long oldEnd = snapshot.get(start);
+		snapshot.put(start, (oldEnd == null ? end : Math.max(oldEnd, end)));
+	}
+
+	private static boolean isHeld(Collection<Range> held, long start)
+	{
+		for(Range range : held)
+		{
+			if(range.start == start)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static long length(long start, long end)
+	{
+		return end - start + 1;
+	}
+
+	private static class InFlightRange
+	{
+		final long end;
+		// Order of the first take, smaller is older.
+		final long takeOrder;
+		// Guarded by this range.
+		volatile int copies = 1;
+		volatile boolean done = false;
+
+		InFlightRange(long end, long takeOrder)
+		{
+			this.end = end;
+			this.takeOrder = takeOrder;
+		}
+	}
+}
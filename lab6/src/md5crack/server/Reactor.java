@@ -0,0 +1,141 @@
+package md5crack.server;
+
+import md5crack.FramedConnection;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * I/O thread with its own selector. Serves connections, accepted by server and passed by <code>register</code>.
+ */
+class Reactor implements Runnable
+{
+	private static Logger logger = LogManager.getLogger("default_logger");
+	private static final long SELECT_TIMEOUT = 3000;
+
+	private Server server;
+	private Selector selector;
+	// Connections, accepted by acceptor thread, but not registered in selector yet.
+	private Queue<SocketChannel> newConnections = new ConcurrentLinkedQueue<>();
+	private Queue<SocketChannel> newSessions = new ConcurrentLinkedQueue<>();
+	private volatile boolean shouldStop = false;
+
+	public Reactor(Server server) throws IOException
+	{
+		this.server = server;
+		this.selector = Selector.open();
+	}
+
+	/**
+	 * Passes accepted connection to this reactor. May be called from any thread.
+	 *
+	 * @param channel   - non-blocking channel
+	 * @param isSession - true for long-lived session, false for one-shot client
+	 */
+	public void register(SocketChannel channel, boolean isSession)
+	{
+		(isSession ? newSessions : newConnections).add(channel);
+		selector.wakeup();
+	}
+
+	public void stop()
+	{
+		shouldStop = true;
+		selector.wakeup();
+	}
+
+	@Override
+	public void run()
+	{
+		try
+		{
+			while(!shouldStop)
+			{
+				selector.select(SELECT_TIMEOUT);
+				registerNewChannels();
+
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while(it.hasNext())
+				{
+					SelectionKey key = it.next();
+					it.remove();
+					if(!key.isValid())
+					{
+						continue;
+					}
+
+					try
+					{
+						if(key.attachment() instanceof ServerSideSession)
+						{
+							server.handleSession(key);
+						}
+						else if(key.isReadable())
+						{
+							server.receiveData(key);
+						}
+						else if(key.isWritable())
+						{
+							server.sendReply(key);
+						}
+					}
+					catch(RuntimeException e)
+					{
+						// Bug in handling of one connection shouldn't stop the others.
+						server.connectionFailed(key, e);
+					}
+				}
+			}
+		}
+		catch(Exception e)
+		{
+			e.printStackTrace();
+		}
+		finally
+		{
+			try
+			{
+				selector.close();
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void registerNewChannels()
+	{
+		SocketChannel channel;
+		while((channel = newConnections.poll()) != null)
+		{
+			try
+			{
+				channel.register(selector, SelectionKey.OP_READ, new ServerSideSessionHandler());
+			}
+			catch(IOException e)
+			{
+				logger.info("Server: couldn't register connection: {}", e.getMessage());
+			}
+		}
+		while((channel = newSessions.poll()) != null)
+		{
+			try
+			{
+				ServerSideSession session = new ServerSideSession(server, new FramedConnection(channel));
+				session.setKey(channel.register(selector, SelectionKey.OP_READ, session));
+			}
+			catch(IOException e)
+			{
+				logger.info("Server: couldn't register session: {}", e.getMessage());
+			}
+		}
+	}
+}
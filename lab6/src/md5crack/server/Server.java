@@ -3,127 +3,346 @@ package md5crack.server;
 import md5crack.CandidateStringBuilder;
 import md5crack.CommonData;
 import md5crack.Range;
+import md5crack.SearchSpace;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import javax.xml.bind.DatatypeConverter;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 public class Server implements CommonData
 {
 	private static Logger logger = LogManager.getLogger("default_logger");
-	private static final long maxRangeToCrack = 20000;
-	private static final long SELECT_TIMEOUT = 3000;
+	private static final long DEFAULT_RANGE_TO_CRACK = 20000;
+	private static final long MIN_RANGE_TO_CRACK = 1000;
+	private static final long MAX_RANGE_TO_CRACK = 200000000;
+	private static final long TARGET_JOB_TIME = 3000;
 	private static final long JOB_TIMEOUT = 9000;
+	// Expiry of clients is checked with this precision.
+	private static final long EXPIRY_TICK = 500;
+	// Timer wheel turns once in 16 seconds, longer than JOB_TIMEOUT.
+	private static final int EXPIRY_SLOTS = 32;
+	private static final long CHECKPOINT_PERIOD = 10000;
+	private static final Object SESSION_ACCEPTOR = new Object();
 
 	private int port;
-	private boolean shouldStop = false;
-	private Deque<Range> rangesToCrack = new LinkedList<>();
-	private Map<UUID, ClientHandler> clients = new HashMap<>();
-	private byte[] crackedString = null;
-	private byte[] hashToCrack = null;
+	// Port for long-lived sessions, 0 if sessions are disabled.
+	private int sessionPort;
+	// Port of local metrics listener, 0 if it is disabled.
+	private int metricsPort;
+	private Metrics metrics = new Metrics();
+	private volatile boolean shouldStop = false;
+	private SearchSpace searchSpace;
+	private RangeSet rangesToCrack;
+	// Every client handler is guarded by itself.
+	private Map<UUID, ClientHandler> clients = new ConcurrentHashMap<>();
+	private TimerWheel<ClientHandler> clientTimers = new TimerWheel<>(EXPIRY_TICK, EXPIRY_SLOTS, System.currentTimeMillis());
+	// Hex representations of hashes, as they were given.
+	private byte[][] hashesToCrack;
+	private byte[][] rawHashesToCrack;
+	// Guarded by this server.
+	private byte[][] crackedStrings;
+	private long[] crackedStringIndices;
+	private volatile int crackedCount = 0;
+	// Null if checkpoints are disabled.
+	private Checkpoint checkpoint = null;
+	private long nextCheckpointTime = 0;
 
 	public Server(byte[] hashToCrack, int port)
 	{
-		this.hashToCrack = hashToCrack;
+		this(new byte[][]{hashToCrack}, port, 0, null, SearchSpace.DEFAULT, 0, null);
+	}
+
+	/**
+	 * @param hashesToCrack  - hex representations of hashes; with more than one hash
+	 *                       only session clients get jobs
+	 * @param port           - port for one-shot clients
+	 * @param sessionPort    - port for session clients, 0 to disable sessions
+	 * @param checkpointFile - checkpoint file or null
+	 * @param searchSpace    - strings to check; with non-default space only session clients get jobs
+	 * @param metricsPort    - port of local metrics listener, 0 to disable
+	 * @param lookupTable    - table of hashes of short strings of the same search space or null
+	 */
+	public Server(byte[][] hashesToCrack, int port, int sessionPort, String checkpointFile, SearchSpace searchSpace,
+	              int metricsPort, LookupTable lookupTable)
+	{
+		this.hashesToCrack = hashesToCrack;
+		this.rawHashesToCrack = new byte[hashesToCrack.length][];
+		for(int i = 0; i < hashesToCrack.length; ++i)
+		{
+			rawHashesToCrack[i] = DatatypeConverter.parseHexBinary(new String(hashesToCrack[i], CHARSET));
+		}
+		this.crackedStrings = new byte[hashesToCrack.length][];
+		this.crackedStringIndices = new long[hashesToCrack.length];
+		Arrays.fill(crackedStringIndices, HASH_NOT_CRACKED);
 		this.port = port;
+		this.sessionPort = sessionPort;
+		this.searchSpace = searchSpace;
+		this.metricsPort = metricsPort;
+
+		Checkpoint.State restoredState = null;
+		if(checkpointFile != null)
+		{
+			checkpoint = new Checkpoint(Paths.get(checkpointFile));
+			restoredState = checkpoint.load(getCheckpointID(), searchSpace.getMaxIndex());
+		}
 
-		long maxStringIdx = 0;
-		long stringsForLength = ALPHABET.length;
-		for(int i = 0; i < MAX_STRING_LENGTH; ++i)
+		Range space = new Range(0L, searchSpace.getMaxIndex());
+		rangesToCrack = (restoredState == null ? new RangeSet(space) : new RangeSet(space, restoredState.ranges));
+		if(restoredState != null)
 		{
-			maxStringIdx += stringsForLength;
-			stringsForLength *= ALPHABET.length;
+			restoreCrackedHashes(restoredState.crackedHashes);
+		}
+		if(lookupTable != null)
+		{
+			crackByLookupTable(lookupTable);
 		}
-		rangesToCrack.add(new Range(0L, maxStringIdx));
 	}
 
 	public static void main(String[] args)
 	{
-		if(args.length == 2)
+		if(args.length >= 2 && args.length <= 7)
 		{
-			byte[] hashToCrack = args[0].getBytes(CHARSET);
+			byte[][] hashesToCrack;
+			if(args[0].startsWith("@"))
+			{
+				try
+				{
+					hashesToCrack = readHashList(args[0].substring(1));
+				}
+				catch(IOException e)
+				{
+					System.out.println("Couldn't read hash list: " + e.getMessage());
+					return;
+				}
+			}
+			else
+			{
+				hashesToCrack = new byte[][]{args[0].getBytes(CHARSET)};
+			}
 			int port = Integer.parseInt(args[1]);
-			Server server = new Server(hashToCrack, port);
+			int sessionPort = (args.length >= 3 ? Integer.parseInt(args[2]) : 0);
+			String checkpointFile = (args.length >= 4 && !args[3].equals("-") ? args[3] : null);
+			SearchSpace searchSpace;
+			try
+			{
+				searchSpace = (args.length >= 5 && !args[4].equals("-") ? SearchSpace.parse(args[4]) : SearchSpace.DEFAULT);
+			}
+			catch(IllegalArgumentException e)
+			{
+				System.out.println("Invalid search space: " + e.getMessage());
+				return;
+			}
+			int metricsPort = (args.length >= 6 ? Integer.parseInt(args[5]) : 0);
+			LookupTable lookupTable = null;
+			if(args.length == 7)
+			{
+				int separator = args[6].lastIndexOf(':');
+				if(separator <= 0)
+				{
+					System.out.println("Lookup table should look like <tableFile>:<maxLength>");
+					return;
+				}
+				try
+				{
+					lookupTable = LookupTable.open(Paths.get(args[6].substring(0, separator)), searchSpace,
+							Integer.parseInt(args[6].substring(separator + 1)));
+				}
+				catch(IOException | RuntimeException e)
+				{
+					System.out.println("Couldn't open lookup table: " + e.getMessage());
+					return;
+				}
+			}
+			Server server = new Server(hashesToCrack, port, sessionPort, checkpointFile, searchSpace, metricsPort,
+					lookupTable);
 			server.run();
 		}
 		else
 		{
-			System.out.println("Invalid arguments");
+			System.out.println("Usage: <hashToCrack or @hashListFile> <port> <(optional)sessionPort, 0 to disable> <(optional)checkpointFile, - to disable> <(optional)searchSpace as alphabet:maxLength or alphabet:maxLength/part, " + SearchSpace.DEFAULT + " by default> <(optional)metricsPort, 0 to disable> <(optional)lookupTable as tableFile:maxLength>");
+		}
+	}
+
+	/**
+	 * Reads hashes, one hex hash per line. Repeated hash is skipped.
+	 *
+	 * @param fileName - hash list file
+	 * @return hex representations of hashes
+	 * @throws IOException
+	 */
+	private static byte[][] readHashList(String fileName) throws IOException
+	{
+		List<byte[]> hashes = new ArrayList<>();
+		// Every hash is reported by clients once, so duplicate would never be cracked.
+		Set<String> uniqueHashes = new HashSet<>();
+		for(String line : Files.readAllLines(Paths.get(fileName), CHARSET))
+		{
+			line = line.trim();
+			if(!line.isEmpty())
+			{
+				if(line.length() != HASH_LENGTH)
+				{
+					throw new IOException("Invalid hash: " + line);
+				}
+				if(!uniqueHashes.add(line.toLowerCase(Locale.ROOT)))
+				{
+					logger.info("Server: duplicate hash {} is skipped", line);
+					continue;
+				}
+				hashes.add(line.getBytes(CHARSET));
+			}
+		}
+		if(hashes.isEmpty())
+		{
+			throw new IOException("No hashes in " + fileName);
 		}
+		return hashes.toArray(new byte[hashes.size()][]);
 	}
 
+	/**
+	 * Runs acceptor thread and one I/O reactor per processor,
+	 * while this thread expires silent clients and saves checkpoints.
+	 */
 	public void run()
 	{
+		Reactor[] reactors = new Reactor[Runtime.getRuntime().availableProcessors()];
+		Thread[] reactorThreads = new Thread[reactors.length];
 		try(ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
-		    Selector selector = Selector.open())
+		    ServerSocketChannel sessionSocketChannel = ServerSocketChannel.open();
+		    Selector acceptSelector = Selector.open())
 		{
 			serverSocketChannel.bind(new InetSocketAddress(port));
 			serverSocketChannel.configureBlocking(false);
-			serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+			serverSocketChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
 			logger.info("Server started on port {}", port);
 
-			while(!shouldStop)
+			if(sessionPort != 0)
 			{
-				int numReady = selector.select(SELECT_TIMEOUT);
+				sessionSocketChannel.bind(new InetSocketAddress(sessionPort));
+				sessionSocketChannel.configureBlocking(false);
+				sessionSocketChannel.register(acceptSelector, SelectionKey.OP_ACCEPT, SESSION_ACCEPTOR);
+				logger.info("Server accepts sessions on port {}", sessionPort);
+			}
 
-				if(numReady != 0)
-				{
-					Set<SelectionKey> keys = selector.selectedKeys();
-					Iterator<SelectionKey> it = keys.iterator();
+			if(metricsPort != 0)
+			{
+				metrics.start(metricsPort);
+				logger.info("Server serves metrics on http://localhost:{}/metrics", metricsPort);
+			}
 
-					while(it.hasNext())
-					{
-						SelectionKey key = it.next();
-
-						if(key.isAcceptable())
-						{
-							acceptClient(selector, key);
-						}
-						else if(key.isReadable())
-						{
-							receiveData(key);
-						}
-						else if(key.isWritable())
-						{
-							sendReply(key);
-						}
-					}
-					keys.clear();
-				}
+			for(int i = 0; i < reactors.length; ++i)
+			{
+				reactors[i] = new Reactor(this);
+				reactorThreads[i] = new Thread(reactors[i], "reactor-" + i);
+				reactorThreads[i].start();
+			}
+			Thread acceptor = new Thread(() -> acceptClients(acceptSelector, reactors), "acceptor");
+			acceptor.start();
+			logger.info("Server: {} reactors serve connections", reactors.length);
 
-				addToQueueTimedOutJobs();
+			while(!shouldStop)
+			{
+				Thread.sleep(EXPIRY_TICK);
+				expireClients();
+				saveCheckpoint();
 			}
+			acceptSelector.wakeup();
+			acceptor.join();
 		}
 		catch(Exception e)
 		{
 			e.printStackTrace();
 		}
+		stopReactors(reactors, reactorThreads);
+		if(checkpoint != null)
+		{
+			long[] ranges = getOutstandingRanges();
+			checkpoint.close(getCheckpointID(), ranges, getCrackedHashes());
+		}
+		if(!allHashesCracked() && rangesToCrack.isEmpty())
+		{
+			SearchSpace nextPart = searchSpace.getNextPart();
+			System.out.println("All strings of " + searchSpace + " are checked" +
+			                   (nextPart == null ? "" : ", the next part is " + nextPart));
+		}
+		metrics.stop();
 		clients.clear();
 		rangesToCrack.clear();
 	}
 
-	private void acceptClient(Selector selector, SelectionKey key)
+	/**
+	 * Accepts clients and passes them to reactors in turn, until server stops.
+	 *
+	 * @param acceptSelector - selector of listening channels
+	 * @param reactors       - reactors
+	 */
+	private void acceptClients(Selector acceptSelector, Reactor[] reactors)
 	{
-		ServerSocketChannel acceptor = (ServerSocketChannel) key.channel();
-		try
+		int nextReactor = 0;
+		while(!shouldStop)
 		{
-			SocketChannel client = acceptor.accept();
-			client.configureBlocking(false);
-			client.register(selector, SelectionKey.OP_READ, new ServerSideSessionHandler());
+			try
+			{
+				acceptSelector.select();
+				Iterator<SelectionKey> it = acceptSelector.selectedKeys().iterator();
+				while(it.hasNext())
+				{
+					SelectionKey key = it.next();
+					it.remove();
+					SocketChannel client = ((ServerSocketChannel) key.channel()).accept();
+					if(client == null)
+					{
+						continue;
+					}
+					client.configureBlocking(false);
+					reactors[nextReactor].register(client, key.attachment() == SESSION_ACCEPTOR);
+					nextReactor = (nextReactor + 1) % reactors.length;
+				}
+			}
+			catch(Exception e)
+			{
+				e.printStackTrace();
+			}
 		}
-		catch(Exception e)
+	}
+
+	private void stopReactors(Reactor[] reactors, Thread[] reactorThreads)
+	{
+		for(int i = 0; i < reactors.length; ++i)
 		{
-			e.printStackTrace();
+			if(reactors[i] != null)
+			{
+				reactors[i].stop();
+			}
+		}
+		for(Thread thread : reactorThreads)
+		{
+			try
+			{
+				if(thread != null)
+				{
+					thread.join();
+				}
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
 		}
 	}
 
-	private void receiveData(SelectionKey key)
+	void receiveData(SelectionKey key)
 	{
 		SocketChannel channel = (SocketChannel) key.channel();
 		ServerSideSessionHandler sessionHandler = (ServerSideSessionHandler) key.attachment();
@@ -135,20 +354,31 @@ public class Server implements CommonData
 				long crackedStringIdx = sessionHandler.getCrackedStringIdx();
 				if(crackedStringIdx != HASH_NOT_CRACKED)
 				{
-					CandidateStringBuilder.Candidate candidate = CandidateStringBuilder.getByIndex(crackedStringIdx);
-					crackedString = Arrays.copyOf(candidate.data, candidate.length);
-					System.out.println("Hash was successfully cracked: " + new String(crackedString));
-					rangesToCrack.clear();
+					if(!isInSearchSpace(crackedStringIdx))
+					{
+						throw new IOException("Invalid string index " + crackedStringIdx);
+					}
+					hashCracked(0, crackedStringIdx);
 				}
 
-				Range nextRange = getRangePart();
+				// One-shot protocol carries only one hash and knows only default search space.
+				boolean canCrack = (hashesToCrack.length == 1 && searchSpace.equals(SearchSpace.DEFAULT));
+				Range nextRange = withClientHandler(sessionHandler.getClientID(), clientHandler ->
+				{
+					completeRange(clientHandler, null);
+					return (canCrack ? getRangeFor(clientHandler) : null);
+				});
 				if(crackedStringIdx == HASH_NOT_CRACKED && nextRange != null)
 				{
-					sessionHandler.setDataToSend(nextRange, hashToCrack);
+					sessionHandler.setDataToSend(nextRange, hashesToCrack[0]);
 				}
 				else
 				{
-					sessionHandler.setDataToSend(new Range(NO_JOB_TO_DO, NO_JOB_TO_DO), hashToCrack);
+					if(nextRange != null)
+					{
+						returnRange(nextRange);
+					}
+					sessionHandler.setDataToSend(new Range(NO_JOB_TO_DO, NO_JOB_TO_DO), hashesToCrack[0]);
 				}
 
 				key.interestOps(SelectionKey.OP_WRITE);
@@ -162,7 +392,7 @@ public class Server implements CommonData
 		}
 	}
 
-	private void sendReply(SelectionKey key)
+	void sendReply(SelectionKey key)
 	{
 		SocketChannel channel = (SocketChannel) key.channel();
 		ServerSideSessionHandler sessionHandler = (ServerSideSessionHandler) key.attachment();
@@ -183,34 +413,400 @@ public class Server implements CommonData
 		{
 			channel.close();
 			UUID clientID = sessionHandler.getClientID();
-			ClientHandler clientHandler = clients.get(clientID);
+			Range range = sessionHandler.getRange();
+			withClientHandler(clientID, clientHandler ->
+			{
+				if(range.start == NO_JOB_TO_DO)
+				{
+					clientHandler.lastSeenTime = System.currentTimeMillis();
+				}
+				else
+				{
+					clientHandler.jobStarted(range, System.currentTimeMillis());
+				}
+				return null;
+			});
+			if(range.start != NO_JOB_TO_DO)
+			{
+				logger.info("Server: commanded to client {} to try strings from #{} to #{}",
+						clientID.toString(),
+						range.start,
+						range.end);
+			}
+		}
+	}
 
-			if(clientHandler == null)
+	void handleSession(SelectionKey key)
+	{
+		ServerSideSession session = (ServerSideSession) key.attachment();
+		try
+		{
+			if(key.isReadable())
+			{
+				session.receive();
+			}
+			else if(key.isWritable())
 			{
-				clientHandler = new ClientHandler(clientID);
-				clients.put(clientID, clientHandler);
+				session.flush();
 			}
-			clientHandler.stringRange = sessionHandler.getRange();
+		}
+		catch(IOException e)
+		{
+			logger.info("Server: session of client {} is closed: {}", session.getClientID(), e.getMessage());
+			sessionClosed(session);
+		}
+	}
+
+	/**
+	 * Closes connection, which failed with unexpected exception, and takes its ranges back.
+	 *
+	 * @param key - key of connection
+	 * @param e   - exception
+	 */
+	void connectionFailed(SelectionKey key, RuntimeException e)
+	{
+		logger.info("Server: connection failed: {}", e.toString());
+		e.printStackTrace();
+		key.cancel();
+		if(key.attachment() instanceof ServerSideSession)
+		{
+			sessionClosed((ServerSideSession) key.attachment());
+		}
+		else
+		{
+			handleTransmissionError((SocketChannel) key.channel(), (ServerSideSessionHandler) key.attachment());
+		}
+	}
+
+	void sessionStarted(ServerSideSession session)
+	{
+		withClientHandler(session.getClientID(), clientHandler ->
+		{
+			if(clientHandler.session != null && clientHandler.session != session)
+			{
+				clientHandler.session.close();
+			}
+			// Ranges of previous connection are either reported by client again or lost.
+			returnRanges(clientHandler);
+			clientHandler.session = session;
 			clientHandler.lastSeenTime = System.currentTimeMillis();
+			return null;
+		});
+		session.sendSearchSpace(searchSpace);
+		session.sendHashList(rawHashesToCrack);
+		logger.info("Server: client {} started session", session.getClientID().toString());
+	}
 
+	void sessionJobRequested(ServerSideSession session)
+	{
+		Range nextRange = withClientHandler(session.getClientID(), clientHandler ->
+		{
+			Range range = getRangeFor(clientHandler);
+			if(range != null)
+			{
+				clientHandler.jobStarted(range, System.currentTimeMillis());
+			}
+			return range;
+		});
+		session.sendJob(nextRange);
+		if(nextRange != null)
+		{
 			logger.info("Server: commanded to client {} to try strings from #{} to #{}",
-					clientID.toString(),
-					clientHandler.stringRange.start,
-					clientHandler.stringRange.end);
+					session.getClientID().toString(),
+					nextRange.start,
+					nextRange.end);
+		}
+	}
+
+	void sessionResultReported(ServerSideSession session, Range range)
+	{
+		withClientHandler(session.getClientID(), clientHandler ->
+		{
+			completeRange(clientHandler, range);
+			return null;
+		});
+	}
 
+	void sessionHashCracked(ServerSideSession session, int hashIdx, long stringIdx) throws IOException
+	{
+		if(hashIdx < 0 || hashIdx >= hashesToCrack.length)
+		{
+			throw new IOException("Invalid hash index " + hashIdx);
+		}
+		if(!isInSearchSpace(stringIdx))
+		{
+			throw new IOException("Invalid string index " + stringIdx);
 		}
+		hashCracked(hashIdx, stringIdx);
 	}
 
-	private Range getRangePart()
+	void sessionHeartbeat(ServerSideSession session)
 	{
-		Range range = rangesToCrack.pollFirst();
-		if(range == null || range.getLength() <= maxRangeToCrack)
+		withClientHandler(session.getClientID(), clientHandler ->
 		{
-			return range;
+			clientHandler.lastSeenTime = System.currentTimeMillis();
+			return null;
+		});
+	}
+
+	private void sessionClosed(ServerSideSession session)
+	{
+		session.close();
+		UUID clientID = session.getClientID();
+		ClientHandler clientHandler = (clientID == null ? null : clients.get(clientID));
+		if(clientHandler != null)
+		{
+			synchronized(clientHandler)
+			{
+				if(clientHandler.session == session)
+				{
+					removeClient(clientHandler);
+				}
+			}
+		}
+	}
+
+	private void completeRange(ClientHandler clientHandler, Range range)
+	{
+		Range completed = clientHandler.jobCompleted(range, System.currentTimeMillis());
+		metrics.setClientRate(clientHandler.clientID, clientHandler.throughput);
+		if(completed != null && rangesToCrack.complete(completed))
+		{
+			metrics.rangeCompleted(completed.getLength());
+			metrics.setCompletedPercent(rangesToCrack.getCompletedPercent());
+			logger.info("Server: {}% of strings are checked", String.format("%.4f", rangesToCrack.getCompletedPercent()));
+		}
+	}
+
+	private synchronized void hashCracked(int hashIdx, long stringIdx)
+	{
+		if(crackedStrings[hashIdx] != null)
+		{
+			return;
+		}
+		CandidateStringBuilder.Candidate candidate = CandidateStringBuilder.getByIndex(searchSpace, stringIdx);
+		crackedStrings[hashIdx] = Arrays.copyOf(candidate.data, candidate.length);
+		crackedStringIndices[hashIdx] = stringIdx;
+		++crackedCount;
+		metrics.hashCracked();
+		if(hashesToCrack.length == 1)
+		{
+			System.out.println("Hash was successfully cracked: " + new String(crackedStrings[hashIdx], CHARSET));
+		}
+		else
+		{
+			System.out.println("Hash #" + hashIdx + " " + new String(hashesToCrack[hashIdx], CHARSET) +
+			                   " was successfully cracked: " + new String(crackedStrings[hashIdx], CHARSET));
+		}
+
+		if(allHashesCracked())
+		{
+			rangesToCrack.clear();
+		}
+	}
+
+	/**
+	 * Looks up all hashes in table and excludes strings, covered by table, from ranges to crack.
+	 *
+	 * @param lookupTable - table
+	 */
+	private void crackByLookupTable(LookupTable lookupTable)
+	{
+		for(int i = 0; i < rawHashesToCrack.length; ++i)
+		{
+			long stringIdx = lookupTable.find(rawHashesToCrack[i]);
+			if(stringIdx != HASH_NOT_CRACKED)
+			{
+				hashCracked(i, stringIdx);
+			}
+		}
+		if(!allHashesCracked())
+		{
+			rangesToCrack.completeFree(lookupTable.getCoveredRange());
+			metrics.setCompletedPercent(rangesToCrack.getCompletedPercent());
+			logger.info("Server: strings from #0 to #{} are checked by lookup table", lookupTable.getCoveredRange().end);
+		}
+	}
+
+	/**
+	 * Marks hashes, cracked before restart, as cracked again.
+	 *
+	 * @param crackedHashes - hash indices and string indices of answers, one after another
+	 */
+	private void restoreCrackedHashes(long[] crackedHashes)
+	{
+		for(int i = 0; i < crackedHashes.length; i += 2)
+		{
+			long hashIdx = crackedHashes[i];
+			long stringIdx = crackedHashes[i + 1];
+			if(hashIdx < 0 || hashIdx >= hashesToCrack.length || !isInSearchSpace(stringIdx))
+			{
+				logger.info("Server: invalid cracked hash #{} in checkpoint is ignored", hashIdx);
+				continue;
+			}
+			hashCracked((int) hashIdx, stringIdx);
 		}
-		Range leftover = new Range(range.start + maxRangeToCrack, range.end);
-		rangesToCrack.offerFirst(leftover);
-		return new Range(range.start, range.start + maxRangeToCrack - 1);
+	}
+
+	/**
+	 * @return hash indices and string indices of answers, one after another
+	 */
+	private synchronized long[] getCrackedHashes()
+	{
+		long[] crackedHashes = new long[2 * crackedCount];
+		int count = 0;
+		for(int i = 0; i < crackedStringIndices.length; ++i)
+		{
+			if(crackedStringIndices[i] != HASH_NOT_CRACKED)
+			{
+				crackedHashes[count++] = i;
+				crackedHashes[count++] = crackedStringIndices[i];
+			}
+		}
+		return crackedHashes;
+	}
+
+	private boolean isInSearchSpace(long stringIdx)
+	{
+		return stringIdx >= 0 && stringIdx <= searchSpace.getMaxIndex();
+	}
+
+	private boolean allHashesCracked()
+	{
+		return crackedCount == hashesToCrack.length;
+	}
+
+	/**
+	 * @return bytes, identifying set of hashes in checkpoint
+	 */
+	private byte[] getCheckpointID()
+	{
+		// Ranges are meaningful only for the same hashes and the same search space.
+		byte[] spaceID = searchSpace.toString().getBytes(CHARSET);
+		byte[] checkpointID = new byte[hashesToCrack.length * HASH_LENGTH + spaceID.length];
+		for(int i = 0; i < hashesToCrack.length; ++i)
+		{
+			System.arraycopy(hashesToCrack[i], 0, checkpointID, i * HASH_LENGTH, HASH_LENGTH);
+		}
+		System.arraycopy(spaceID, 0, checkpointID, hashesToCrack.length * HASH_LENGTH, spaceID.length);
+		return checkpointID;
+	}
+
+	/**
+	 * Takes next range for client, sized after client's throughput.
+	 * When there are no free ranges, client gets copy of the oldest range in flight,
+	 * so that straggling client doesn't delay the end.
+	 *
+	 * @param clientHandler - client, that will get the range
+	 * @return range or null if there is nothing to crack
+	 */
+	private Range getRangeFor(ClientHandler clientHandler)
+	{
+		long rangeLength = clientHandler.getNextRangeLength(
+				TARGET_JOB_TIME, DEFAULT_RANGE_TO_CRACK, MIN_RANGE_TO_CRACK, MAX_RANGE_TO_CRACK);
+		if(clientHandler.throughput != 0)
+		{
+			logger.info("Server: client {} checks {} strings/sec, next range length is {}",
+					clientHandler.clientID.toString(),
+					(long) (clientHandler.throughput * 1000),
+					rangeLength);
+		}
+		Range range = rangesToCrack.take(rangeLength);
+		if(range == null && !allHashesCracked())
+		{
+			range = rangesToCrack.takeCopy(clientHandler.stringRanges);
+			if(range != null)
+			{
+				metrics.rangeCopied();
+				logger.info("Server: no free ranges, client {} gets copy of range in flight",
+						clientHandler.clientID.toString());
+			}
+		}
+		return range;
+	}
+
+	/**
+	 * Puts all ranges of client back to queue.
+	 *
+	 * @param clientHandler - client, whose ranges won't be checked
+	 */
+	private void returnRanges(ClientHandler clientHandler)
+	{
+		Range range;
+		while((range = clientHandler.stringRanges.pollLast()) != null)
+		{
+			returnRange(range);
+		}
+	}
+
+	private void returnRange(Range range)
+	{
+		if(!allHashesCracked())
+		{
+			rangesToCrack.release(range);
+		}
+	}
+
+	private void saveCheckpoint()
+	{
+		long currentTime = System.currentTimeMillis();
+		if(checkpoint != null && currentTime >= nextCheckpointTime)
+		{
+			// Client reports found string before its range, so answers from every completed range
+			// are taken, if ranges are taken first.
+			long[] ranges = getOutstandingRanges();
+			if(checkpoint.save(getCheckpointID(), ranges, getCrackedHashes()))
+			{
+				nextCheckpointTime = currentTime + CHECKPOINT_PERIOD;
+			}
+		}
+	}
+
+	private long[] getOutstandingRanges()
+	{
+		return (allHashesCracked() ? new long[0] : rangesToCrack.getUncompletedRanges());
+	}
+
+	/**
+	 * Runs action under lock of client handler, creating handler if needed.
+	 * Handler, removed by another thread meanwhile, is replaced by new one.
+	 *
+	 * @param clientID - client
+	 * @param action   - action
+	 * @return result of action
+	 */
+	private <T> T withClientHandler(UUID clientID, Function<ClientHandler, T> action)
+	{
+		while(true)
+		{
+			ClientHandler clientHandler = clients.computeIfAbsent(clientID, id ->
+			{
+				metrics.setClientRate(id, 0);
+				ClientHandler newHandler = new ClientHandler(id);
+				clientTimers.schedule(newHandler, System.currentTimeMillis() + JOB_TIMEOUT);
+				return newHandler;
+			});
+			synchronized(clientHandler)
+			{
+				if(!clientHandler.removed)
+				{
+					return action.apply(clientHandler);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns all ranges of client and forgets it. Should be called under lock of client handler.
+	 *
+	 * @param clientHandler - client
+	 */
+	private void removeClient(ClientHandler clientHandler)
+	{
+		returnRanges(clientHandler);
+		clientHandler.removed = true;
+		clients.remove(clientHandler.clientID, clientHandler);
+		metrics.clientRemoved(clientHandler.clientID);
 	}
 
 	private void handleTransmissionError(SocketChannel channel, ServerSideSessionHandler sessionHandler)
@@ -218,7 +814,7 @@ public class Server implements CommonData
 		Range range = sessionHandler.getRange();
 		if(range != null)
 		{
-			rangesToCrack.offerFirst(range);
+			returnRange(range);
 		}
 		try
 		{
@@ -230,33 +826,40 @@ public class Server implements CommonData
 		}
 	}
 
-	private void addToQueueTimedOutJobs()
+	/**
+	 * Takes ranges back from clients, which were silent for <code>JOB_TIMEOUT</code>.
+	 * Every client is looked at only when its timer expires, then timer is set again after its last message.
+	 * Server stops, when there are neither clients nor ranges to crack.
+	 */
+	private void expireClients()
 	{
-		boolean allClientsTimeOutJobs = true;
 		long currentTime = System.currentTimeMillis();
-		Iterator<Map.Entry<UUID, ClientHandler>> it = clients.entrySet().iterator();
-		while(it.hasNext())
+		for(ClientHandler handler : clientTimers.advance(currentTime))
 		{
-			Map.Entry<UUID, ClientHandler> client = it.next();
-			ClientHandler handler = client.getValue();
-			long lastSeenTime = handler.lastSeenTime;
-			if(lastSeenTime + JOB_TIMEOUT < currentTime)
+			synchronized(handler)
 			{
-				Range range = handler.stringRange;
-				if(range != null)
+				if(handler.removed)
 				{
-					rangesToCrack.offerFirst(range);
-					handler.stringRange = null;
+					continue;
+				}
+				long deadline = handler.lastSeenTime + JOB_TIMEOUT;
+				if(deadline < currentTime)
+				{
+					metrics.rangesReassigned(handler.stringRanges.size());
+					if(handler.session != null)
+					{
+						handler.session.close();
+					}
+					removeClient(handler);
+				}
+				else
+				{
+					clientTimers.schedule(handler, deadline);
 				}
-				it.remove();
-			}
-			else
-			{
-				allClientsTimeOutJobs = false;
 			}
 		}
 
-		if(allClientsTimeOutJobs && rangesToCrack.isEmpty())
+		if(clients.isEmpty() && rangesToCrack.isEmpty())
 		{
 			shouldStop = true;
 		}
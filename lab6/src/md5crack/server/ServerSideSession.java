@@ -0,0 +1,161 @@
+package md5crack.server;
+
+import md5crack.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.util.UUID;
+
+/**
+ * Long-lived client session. Client says hello once and gets search space and list of hashes,
+ * then may request several ranges in advance and report results on the same connection.
+ */
+class ServerSideSession implements FrameListener, SessionProtocol, CommonData
+{
+	private Server server;
+	private FramedConnection connection;
+	private SelectionKey key;
+	private UUID clientID = null;
+
+	public ServerSideSession(Server server, FramedConnection connection)
+	{
+		this.server = server;
+		this.connection = connection;
+	}
+
+	public void setKey(SelectionKey key)
+	{
+		this.key = key;
+	}
+
+	public UUID getClientID()
+	{
+		return clientID;
+	}
+
+	public void receive() throws IOException
+	{
+		if(!connection.receive(this))
+		{
+			throw new IOException("Session closed by client " + clientID);
+		}
+		flush();
+	}
+
+	public void flush() throws IOException
+	{
+		if(connection.flush())
+		{
+			key.interestOps(SelectionKey.OP_READ);
+		}
+		else
+		{
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+	}
+
+	public void sendSearchSpace(SearchSpace space)
+	{
+		byte[] alphabet = space.getAlphabet();
+		byte[] part = space.getPart().toByteArray();
+		ByteBuffer payload = connection.startFrame(FRAME_SEARCH_SPACE, 2 * SIZEOF_INT + alphabet.length + part.length);
+		payload.putInt(space.getMaxLength());
+		payload.putInt(alphabet.length);
+		payload.put(alphabet);
+		payload.put(part);
+	}
+
+	public void sendHashList(byte[][] rawHashes)
+	{
+		ByteBuffer payload = connection.startFrame(FRAME_HASH_LIST, SIZEOF_INT + rawHashes.length * DIGEST_LENGTH);
+		payload.putInt(rawHashes.length);
+		for(byte[] hash : rawHashes)
+		{
+			payload.put(hash);
+		}
+	}
+
+	public void sendJob(Range range)
+	{
+		ByteBuffer payload = connection.startFrame(FRAME_JOB, 2 * SIZEOF_LONG);
+		if(range == null)
+		{
+			payload.putLong(NO_JOB_TO_DO);
+			payload.putLong(NO_JOB_TO_DO);
+		}
+		else
+		{
+			payload.putLong(range.start);
+			payload.putLong(range.end);
+		}
+	}
+
+	public void close()
+	{
+		try
+		{
+			connection.close();
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public void frameReceived(byte type, ByteBuffer payload) throws IOException
+	{
+		if(clientID == null && type != FRAME_HELLO)
+		{
+			throw new IOException("Session should start with hello");
+		}
+		if(payload.remaining() != getPayloadLength(type))
+		{
+			throw new IOException("Invalid payload length " + payload.remaining() + " of frame type " + type);
+		}
+		switch(type)
+		{
+			case FRAME_HELLO:
+				clientID = new UUID(payload.getLong(), payload.getLong());
+				server.sessionStarted(this);
+				break;
+			case FRAME_JOB_REQUEST:
+				server.sessionJobRequested(this);
+				break;
+			case FRAME_RESULT:
+				server.sessionResultReported(this, new Range(payload.getLong(), payload.getLong()));
+				break;
+			case FRAME_FOUND:
+				server.sessionHashCracked(this, payload.getInt(), payload.getLong());
+				break;
+			case FRAME_HEARTBEAT:
+				server.sessionHeartbeat(this);
+				break;
+			default:
+				throw new IOException("Unknown frame type " + type);
+		}
+	}
+
+	/**
+	 * @param type - type of frame from client
+	 * @return payload length of frame
+	 * @throws IOException if frame type is unknown
+	 */
+	private static int getPayloadLength(byte type) throws IOException
+	{
+		switch(type)
+		{
+			case FRAME_HELLO:
+			case FRAME_RESULT:
+				return 2 * SIZEOF_LONG;
+			case FRAME_FOUND:
+				return SIZEOF_INT + SIZEOF_LONG;
+			case FRAME_JOB_REQUEST:
+			case FRAME_HEARTBEAT:
+				return 0;
+			default:
+				throw new IOException("Unknown frame type " + type);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package md5crack.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashed timer wheel: items are put into slots by deadline, and every tick only one slot is looked through.
+ * Deadlines beyond one turn of wheel stay in their slot until the right turn comes.
+ *
+ * @param <T> - type of items
+ */
+class TimerWheel<T>
+{
+	private long tickLength;
+	private List<List<Timer<T>>> slots;
+	// The first tick, that is not processed yet.
+	private long currentTick;
+
+	/**
+	 * @param tickLength - tick length in milliseconds, precision of deadlines
+	 * @param slotCount  - count of slots
+	 * @param now        - current time
+	 */
+	public TimerWheel(long tickLength, int slotCount, long now)
+	{
+		this.tickLength = tickLength;
+		this.slots = new ArrayList<>(slotCount);
+		for(int i = 0; i < slotCount; ++i)
+		{
+			slots.add(new ArrayList<>());
+		}
+		this.currentTick = now / tickLength;
+	}
+
+	/**
+	 * @param item     - item
+	 * @param deadline - time, after which <code>advance</code> returns item
+	 */
+	public synchronized void schedule(T item, long deadline)
+	{
+		long tick = Math.max(deadline / tickLength + 1, currentTick);
+		slots.get((int) (tick % slots.size())).add(new Timer<>(item, tick));
+	}
+
+	/**
+	 * Processes all ticks up to current time.
+	 *
+	 * @param now - current time
+	 * @return items, whose deadline has passed
+	 */
+	public synchronized List<T> advance(long now)
+	{
+		List<T> expired = new ArrayList<>();
+		long lastTick = now / tickLength;
+		for(; currentTick <= lastTick; ++currentTick)
+		{
+			List<Timer<T>> slot = slots.get((int) (currentTick % slots.size()));
+			int kept = 0;
+			for(Timer<T> timer : slot)
+			{
+				if(timer.tick <= currentTick)
+				{
+					expired.add(timer.item);
+				}
+				else
+				{
+					slot.set(kept++, timer);
+				}
+			}
+			slot.subList(kept, slot.size()).clear();
+		}
+		return expired;
+	}
+
+	private static class Timer<T>
+	{
+		T item;
+		long tick;
+
+		Timer(T item, long tick)
+		{
+			this.item = item;
+			this.tick = tick;
+		}
+	}
+}
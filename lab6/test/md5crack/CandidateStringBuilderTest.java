@@ -0,0 +1,61 @@
+package md5crack;
+
+import java.util.Arrays;
+
+/**
+ * Checks, that <code>CandidateStringBuilder</code> gives strings with the same indices as <code>getByIndex</code>,
+ * across length changes and up to the end of search space.
+ * <p>
+ * Run without arguments; exits with <code>AssertionError</code> on the first mismatch.
+ * </p>
+ */
+public class CandidateStringBuilderTest
+{
+	public static void main(String[] args)
+	{
+		SearchSpace[] spaces = {
+				new SearchSpace("ACGT".getBytes(CommonData.CHARSET), 7),
+				new SearchSpace("ab".getBytes(CommonData.CHARSET), 10),
+				new SearchSpace("x".getBytes(CommonData.CHARSET), 20),
+		};
+		for(SearchSpace space : spaces)
+		{
+			// From the start, from the middle of some length and from the last string.
+			long[] startIndices = {0, space.getFirstIndex(space.getMaxLength() - 1) + 1, space.getMaxIndex()};
+			for(long startIdx : startIndices)
+			{
+				checkFrom(space, startIdx);
+			}
+		}
+		System.out.println("CandidateStringBuilderTest: OK");
+	}
+
+	private static void checkFrom(SearchSpace space, long startIdx)
+	{
+		CandidateStringBuilder builder = new CandidateStringBuilder(space, startIdx);
+		for(long idx = startIdx; idx <= space.getMaxIndex(); ++idx)
+		{
+			CandidateStringBuilder.Candidate candidate = builder.getNextCandidate();
+			check(candidate != null, space, idx, "no candidate before the end of space");
+			check(candidate.index == idx, space, idx, "wrong index " + candidate.index);
+			checkString(space, idx, candidate.data, candidate.length);
+		}
+		check(builder.getNextCandidate() == null, space, space.getMaxIndex() + 1, "candidate after the end of space");
+	}
+
+	private static void checkString(SearchSpace space, long idx, byte[] data, int length)
+	{
+		CandidateStringBuilder.Candidate expected = CandidateStringBuilder.getByIndex(space, idx);
+		check(length == expected.length && Arrays.equals(Arrays.copyOf(data, length),
+				Arrays.copyOf(expected.data, expected.length)), space, idx,
+				"got " + new String(data, 0, length, CommonData.CHARSET));
+	}
+
+	private static void check(boolean condition, SearchSpace space, long idx, String message)
+	{
+		if(!condition)
+		{
+			throw new AssertionError(space + ", index " + idx + ": " + message);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package md5crack;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks, that <code>Md5Kernel</code> gives the same hashes as <code>MessageDigest</code>:
+ * for every ACGT string of length up to 8 in index order, as client checks them,
+ * and for random messages of every length up to <code>MAX_MESSAGE_LENGTH</code>.
+ * <p>
+ * Run without arguments; exits with <code>AssertionError</code> on the first mismatch.
+ * </p>
+ */
+public class Md5KernelTest implements CommonData
+{
+	private static final int FULL_CHECK_LENGTH = 8;
+	private static final int RANDOM_MESSAGES_PER_LENGTH = 2000;
+
+	public static void main(String[] args) throws NoSuchAlgorithmException
+	{
+		MessageDigest md = MessageDigest.getInstance(HASH_TYPE);
+		checkWholeSpace(md);
+		checkRandomMessages(md);
+		System.out.println("Md5KernelTest: OK");
+	}
+
+	/**
+	 * Every string is hashed right after the previous one, so that rewriting of changed bytes is checked too.
+	 * Builder must stop after the last string.
+	 */
+	private static void checkWholeSpace(MessageDigest md)
+	{
+		SearchSpace space = new SearchSpace(ALPHABET, FULL_CHECK_LENGTH);
+		Md5Kernel kernel = new Md5Kernel();
+		CandidateStringBuilder builder = new CandidateStringBuilder(space, 0);
+		byte[] hash = new byte[DIGEST_LENGTH];
+		byte[] previousExpected = md.digest(new byte[0]);
+		for(long idx = 0; idx <= space.getMaxIndex(); ++idx)
+		{
+			CandidateStringBuilder.Candidate candidate = builder.getNextCandidate();
+			byte[] message = Arrays.copyOf(candidate.data, candidate.length);
+			byte[] expected = md.digest(message);
+
+			kernel.digest(candidate.data, candidate.length, hash, 0);
+			check(Arrays.equals(hash, expected), "digest", message);
+
+			kernel.setTarget(expected);
+			check(kernel.matches(candidate.data, candidate.length), "match of own hash", message);
+			if(idx != 0)
+			{
+				kernel.setTarget(previousExpected);
+				check(!kernel.matches(candidate.data, candidate.length), "match of previous hash", message);
+			}
+			previousExpected = expected;
+		}
+		check(builder.getNextCandidate() == null, "candidate after the last string", new byte[0]);
+		System.out.println("Md5KernelTest: " + (space.getMaxIndex() + 1) + " strings of " + space + " are hashed equally");
+	}
+
+	/**
+	 * Lengths longer than 35 bytes are compared without early stop, so all lengths are covered.
+	 */
+	private static void checkRandomMessages(MessageDigest md)
+	{
+		Random random = new Random(1);
+		Md5Kernel kernel = new Md5Kernel();
+		byte[] hash = new byte[DIGEST_LENGTH];
+		byte[] data = new byte[Md5Kernel.MAX_MESSAGE_LENGTH];
+		for(int i = 0; i < RANDOM_MESSAGES_PER_LENGTH; ++i)
+		{
+			for(int length = 0; length <= Md5Kernel.MAX_MESSAGE_LENGTH; ++length)
+			{
+				random.nextBytes(data);
+				byte[] message = Arrays.copyOf(data, length);
+				byte[] expected = md.digest(message);
+
+				kernel.digest(data, length, hash, 0);
+				check(Arrays.equals(hash, expected), "digest", message);
+
+				kernel.setTarget(expected);
+				check(kernel.matches(data, length), "match of own hash", message);
+				expected[random.nextInt(DIGEST_LENGTH)] ^= 1 << random.nextInt(8);
+				kernel.setTarget(expected);
+				check(!kernel.matches(data, length), "match of changed hash", message);
+			}
+		}
+		System.out.println("Md5KernelTest: " + RANDOM_MESSAGES_PER_LENGTH + " random messages of every length up to " +
+		                   Md5Kernel.MAX_MESSAGE_LENGTH + " are hashed equally");
+	}
+
+	private static void check(boolean condition, String what, byte[] message)
+	{
+		if(!condition)
+		{
+			throw new AssertionError("Wrong " + what + " for message " + Arrays.toString(message));
+		}
+	}
+}
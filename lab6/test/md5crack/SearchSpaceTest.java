@@ -0,0 +1,132 @@
+package md5crack;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Checks, that parts of search space join into the whole space: strings near part boundaries
+ * are compared with strings, computed directly from index in the whole space,
+ * and builder doesn't cross the end of part.
+ * Spaces with count of strings above and below the range of long are checked.
+ * <p>
+ * Run without arguments; exits with <code>AssertionError</code> on the first mismatch.
+ * </p>
+ */
+public class SearchSpaceTest
+{
+	private static final int STRINGS_AT_BOUNDARY = 1000;
+
+	public static void main(String[] args)
+	{
+		// About 1.2 * 2^72 strings, more than long holds.
+		checkSpace("0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ_-", 12);
+		// Between 2^62 and 2^63 strings: two parts, indices still fit into long.
+		checkSpace("abcdef", 24);
+		checkParse();
+		System.out.println("SearchSpaceTest: OK");
+	}
+
+	private static void checkSpace(String alphabet, int maxLength)
+	{
+		SearchSpace first = new SearchSpace(alphabet.getBytes(CommonData.CHARSET), maxLength);
+		BigInteger count = getCount(alphabet.length(), maxLength);
+		BigInteger partSize = BigInteger.valueOf(SearchSpace.PART_SIZE);
+		BigInteger lastPart = count.subtract(BigInteger.ONE).divide(partSize);
+
+		BigInteger[] parts = {BigInteger.ZERO, BigInteger.ONE, lastPart};
+		for(BigInteger part : parts)
+		{
+			SearchSpace space = new SearchSpace(first.getAlphabet(), maxLength, part);
+			BigInteger partStart = part.multiply(partSize);
+			BigInteger expectedMaxIndex = count.subtract(partStart).min(partSize).subtract(BigInteger.ONE);
+			check(BigInteger.valueOf(space.getMaxIndex()).equals(expectedMaxIndex), space, "max index " + space.getMaxIndex());
+
+			checkStrings(space, partStart, 0);
+			checkStrings(space, partStart, space.getMaxIndex() - STRINGS_AT_BOUNDARY + 1);
+			check((space.getNextPart() == null) == part.equals(lastPart), space, "next part " + space.getNextPart());
+		}
+
+		try
+		{
+			new SearchSpace(first.getAlphabet(), maxLength, lastPart.add(BigInteger.ONE));
+			check(false, first, "part after the last one is accepted");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Expected.
+		}
+		System.out.println("SearchSpaceTest: " + (lastPart.add(BigInteger.ONE)) + " parts of " + first + " are joined");
+	}
+
+	/**
+	 * Runs builder from given index to the end of part and compares every string with direct computation.
+	 */
+	private static void checkStrings(SearchSpace space, BigInteger partStart, long startIdx)
+	{
+		CandidateStringBuilder builder = new CandidateStringBuilder(space, startIdx);
+		for(long idx = startIdx; idx < startIdx + STRINGS_AT_BOUNDARY && idx <= space.getMaxIndex(); ++idx)
+		{
+			CandidateStringBuilder.Candidate candidate = builder.getNextCandidate();
+			byte[] expected = getString(space.getAlphabet(), partStart.add(BigInteger.valueOf(idx)));
+			check(candidate != null && Arrays.equals(Arrays.copyOf(candidate.data, candidate.length), expected),
+					space, "string #" + idx);
+		}
+		if(startIdx + STRINGS_AT_BOUNDARY > space.getMaxIndex())
+		{
+			check(builder.getNextCandidate() == null, space, "candidate after the end of part");
+		}
+	}
+
+	private static void checkParse()
+	{
+		String[] specs = {"ACGT:15", "abc:50/3"};
+		for(String spec : specs)
+		{
+			check(SearchSpace.parse(spec).toString().equals(spec), SearchSpace.parse(spec), "parsed from " + spec);
+		}
+		check(SearchSpace.parse("ACGT:15/0").equals(SearchSpace.DEFAULT), SearchSpace.DEFAULT, "part 0 differs");
+		check(!SearchSpace.parse("abc:50/3").equals(SearchSpace.parse("abc:50/4")), SearchSpace.DEFAULT, "parts are equal");
+	}
+
+	private static BigInteger getCount(int alphabetSize, int maxLength)
+	{
+		BigInteger count = BigInteger.ZERO;
+		for(int length = 0; length <= maxLength; ++length)
+		{
+			count = count.add(BigInteger.valueOf(alphabetSize).pow(length));
+		}
+		return count;
+	}
+
+	/**
+	 * @return string with given index in the whole space, computed without <code>SearchSpace</code>
+	 */
+	private static byte[] getString(byte[] alphabet, BigInteger index)
+	{
+		BigInteger alphabetSize = BigInteger.valueOf(alphabet.length);
+		BigInteger offset = index;
+		int length = 0;
+		BigInteger stringsForLength = BigInteger.ONE;
+		while(offset.compareTo(stringsForLength) >= 0)
+		{
+			offset = offset.subtract(stringsForLength);
+			stringsForLength = stringsForLength.multiply(alphabetSize);
+			++length;
+		}
+		byte[] data = new byte[length];
+		for(int i = length - 1; i >= 0; --i)
+		{
+			data[i] = alphabet[offset.mod(alphabetSize).intValue()];
+			offset = offset.divide(alphabetSize);
+		}
+		return data;
+	}
+
+	private static void check(boolean condition, SearchSpace space, String message)
+	{
+		if(!condition)
+		{
+			throw new AssertionError(space + ": " + message);
+		}
+	}
+}
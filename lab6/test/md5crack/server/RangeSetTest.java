@@ -0,0 +1,344 @@
+package md5crack.server;
+
+import md5crack.Range;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Randomized test of <code>RangeSet</code> against simple model, that keeps state of every index.
+ * <p>
+ * Simulated clients take ranges and copies, complete them, time out with all their ranges,
+ * and server restarts from snapshot of uncompleted ranges. After every step lengths are compared with model,
+ * snapshot is compared every <code>SNAPSHOT_CHECK_PERIOD</code> steps. Every taken range must consist of free indices
+ * only, copy must be a range in flight with free place, and in the end every index must be completed.
+ * Then several threads take and complete ranges at once, and every index must be completed exactly once.
+ * </p>
+ * <p>
+ * Run with optional seed; exits with <code>AssertionError</code> on the first violation.
+ * </p>
+ */
+public class RangeSetTest
+{
+	private static final long SPACE_LENGTH = 5000;
+	private static final int CLIENT_COUNT = 5;
+	private static final int MAX_TAKE_LENGTH = 300;
+	private static final int STEP_COUNT = 200000;
+	private static final int SNAPSHOT_CHECK_PERIOD = 97;
+	private static final int THREAD_COUNT = 8;
+	private static final long CONCURRENT_SPACE_LENGTH = 10000000;
+
+	private static final byte FREE = 0;
+	private static final byte IN_FLIGHT = 1;
+	private static final byte COMPLETED = 2;
+
+	private Random random;
+	private Range space = new Range(0, SPACE_LENGTH - 1);
+	private RangeSet set = new RangeSet(space);
+
+	// Model.
+	private byte[] states = new byte[(int) SPACE_LENGTH];
+	private long freeLength = SPACE_LENGTH;
+	private long inFlightLength = 0;
+	private Map<Long, ModelRange> inFlight = new HashMap<>();
+	private List<List<ModelRange>> clientRanges = new ArrayList<>();
+
+	private static class ModelRange
+	{
+		Range range;
+		int copies = 1;
+		boolean done = false;
+
+		ModelRange(Range range)
+		{
+			this.range = range;
+		}
+	}
+
+	public RangeSetTest(long seed)
+	{
+		this.random = new Random(seed);
+		for(int i = 0; i < CLIENT_COUNT; ++i)
+		{
+			clientRanges.add(new ArrayList<>());
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		long seed = (args.length == 1 ? Long.parseLong(args[0]) : System.nanoTime());
+		System.out.println("RangeSetTest: seed " + seed);
+		new RangeSetTest(seed).run();
+		runConcurrently();
+		System.out.println("RangeSetTest: OK");
+	}
+
+	private void run()
+	{
+		for(int step = 0; step < STEP_COUNT; ++step)
+		{
+			int client = random.nextInt(CLIENT_COUNT);
+			int op = random.nextInt(100);
+			if(op < 40)
+			{
+				take(client);
+			}
+			else if(op < 50)
+			{
+				takeCopy(client);
+			}
+			else if(op < 85)
+			{
+				completeOne(client);
+			}
+			else if(op < 99)
+			{
+				timeOut(client);
+			}
+			else
+			{
+				restart();
+			}
+			checkLengths();
+			if(step % SNAPSHOT_CHECK_PERIOD == 0)
+			{
+				checkSnapshot();
+			}
+			if(set.isEmpty() && inFlight.isEmpty())
+			{
+				// Everything is checked, start again.
+				checkAllCompleted();
+				set = new RangeSet(space);
+				Arrays.fill(states, FREE);
+				freeLength = SPACE_LENGTH;
+				forgetClients();
+			}
+		}
+
+		// Clients complete all, what is left.
+		while(!set.isEmpty() || !inFlight.isEmpty())
+		{
+			for(int client = 0; client < CLIENT_COUNT; ++client)
+			{
+				take(client);
+				while(!clientRanges.get(client).isEmpty())
+				{
+					completeOne(client);
+				}
+			}
+			checkLengths();
+		}
+		checkSnapshot();
+		checkAllCompleted();
+		System.out.println("RangeSetTest: " + STEP_COUNT + " random steps match model");
+	}
+
+	private void take(int client)
+	{
+		Range range = set.take(1 + random.nextInt(MAX_TAKE_LENGTH));
+		if(range == null)
+		{
+			check(freeLength == 0, "take returned null, but " + freeLength + " indices are free");
+			return;
+		}
+		for(long idx = range.start; idx <= range.end; ++idx)
+		{
+			check(states[(int) idx] == FREE, "take returned index " + idx + " in state " + states[(int) idx]);
+		}
+		ModelRange modelRange = new ModelRange(range);
+		setState(range, IN_FLIGHT);
+		inFlight.put(range.start, modelRange);
+		clientRanges.get(client).add(modelRange);
+	}
+
+	private void takeCopy(int client)
+	{
+		List<Range> held = new ArrayList<>();
+		for(ModelRange modelRange : clientRanges.get(client))
+		{
+			held.add(modelRange.range);
+		}
+		Range range = set.takeCopy(held);
+		if(range == null)
+		{
+			for(ModelRange modelRange : inFlight.values())
+			{
+				check(modelRange.copies >= 2 || clientRanges.get(client).contains(modelRange),
+				      "takeCopy returned null, but range from " + modelRange.range.start + " could be copied");
+			}
+			return;
+		}
+		ModelRange modelRange = inFlight.get(range.start);
+		check(modelRange != null && modelRange.range.end == range.end,
+		      "takeCopy returned range from " + range.start + " to " + range.end + ", that is not in flight");
+		check(modelRange.copies < 2, "takeCopy returned the third copy of range from " + range.start);
+		check(!clientRanges.get(client).contains(modelRange), "takeCopy returned range, held by the same client");
+		++modelRange.copies;
+		clientRanges.get(client).add(modelRange);
+	}
+
+	private void completeOne(int client)
+	{
+		List<ModelRange> ranges = clientRanges.get(client);
+		if(ranges.isEmpty())
+		{
+			return;
+		}
+		ModelRange modelRange = ranges.remove(random.nextInt(ranges.size()));
+		boolean completed = set.complete(modelRange.range);
+		check(completed == !modelRange.done, "complete returned " + completed + " for range from " + modelRange.range.start);
+		if(completed)
+		{
+			modelRange.done = true;
+			inFlight.remove(modelRange.range.start);
+			setState(modelRange.range, COMPLETED);
+		}
+	}
+
+	private void timeOut(int client)
+	{
+		List<ModelRange> ranges = clientRanges.get(client);
+		// Server returns ranges from the newest one.
+		for(int i = ranges.size() - 1; i >= 0; --i)
+		{
+			ModelRange modelRange = ranges.get(i);
+			boolean released = set.release(modelRange.range);
+			check(released == !modelRange.done, "release returned " + released + " for range from " + modelRange.range.start);
+			if(released && --modelRange.copies == 0)
+			{
+				modelRange.done = true;
+				inFlight.remove(modelRange.range.start);
+				setState(modelRange.range, FREE);
+			}
+		}
+		ranges.clear();
+	}
+
+	/**
+	 * Server restarts from checkpoint: ranges in flight become free, clients start from scratch.
+	 */
+	private void restart()
+	{
+		long[] snapshot = set.getUncompletedRanges();
+		List<Range> free = new ArrayList<>();
+		for(int i = 0; i < snapshot.length; i += 2)
+		{
+			free.add(new Range(snapshot[i], snapshot[i + 1]));
+		}
+		set = new RangeSet(space, free);
+		for(ModelRange modelRange : inFlight.values())
+		{
+			modelRange.done = true;
+			setState(modelRange.range, FREE);
+		}
+		inFlight.clear();
+		forgetClients();
+	}
+
+	private void forgetClients()
+	{
+		for(List<ModelRange> ranges : clientRanges)
+		{
+			ranges.clear();
+		}
+	}
+
+	private void setState(Range range, byte state)
+	{
+		for(long idx = range.start; idx <= range.end; ++idx)
+		{
+			byte oldState = states[(int) idx];
+			freeLength += (state == FREE ? 1 : 0) - (oldState == FREE ? 1 : 0);
+			inFlightLength += (state == IN_FLIGHT ? 1 : 0) - (oldState == IN_FLIGHT ? 1 : 0);
+			states[(int) idx] = state;
+		}
+	}
+
+	private void checkLengths()
+	{
+		check(set.getFreeLength() == freeLength, "free length " + set.getFreeLength() + ", expected " + freeLength);
+		check(set.getInFlightLength() == inFlightLength,
+		      "in flight length " + set.getInFlightLength() + ", expected " + inFlightLength);
+		check(set.getCompletedLength() == SPACE_LENGTH - freeLength - inFlightLength, "completed length");
+		check(set.isEmpty() == (freeLength == 0), "isEmpty with " + freeLength + " free indices");
+	}
+
+	private void checkSnapshot()
+	{
+		long[] snapshot = set.getUncompletedRanges();
+		byte[] uncompleted = new byte[(int) SPACE_LENGTH];
+		long previousEnd = -1;
+		for(int i = 0; i < snapshot.length; i += 2)
+		{
+			check(snapshot[i] > previousEnd && snapshot[i] <= snapshot[i + 1], "snapshot ranges are not sorted");
+			for(long idx = snapshot[i]; idx <= snapshot[i + 1]; ++idx)
+			{
+				uncompleted[(int) idx] = 1;
+			}
+			previousEnd = snapshot[i + 1];
+		}
+		for(int idx = 0; idx < SPACE_LENGTH; ++idx)
+		{
+			check((uncompleted[idx] == 1) == (states[idx] != COMPLETED),
+			      "snapshot is wrong for index " + idx + " in state " + states[idx]);
+		}
+	}
+
+	private void checkAllCompleted()
+	{
+		for(int idx = 0; idx < SPACE_LENGTH; ++idx)
+		{
+			check(states[idx] == COMPLETED, "index " + idx + " is lost");
+		}
+		check(set.getCompletedLength() == SPACE_LENGTH, "completed length " + set.getCompletedLength());
+	}
+
+	/**
+	 * Threads take ranges and complete most of them, the rest are released and taken again.
+	 * Sum of completed lengths must be equal to space length, so no index is completed twice or lost.
+	 */
+	private static void runConcurrently() throws InterruptedException
+	{
+		RangeSet set = new RangeSet(new Range(0, CONCURRENT_SPACE_LENGTH - 1));
+		AtomicLong completedLength = new AtomicLong();
+		Thread[] threads = new Thread[THREAD_COUNT];
+		for(int i = 0; i < THREAD_COUNT; ++i)
+		{
+			long seed = i;
+			threads[i] = new Thread(() ->
+			{
+				Random random = new Random(seed);
+				Range range;
+				while((range = set.take(1 + random.nextInt(1000))) != null)
+				{
+					if(random.nextInt(10) == 0)
+					{
+						set.release(range);
+					}
+					else if(set.complete(range))
+					{
+						completedLength.addAndGet(range.getLength());
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for(Thread thread : threads)
+		{
+			thread.join();
+		}
+		check(completedLength.get() == CONCURRENT_SPACE_LENGTH,
+		      "threads completed " + completedLength.get() + " of " + CONCURRENT_SPACE_LENGTH + " indices");
+		check(set.getCompletedLength() == CONCURRENT_SPACE_LENGTH && set.getUncompletedRanges().length == 0,
+		      "uncompleted indices are left after threads");
+		System.out.println("RangeSetTest: " + THREAD_COUNT + " threads completed every index once");
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if(!condition)
+		{
+			throw new AssertionError(message);
+		}
+	}
+}